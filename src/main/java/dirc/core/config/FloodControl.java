@@ -0,0 +1,36 @@
+package dirc.core.config;
+
+/**
+ * Limits on the rate at which messages are sent to a server, to stay below the server's excess flood limit
+ */
+public class FloodControl {
+    /** Send a burst of 5 messages, then one every 2 seconds, which stays within the limits of common servers */
+    public static final FloodControl DEFAULT = new FloodControl(5, 0.5, 1000);
+
+    private int burst;
+    private double refillPerSecond;
+    private int outboxCapacity;
+
+    /**
+     * @param burst           - number of messages which may be sent back to back
+     * @param refillPerSecond - sustained number of messages per second
+     * @param outboxCapacity  - maximum number of messages waiting to be sent
+     */
+    public FloodControl(int burst, double refillPerSecond, int outboxCapacity) {
+        this.burst = burst;
+        this.refillPerSecond = refillPerSecond;
+        this.outboxCapacity = outboxCapacity;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public double getRefillPerSecond() {
+        return refillPerSecond;
+    }
+
+    public int getOutboxCapacity() {
+        return outboxCapacity;
+    }
+}
@@ -2,13 +2,19 @@ package dirc.core.config;
 
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import dirc.core.config.IrcServerInfo.ConnectionType;
 
 public class IrcNetwork {
     public String nickname;
     public String username;
     public String realName;
     private List<IrcServerInfo> servers;
+    private long attemptDelayMillis = 250;
+    private long connectTimeoutMillis = 10000;
 
     private IrcNetwork() {
         this.servers = new ArrayList<IrcServerInfo>();
@@ -29,9 +35,32 @@ public class IrcNetwork {
     public IrcServerInfo getServer() {
         return servers.get(0);
     }
+
+    /**
+     * @return every server of the network, in the order they were added
+     */
+    public List<IrcServerInfo> getServers() {
+        return Collections.unmodifiableList(servers);
+    }
+
+    /**
+     * @return time to wait for an attempt to connect to one server before also trying the next
+     */
+    public long getAttemptDelayMillis() {
+        return attemptDelayMillis;
+    }
+
+    /**
+     * @return time to wait for any server to connect
+     */
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
     
     public static class Builder {
         private IrcNetwork n;
+        private FloodControl floodControl;
+        private boolean lazyMessages;
 
         public Builder() {
             n = new IrcNetwork();
@@ -60,8 +89,49 @@ public class IrcNetwork {
             return this;
         }
 
+        /**
+         * Set the flood control for the servers added after this call. Servers are not throttled unless this is set,
+         * for instance to {@link FloodControl#DEFAULT}.
+         * 
+         * @param floodControl - limits on the rate of sending, or null to send as fast as the connection allows
+         */
+        public Builder floodControl(FloodControl floodControl) {
+            this.floodControl = floodControl;
+            return this;
+        }
+
+        /**
+         * Set how long to wait for an attempt to connect to one server before also trying the next
+         */
+        public Builder attemptDelay(long attemptDelay, TimeUnit unit) {
+            n.attemptDelayMillis = unit.toMillis(attemptDelay);
+            return this;
+        }
+
+        /**
+         * Set how long to wait for any of the servers to connect
+         */
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            n.connectTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
         public Builder addServer(String hostname, int port, Charset charset) {
-            n.servers.add(new IrcServerInfo(hostname, port, charset));
+            return addServer(hostname, port, charset, ConnectionType.Threaded);
+        }
+
+        /**
+         * Set whether the servers added after this call decode received messages lazily
+         *
+         * @see IrcServerInfo#isLazyMessages()
+         */
+        public Builder lazyMessages(boolean lazyMessages) {
+            this.lazyMessages = lazyMessages;
+            return this;
+        }
+
+        public Builder addServer(String hostname, int port, Charset charset, ConnectionType connectionType) {
+            n.servers.add(new IrcServerInfo(hostname, port, charset, connectionType, floodControl, lazyMessages));
             return this;
         }
     }
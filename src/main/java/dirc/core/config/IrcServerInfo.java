@@ -3,14 +3,56 @@ package dirc.core.config;
 import java.nio.charset.Charset;
 
 public class IrcServerInfo {
+    /**
+     * How the connection to the server is driven
+     */
+    public enum ConnectionType {
+        /** Blocking socket with a platform thread each for receiving and sending */
+        Threaded,
+        /** Blocking socket with a virtual thread each for receiving and sending, requires Java 21 */
+        VirtualThreads,
+        /** Non-blocking socket multiplexed with other connections on a shared selector thread */
+        Selector
+    }
+
     private String hostname;
     private int port;
     private Charset charset;
+    private ConnectionType connectionType;
+    private FloodControl floodControl;
+    private boolean lazyMessages;
 
     public IrcServerInfo(String hostname, int port, Charset charset) {
+        this(hostname, port, charset, ConnectionType.Threaded);
+    }
+
+    /**
+     * Server which is sent to as fast as the connection allows, as no flood control is given
+     */
+    public IrcServerInfo(String hostname, int port, Charset charset, ConnectionType connectionType) {
+        this(hostname, port, charset, connectionType, null);
+    }
+
+    /**
+     * @param floodControl - limits on the rate of sending, or null to send as fast as the connection allows
+     */
+    public IrcServerInfo(String hostname, int port, Charset charset, ConnectionType connectionType,
+            FloodControl floodControl) {
+        this(hostname, port, charset, connectionType, floodControl, false);
+    }
+
+    /**
+     * @param floodControl - limits on the rate of sending, or null to send as fast as the connection allows
+     * @param lazyMessages - whether received messages decode their prefix and parameters only when asked for them
+     */
+    public IrcServerInfo(String hostname, int port, Charset charset, ConnectionType connectionType,
+            FloodControl floodControl, boolean lazyMessages) {
         this.hostname = hostname;
         this.port = port;
         this.charset = charset;
+        this.connectionType = connectionType;
+        this.floodControl = floodControl;
+        this.lazyMessages = lazyMessages;
     }
     
     public String getHostname() {
@@ -24,4 +66,20 @@ public class IrcServerInfo {
     public Charset getCharset() {
         return charset;
     }
+
+    public ConnectionType getConnectionType() {
+        return connectionType;
+    }
+
+    public FloodControl getFloodControl() {
+        return floodControl;
+    }
+
+    /**
+     * @return whether received messages keep the bytes of their line and decode each part only when it is first
+     *         asked for, which spares most of the decoding of messages only routed by their command
+     */
+    public boolean isLazyMessages() {
+        return lazyMessages;
+    }
 }
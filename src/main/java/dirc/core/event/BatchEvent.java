@@ -0,0 +1,71 @@
+package dirc.core.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The events of the messages in an IRCv3 BATCH, such as a chathistory replay or a netsplit, delivered together once
+ * the batch ends so that a listener can handle them in bulk. Batches nested in the batch appear among its events.
+ *
+ * @see https://ircv3.net/specs/extensions/batch
+ */
+public class BatchEvent extends IrcEvent {
+    private String reference;
+    private String type;
+    private List<String> parameters;
+    private List<IrcEvent> events;
+
+    /**
+     * @param recipient  - target of the batch, or * if it has none
+     * @param reference  - reference tag the server gave the batch
+     * @param type       - type of the batch, such as chathistory
+     * @param parameters - parameters following the type
+     * @param events     - events of the messages in the batch, in the order received
+     */
+    public BatchEvent(String recipient, String reference, String type, List<String> parameters,
+            List<IrcEvent> events) {
+        super(recipient, type);
+        this.reference = reference;
+        this.type = type;
+        this.parameters = parameters;
+        this.events = events;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    public List<IrcEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Replace every batch in a list of events with the events in it, recursively
+     *
+     * @return the expanded events, or the list itself if it holds no batches
+     */
+    public static List<IrcEvent> expand(List<IrcEvent> events) {
+        List<IrcEvent> expanded = null;
+        for(int i = 0; i < events.size(); i++) {
+            IrcEvent ev = events.get(i);
+            if(ev instanceof BatchEvent) {
+                if(expanded == null) {
+                    expanded = new ArrayList<IrcEvent>(events.subList(0, i));
+                }
+                expanded.addAll(expand(((BatchEvent) ev).getEvents()));
+            }
+            else if(expanded != null) {
+                expanded.add(ev);
+            }
+        }
+        return expanded == null ? events : expanded;
+    }
+}
@@ -9,6 +9,7 @@ public abstract class IrcEvent {
     private String recipient;
     private String message;
     private List<TextStyle> textStyles;
+    private boolean recycled;
 
     public IrcEvent(String recipient, String message) {
         this(recipient, message, Collections.<TextStyle> emptyList());
@@ -31,4 +32,22 @@ public abstract class IrcEvent {
     public List<TextStyle> getTextStyles() {
         return textStyles;
     }
+
+    /**
+     * @return true if the event belongs to an {@link IrcEventFactory} which will refill it for a later message, so
+     *         must not be kept once the listener it was handed to returns
+     */
+    public boolean isRecycled() {
+        return recycled;
+    }
+
+    /**
+     * Refill a recycled event for another message
+     */
+    void refill(String recipient, String message, List<TextStyle> textStyles) {
+        this.recipient = recipient;
+        this.message = message;
+        this.textStyles = textStyles;
+        this.recycled = true;
+    }
 }
@@ -0,0 +1,347 @@
+package dirc.core.event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers events to listeners on threads of their own, so that a slow listener never holds up the thread
+ * publishing events, which is usually the thread reading from the server. Each subscriber has a bounded ring buffer
+ * of pending events and a policy deciding what happens when it falls far enough behind to fill it.
+ *
+ * Events are delivered to each subscriber in the order they were published. Subscribers can be added and removed
+ * while events are being published. An exception thrown by a listener is passed to its thread's uncaught exception
+ * handler, and the listener goes on receiving the events after it.
+ */
+public class IrcEventBus {
+    public enum Overflow {
+        /**
+         * Discard the oldest pending event to make room
+         */
+        DropOldest,
+        /**
+         * Make the publisher wait for room, which pushes back on the connection
+         */
+        Block,
+        /**
+         * Discard the newest pending event of the same type for the same recipient, or the oldest pending event if
+         * there is none, to make room at the end, so that events stay in the order they were published
+         */
+        Coalesce
+    }
+
+    private final List<Subscription> subscriptions;
+    private final ThreadFactory threadFactory;
+
+    public IrcEventBus() {
+        this(Executors.defaultThreadFactory());
+    }
+
+    /**
+     * @param threadFactory - factory for the threads which deliver events to each subscriber
+     */
+    public IrcEventBus(ThreadFactory threadFactory) {
+        this.subscriptions = new CopyOnWriteArrayList<Subscription>();
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Start delivering events to a listener
+     *
+     * @param listener - listener to call with each event, on the subscription's own thread
+     * @param capacity - number of pending events the subscriber may fall behind by
+     * @param overflow - what to do when the subscriber is that far behind
+     *
+     * @return the subscription, for its metrics and to unsubscribe
+     */
+    public Subscription subscribe(IrcEventListener listener, int capacity, Overflow overflow) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        Subscription s = new Subscription(listener, capacity, overflow);
+        subscriptions.add(s);
+        Thread t = threadFactory.newThread(s);
+        t.setName("irc-event-" + listener.getClass().getSimpleName());
+        t.setDaemon(true);
+        s.thread = t;
+        t.start();
+        return s;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Hand an event to every subscriber. Only waits if a subscriber with the {@link Overflow#Block} policy is full.
+     */
+    public void publish(IrcEvent ev) {
+        for (Subscription s : subscriptions) {
+            s.offer(ev);
+        }
+    }
+
+    /**
+     * Stop every subscription, discarding any events not yet delivered
+     */
+    public void close() {
+        for (Subscription s : subscriptions) {
+            s.unsubscribe();
+        }
+    }
+
+    /**
+     * A listener's ring buffer of pending events and the thread draining it
+     */
+    public class Subscription implements Runnable {
+        private final IrcEventListener listener;
+        private final Overflow overflow;
+        private final IrcEvent[] events;
+        private final long[] publishedAt;
+        private final ReentrantLock lock;
+        private final Condition notEmpty;
+        private final Condition notFull;
+        private long head;
+        private long tail;
+        private boolean closed;
+        private Thread thread;
+
+        private long published;
+        private long delivered;
+        private long dropped;
+        private long coalesced;
+        private int maxPending;
+        private long lastLagNanos;
+        private long maxLagNanos;
+
+        private Subscription(IrcEventListener listener, int capacity, Overflow overflow) {
+            this.listener = listener;
+            this.overflow = overflow;
+            this.events = new IrcEvent[capacity];
+            this.publishedAt = new long[capacity];
+            this.lock = new ReentrantLock();
+            this.notEmpty = lock.newCondition();
+            this.notFull = lock.newCondition();
+        }
+
+        private void offer(IrcEvent ev) {
+            lock.lock();
+            try {
+                if(closed) {
+                    return;
+                }
+                published++;
+                if(tail - head == events.length) {
+                    if(overflow == Overflow.Block) {
+                        while(tail - head == events.length && !closed) {
+                            notFull.awaitUninterruptibly();
+                        }
+                        if(closed) {
+                            return;
+                        }
+                    }
+                    else if(overflow == Overflow.Coalesce && coalesce(ev)) {
+                        coalesced++;
+                    }
+                    else {
+                        events[slot(head++)] = null;
+                        dropped++;
+                    }
+                }
+                events[slot(tail)] = ev;
+                publishedAt[slot(tail)] = System.nanoTime();
+                tail++;
+                maxPending = Math.max(maxPending, (int) (tail - head));
+                notEmpty.signal();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Remove the newest pending event the new one supersedes, moving the events after it up
+         * 
+         * @return false if no pending event is superseded
+         */
+        private boolean coalesce(IrcEvent ev) {
+            for(long i = tail - 1; i >= head; i--) {
+                IrcEvent pending = events[slot(i)];
+                if(pending.getClass() == ev.getClass() && equal(pending.getRecipient(), ev.getRecipient())) {
+                    for(long j = i + 1; j < tail; j++) {
+                        events[slot(j - 1)] = events[slot(j)];
+                        publishedAt[slot(j - 1)] = publishedAt[slot(j)];
+                    }
+                    tail--;
+                    events[slot(tail)] = null;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int slot(long sequence) {
+            return (int) (sequence % events.length);
+        }
+
+        public void run() {
+            while(true) {
+                IrcEvent ev;
+                lock.lock();
+                try {
+                    while(head == tail && !closed) {
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    if(closed) {
+                        return;
+                    }
+                    ev = events[slot(head)];
+                    events[slot(head)] = null;
+                    lastLagNanos = System.nanoTime() - publishedAt[slot(head)];
+                    maxLagNanos = Math.max(maxLagNanos, lastLagNanos);
+                    head++;
+                    notFull.signal();
+                }
+                finally {
+                    lock.unlock();
+                }
+
+                try {
+                    listener.handleEvent(ev);
+                }
+                catch (RuntimeException ex) {
+                    Thread t = Thread.currentThread();
+                    t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+                }
+
+                lock.lock();
+                try {
+                    delivered++;
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Stop delivering events, discarding any not yet delivered
+         */
+        public void unsubscribe() {
+            subscriptions.remove(this);
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public IrcEventListener getListener() {
+            return listener;
+        }
+
+        public Thread getThread() {
+            return thread;
+        }
+
+        /**
+         * @return events published to this subscriber, including those dropped or coalesced
+         */
+        public long getPublished() {
+            lock.lock();
+            try {
+                return published;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public long getDelivered() {
+            lock.lock();
+            try {
+                return delivered;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public long getDropped() {
+            lock.lock();
+            try {
+                return dropped;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public long getCoalesced() {
+            lock.lock();
+            try {
+                return coalesced;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return number of events waiting to be delivered
+         */
+        public int getPending() {
+            lock.lock();
+            try {
+                return (int) (tail - head);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public int getMaxPending() {
+            lock.lock();
+            try {
+                return maxPending;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return time the last event taken for delivery spent waiting in the buffer
+         */
+        public long getLastLagNanos() {
+            lock.lock();
+            try {
+                return lastLagNanos;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public long getMaxLagNanos() {
+            lock.lock();
+            try {
+                return maxLagNanos;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,67 @@
+package dirc.core.event;
+
+import java.util.Collections;
+import java.util.List;
+
+import dirc.core.message.TextStyle;
+
+/**
+ * Creates the events most messages are translated into: server replies, notices and lines of the message of the
+ * day. {@link #ALLOCATING} creates a new event each time. A recycling factory instead refills one event of each
+ * class, so translating a message creates no event at all, but each event it returns is only valid until the next
+ * one of its class is asked for.
+ *
+ * A recycling factory must only be used by one thread, normally the thread receiving from the server, and its
+ * events must only be handed to listeners which have agreed not to keep them past the callback.
+ */
+public class IrcEventFactory {
+    public static final IrcEventFactory ALLOCATING = new IrcEventFactory(false);
+
+    private final boolean recycling;
+    private final ServerEvent serverEvent;
+    private final NoticeEvent noticeEvent;
+    private final MotD motd;
+
+    private IrcEventFactory(boolean recycling) {
+        this.recycling = recycling;
+        this.serverEvent = recycling ? new ServerEvent(null, null) : null;
+        this.noticeEvent = recycling ? new NoticeEvent(null, null) : null;
+        this.motd = recycling ? new MotD(null, null, Collections.<TextStyle> emptyList()) : null;
+    }
+
+    /**
+     * @return a factory refilling its own events, for one thread
+     */
+    public static IrcEventFactory recycling() {
+        return new IrcEventFactory(true);
+    }
+
+    public boolean isRecycling() {
+        return recycling;
+    }
+
+    public ServerEvent serverEvent(String recipient, String message) {
+        if(!recycling) {
+            return new ServerEvent(recipient, message);
+        }
+        serverEvent.refill(recipient, message, Collections.<TextStyle> emptyList());
+        return serverEvent;
+    }
+
+    public NoticeEvent noticeEvent(String recipient, String message) {
+        if(!recycling) {
+            return new NoticeEvent(recipient, message);
+        }
+        noticeEvent.refill(recipient, message, Collections.<TextStyle> emptyList());
+        return noticeEvent;
+    }
+
+    public MotD motd(String recipient, String message, List<TextStyle> textStyles) {
+        if(!recycling) {
+            return new MotD(recipient, message, textStyles);
+        }
+        // As a new MotD would, ignore the recipient
+        motd.refill("-", message, textStyles);
+        return motd;
+    }
+}
@@ -1,11 +1,20 @@
 package dirc.core.message;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 public class IrcMessage {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
     private String servername;
     private String nickname;
     private String user;
@@ -13,8 +22,21 @@ public class IrcMessage {
     private String command;
     private List<String> parameters;
     private List<TextStyle> styles;
+    private MessageTags tags;
+
+    public IrcMessage(
+            String servername,
+            String nickname,
+            String user,
+            String host,
+            String command,
+            List<String> parameters,
+            List<TextStyle> styles) {
+        this(MessageTags.EMPTY, servername, nickname, user, host, command, parameters, styles);
+    }
 
     public IrcMessage(
+            MessageTags tags,
             String servername,
             String nickname,
             String user,
@@ -22,6 +44,7 @@ public class IrcMessage {
             String command,
             List<String> parameters,
             List<TextStyle> styles) {
+        this.tags = tags;
         this.servername = servername;
         this.nickname = nickname;
         this.user = user;
@@ -40,24 +63,42 @@ public class IrcMessage {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("message: ");
-        sb.append("[ servername: ").append(servername);
-        sb.append(", nickname: ").append(nickname);
-        sb.append(", user: ").append(user);
-        sb.append(", host: ").append(host);
-        sb.append(", command: ").append(command);
+        sb.append("[ ");
+        if(!getTags().isEmpty()) {
+            sb.append("tags: ").append(getTags()).append(", ");
+        }
+        sb.append("servername: ").append(getServername());
+        sb.append(", nickname: ").append(getNickname());
+        sb.append(", user: ").append(getUser());
+        sb.append(", host: ").append(getHost());
+        sb.append(", command: ").append(getCommand());
         sb.append(", parameters: [");
-        for(Iterator<String> p = parameters.iterator(); p.hasNext();) {
+        for(Iterator<String> p = getParameters().iterator(); p.hasNext();) {
             sb.append("'").append(p.next()).append("'");
             if(p.hasNext()) {
                 sb.append(", ");
             }
         }
         sb.append("]");
-        sb.append(", styles: ").append(styles);
+        sb.append(", styles: ").append(getTextStyles());
         sb.append("]");
         return sb.toString();
     }
 
+    /**
+     * @return the IRCv3 tags of the message, empty if it has none
+     */
+    public MessageTags getTags() {
+        return tags;
+    }
+
+    /**
+     * @return the unescaped value of a tag, an empty string if the tag has no value, or null if it is absent
+     */
+    public String getTag(String key) {
+        return getTags().get(key);
+    }
+
     public String getServername() {
         return servername;
     }
@@ -83,14 +124,17 @@ public class IrcMessage {
     }
 
     public String getParameter(int n) {
+        List<String> parameters = getParameters();
         return n < parameters.size() ? parameters.get(n) : "";
     }
     
     public String getLastParameter() {
+        List<String> parameters = getParameters();
         return parameters.isEmpty() ? "" : parameters.get(parameters.size() - 1);
     }
     
     public String getJoinedParameters(int n) {
+        List<String> parameters = getParameters();
         StringBuilder s = new StringBuilder();
         for (Iterator<String> p = parameters.subList(n, parameters.size()).iterator(); p.hasNext();) {
             s.append(p.next());
@@ -103,8 +147,8 @@ public class IrcMessage {
 
     public String serialize() {
         StringBuilder sb = new StringBuilder();
-        sb.append(command);
-        for (Iterator<String> i = parameters.iterator(); i.hasNext();) {
+        sb.append(getCommand());
+        for (Iterator<String> i = getParameters().iterator(); i.hasNext();) {
             String p = i.next();
             sb.append(" ");
             if(!i.hasNext()) {
@@ -132,6 +176,133 @@ public class IrcMessage {
         return sb.toString();
     }
 
+    /**
+     * Encode the message, as {@link #serialize()} would format it, directly into a buffer. Parameters are validated
+     * as they are encoded, and characters which the charset encodes as single ASCII bytes are written without going
+     * through the encoder. Character sets which do not encode ASCII as single bytes, which no IRC server uses, fall
+     * back to encoding the result of {@link #serialize()}.
+     * 
+     * @param out     - buffer to encode into, starting at its position
+     * @param encoder - encoder for the server character set
+     * 
+     * @return true if the message was encoded, false if it did not fit, in which case the buffer position is
+     *         unchanged
+     * @throws IllegalArgumentException if a parameter is not valid, in which case the buffer position is unchanged
+     */
+    public boolean serializeTo(ByteBuffer out, CharsetEncoder encoder) {
+        int mark = out.position();
+        if(!isAsciiCompatible(encoder.charset())) {
+            encoder.reset();
+            CoderResult r = encoder.encode(CharBuffer.wrap(serialize()), out, true);
+            if(r.isUnderflow() && encoder.flush(out).isUnderflow()) {
+                return true;
+            }
+            out.position(mark);
+            if(r.isError()) {
+                throw new IllegalArgumentException("Cannot encode message in " + encoder.charset());
+            }
+            return false;
+        }
+        try {
+            if(encode(getCommand(), out, encoder) < 0) {
+                out.position(mark);
+                return false;
+            }
+            List<String> parameters = getParameters();
+            int n = parameters.size();
+            for(int i = 0; i < n; i++) {
+                String p = parameters.get(i);
+                if(!out.hasRemaining()) {
+                    out.position(mark);
+                    return false;
+                }
+                out.put((byte) ' ');
+                int start = out.position();
+                int spaces = 0;
+                // Checked in the same order as serialize(), so both reject a parameter with the same message
+                if(i < n - 1) {
+                    if(p == null || p.length() == 0) {
+                        throw new IllegalArgumentException("Middle parameters must have a value");
+                    }
+                    else if(p.indexOf(' ') >= 0) {
+                        throw new IllegalArgumentException("Middle parameters cannot have spaces");
+                    }
+                    else if(p.charAt(0) == ':') {
+                        throw new IllegalArgumentException("Middle parameters cannot start with :");
+                    }
+                }
+                if(p != null && (spaces = encode(p, out, encoder)) < 0) {
+                    out.position(mark);
+                    return false;
+                }
+                if(i == n - 1 && (p == null || p.length() == 0 || spaces > 0)) {
+                    if(!out.hasRemaining()) {
+                        out.position(mark);
+                        return false;
+                    }
+                    // Shift the trailing parameter up to make room for the colon
+                    for(int j = out.position(); j > start; j--) {
+                        out.put(j, out.get(j - 1));
+                    }
+                    out.put(start, (byte) ':');
+                    out.position(out.position() + 1);
+                }
+            }
+            if(out.remaining() < 2) {
+                out.position(mark);
+                return false;
+            }
+            out.put((byte) '\r').put((byte) '\n');
+            return true;
+        }
+        catch(IllegalArgumentException ex) {
+            out.position(mark);
+            throw ex;
+        }
+    }
+
+    /**
+     * Encode a string into the buffer with an ASCII compatible encoder, counting the spaces in it
+     * 
+     * @return the number of spaces in the string, or -1 if it did not fit
+     */
+    private static int encode(String s, ByteBuffer out, CharsetEncoder encoder) {
+        int spaces = 0;
+        int length = s.length();
+        for(int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if(c == ' ') {
+                spaces++;
+            }
+            if(c >= 0x80) {
+                for(int j = i + 1; j < length; j++) {
+                    if(s.charAt(j) == ' ') {
+                        spaces++;
+                    }
+                }
+                encoder.reset();
+                CharBuffer rest = CharBuffer.wrap(s, i, length);
+                CoderResult r = encoder.encode(rest, out, true);
+                if(!r.isUnderflow() || (r = encoder.flush(out)).isOverflow()) {
+                    if(r.isError()) {
+                        throw new IllegalArgumentException("Cannot encode parameter in " + encoder.charset());
+                    }
+                    return -1;
+                }
+                return spaces;
+            }
+            if(!out.hasRemaining()) {
+                return -1;
+            }
+            out.put((byte) c);
+        }
+        return spaces;
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        return charset.equals(UTF8) || charset.equals(ASCII) || charset.equals(LATIN1);
+    }
+
     public List<TextStyle> getTextStyles() {
         return styles;
     }
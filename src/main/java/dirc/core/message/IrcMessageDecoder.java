@@ -0,0 +1,419 @@
+package dirc.core.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decodes IRC messages directly out of a {@link ByteBuffer} of server responses. Each call scans the raw bytes for
+ * the CR/LF line terminator and the space delimiters between message components, and only decodes the byte ranges
+ * which end up as fields of the {@link IrcMessage}. Bytes which do not yet form a complete line are left in the
+ * buffer, so the same decoder can be fed incrementally from a blocking stream or a non-blocking channel.
+ *
+ * A lazy decoder only validates each line and returns a {@link LazyIrcMessage} holding a copy of the line's bytes,
+ * so that messages which are only routed by command never have their prefix or parameters decoded.
+ *
+ * A line may start with a block of IRCv3 message tags. Only the span of the block is found while decoding; the
+ * tags themselves are looked up and unescaped by {@link MessageTags} when read.
+ *
+ * The decoder holds no per-message state between calls and can be reused for the life of a connection, but is
+ * not safe for use by multiple threads.
+ *
+ * @see https://tools.ietf.org/html/rfc2812#section-2.3
+ */
+public class IrcMessageDecoder {
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final byte SPACE = ' ';
+    private static final byte COLON = ':';
+    private static final byte AT = '@';
+
+    // Prefix kinds returned by scanPrefix
+    static final int INVALID = 0;
+    static final int SERVERNAME = 1;
+    static final int NICKNAME = 2;
+
+    private static final int MAX_NICKNAME_LENGTH = 9;
+
+    // Commands seen on nearly every line are shared rather than decoded each time
+    private static final String[] KNOWN_COMMANDS = {
+        "PRIVMSG", "NOTICE", "JOIN", "PART", "QUIT", "NICK", "MODE", "KICK", "TOPIC", "PING", "PONG", "ERROR"
+    };
+    private static final String[] NUMERICS = new String[1000];
+
+    private Charset charset;
+    private boolean lazy;
+
+    // Offsets set by the last call to scanPrefix
+    private int nicknameEnd;
+    private int userStart;
+    private int hostStart;
+
+    /**
+     * Create a message decoder
+     *
+     * @param charset - character encoding of the server responses
+     */
+    public IrcMessageDecoder(Charset charset) {
+        this(charset, false);
+    }
+
+    /**
+     * Create a message decoder
+     *
+     * @param charset - character encoding of the server responses
+     * @param lazy    - true to defer decoding of the prefix and parameters until first accessed
+     */
+    public IrcMessageDecoder(Charset charset, boolean lazy) {
+        this.charset = charset;
+        this.lazy = lazy;
+    }
+
+    /**
+     * Decode the next complete message between the buffer's position and limit. Empty and malformed lines are
+     * skipped. On return the position has been advanced past every line consumed, so any partial line is left
+     * at the position for the caller to compact and fill.
+     *
+     * @param buf - buffer in read mode containing server responses
+     *
+     * @return the next message, or null if the buffer does not contain a complete valid line
+     */
+    public IrcMessage decode(ByteBuffer buf) {
+        int start = buf.position();
+        int limit = buf.limit();
+        for(int i = start; i < limit; i++) {
+            byte b = buf.get(i);
+            if(b == CR || b == LF) {
+                buf.position(i + 1);
+                IrcMessage m = i > start ? parseLine(buf, start, i) : null;
+                if(m != null) {
+                    return m;
+                }
+                start = i + 1;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse a single line, not including the line terminator
+     *
+     * @param buf   - buffer holding the line
+     * @param start - index of the first byte of the line
+     * @param end   - index one past the last byte of the line
+     *
+     * @return the parsed message, or null if the line is not a valid message
+     */
+    IrcMessage parseLine(ByteBuffer buf, int start, int end) {
+        int tagsEnd = start;
+        int messageStart = start;
+        if(buf.get(start) == AT) {
+            tagsEnd = indexOf(buf, SPACE, start + 1, end);
+            if(tagsEnd < 0) {
+                return null;
+            }
+            messageStart = skip(buf, SPACE, tagsEnd, end);
+            if(messageStart == end) {
+                return null;
+            }
+        }
+
+        int prefixEnd = messageStart;
+        int kind = INVALID;
+        if(buf.get(messageStart) == COLON) {
+            prefixEnd = indexOf(buf, SPACE, messageStart + 1, end);
+            if(prefixEnd < 0 || (kind = scanPrefix(buf, messageStart + 1, prefixEnd)) == INVALID) {
+                return null;
+            }
+        }
+
+        int commandStart = prefixEnd == messageStart ? messageStart : prefixEnd + 1;
+        int commandEnd = scanCommand(buf, commandStart, end);
+        if(commandEnd < 0) {
+            return null;
+        }
+
+        if(lazy) {
+            byte[] line = new byte[end - start];
+            if(buf.hasArray()) {
+                System.arraycopy(buf.array(), buf.arrayOffset() + start, line, 0, line.length);
+            }
+            else {
+                for(int i = start; i < end; i++) {
+                    line[i - start] = buf.get(i);
+                }
+            }
+            return new LazyIrcMessage(line, charset, tagsEnd - start, messageStart - start, kind,
+                    kind == NICKNAME ? nicknameEnd - start : 0,
+                    kind == NICKNAME && userStart > 0 ? userStart - start : 0,
+                    kind == NICKNAME && hostStart > 0 ? hostStart - start : 0,
+                    prefixEnd - start,
+                    command(buf, commandStart, commandEnd),
+                    commandEnd - start);
+        }
+
+        MessageTags tags = tagsEnd > start ? new MessageTags(decode(buf, start + 1, tagsEnd, charset))
+                : MessageTags.EMPTY;
+        String servername = null;
+        String nickname = null;
+        String user = null;
+        String host = null;
+        if(kind == SERVERNAME) {
+            servername = decode(buf, messageStart + 1, prefixEnd, charset);
+        }
+        else if(kind == NICKNAME) {
+            nickname = decode(buf, messageStart + 1, nicknameEnd, charset);
+            user = userStart > 0 ? decode(buf, userStart, hostStart - 1, charset) : null;
+            host = hostStart > 0 ? decode(buf, hostStart, prefixEnd, charset) : null;
+        }
+
+        List<TextStyle> styles = new TextStyleList();
+        List<String> parameters = parseParameters(buf, commandEnd, end, charset, styles);
+        return new IrcMessage(tags, servername, nickname, user, host, command(buf, commandStart, commandEnd),
+                parameters, styles);
+    }
+
+    /**
+     * Validate the prefix as either a servername or a nickname with optional user and host. For a nickname, the
+     * offsets of the nickname end and the user and host starts (0 if absent) are left in this decoder.
+     *
+     * @return the kind of prefix, or {@link #INVALID}
+     */
+    int scanPrefix(ByteBuffer buf, int start, int end) {
+        if(isServername(buf, start, end)) {
+            return SERVERNAME;
+        }
+
+        int i = start;
+        while(i < end && buf.get(i) != '!' && buf.get(i) != '@') {
+            i++;
+        }
+        if(!isNickname(buf, start, i)) {
+            return INVALID;
+        }
+        nicknameEnd = i;
+        userStart = 0;
+        hostStart = 0;
+        if(i == end) {
+            return NICKNAME;
+        }
+        if(buf.get(i) == '!') {
+            userStart = i + 1;
+            i = userStart;
+            while(i < end && buf.get(i) != '!' && buf.get(i) != '@') {
+                i++;
+            }
+            if(i == userStart || i == end || buf.get(i) != '@') {
+                return INVALID;
+            }
+        }
+        hostStart = i + 1;
+        for(i = hostStart; i < end; i++) {
+            if(buf.get(i) == '!' || buf.get(i) == '@') {
+                return INVALID;
+            }
+        }
+        return hostStart < end ? NICKNAME : INVALID;
+    }
+
+    /**
+     * A servername is two or more dot separated labels, each starting with a letter or digit and continuing with
+     * letters, digits or hyphens
+     */
+    private static boolean isServername(ByteBuffer buf, int start, int end) {
+        int labels = 0;
+        int labelStart = start;
+        for(int i = start; i <= end; i++) {
+            if(i == end || buf.get(i) == '.') {
+                if(i == labelStart) {
+                    return false;
+                }
+                labels++;
+                labelStart = i + 1;
+            }
+            else if(i == labelStart ? !isLetterOrDigit(buf.get(i)) : !isLetterOrDigit(buf.get(i)) && buf.get(i) != '-') {
+                return false;
+            }
+        }
+        return labels > 1;
+    }
+
+    /**
+     * A nickname is a letter or special character followed by up to eight letters, digits, special characters or
+     * hyphens
+     */
+    private static boolean isNickname(ByteBuffer buf, int start, int end) {
+        if(end == start || end - start > MAX_NICKNAME_LENGTH || !isLetterOrSpecial(buf.get(start))) {
+            return false;
+        }
+        for(int i = start + 1; i < end; i++) {
+            byte b = buf.get(i);
+            if(!isLetterOrSpecial(b) && !isDigit(b) && b != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validate the command, which must either be a sequence of letters or a three digit numeric reply, and must be
+     * followed by a space or the end of the line
+     *
+     * @return index one past the end of the command, or -1 if the command is invalid
+     */
+    private static int scanCommand(ByteBuffer buf, int start, int end) {
+        int i = start;
+        if(i < end && isDigit(buf.get(i))) {
+            while(i < end && isDigit(buf.get(i))) {
+                i++;
+            }
+            if(i - start != 3) {
+                return -1;
+            }
+        }
+        else {
+            while(i < end && isAlpha(buf.get(i))) {
+                i++;
+            }
+            if(i == start) {
+                return -1;
+            }
+        }
+        return i == end || buf.get(i) == SPACE ? i : -1;
+    }
+
+    /**
+     * Map a validated command to a String, sharing the instances for numeric replies and common commands
+     */
+    private static String command(ByteBuffer buf, int start, int end) {
+        if(isDigit(buf.get(start))) {
+            int n = (buf.get(start) - '0') * 100 + (buf.get(start + 1) - '0') * 10 + (buf.get(start + 2) - '0');
+            String numeric = NUMERICS[n];
+            if(numeric == null) {
+                numeric = NUMERICS[n] = decodeAscii(buf, start, end);
+            }
+            return numeric;
+        }
+        for(String known : KNOWN_COMMANDS) {
+            if(matches(buf, start, end, known)) {
+                return known;
+            }
+        }
+        return decodeAscii(buf, start, end);
+    }
+
+    private static boolean matches(ByteBuffer buf, int start, int end, String s) {
+        if(end - start != s.length()) {
+            return false;
+        }
+        for(int i = start; i < end; i++) {
+            if(buf.get(i) != s.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split the parameters following the command, stripping the formatting codes out of the last parameter
+     *
+     * @param buf     - buffer holding the line
+     * @param start   - index just past the command
+     * @param end     - index one past the last byte of the line
+     * @param charset - character encoding of the line
+     * @param styles  - list to which the formatting of the last parameter is added
+     *
+     * @return the parameters
+     */
+    static List<String> parseParameters(ByteBuffer buf, int start, int end, Charset charset,
+            List<TextStyle> styles) {
+        List<String> parameters = new ArrayList<String>();
+        int i = start;
+        while(i < end) {
+            i = skip(buf, SPACE, i, end);
+            if(i == end) {
+                break;
+            }
+            if(buf.get(i) == COLON) {
+                parameters.add(decode(buf, i + 1, end, charset));
+                break;
+            }
+            int paramEnd = indexOf(buf, SPACE, i, end);
+            if(paramEnd < 0) {
+                paramEnd = end;
+            }
+            parameters.add(decode(buf, i, paramEnd, charset));
+            i = paramEnd;
+        }
+
+        if(!parameters.isEmpty()) {
+            int last = parameters.size() - 1;
+            parameters.set(last, IrcMessageReader.parseFormatting(parameters.get(last), styles));
+        }
+        return parameters.isEmpty() ? Collections.<String> emptyList() : parameters;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isAlpha(byte b) {
+        return b >= 'A' && b <= 'Z' || b >= 'a' && b <= 'z';
+    }
+
+    /**
+     * Letters and the special characters [ \ ] ^ _ ` { | }
+     */
+    private static boolean isLetterOrSpecial(byte b) {
+        return b >= 'A' && b <= 'z' || b >= '{' && b <= '}';
+    }
+
+    /**
+     * Letters, digits and the characters [ \ ] ^ _ ` which fall in the letter range
+     */
+    private static boolean isLetterOrDigit(byte b) {
+        return b >= 'A' && b <= 'z' || isDigit(b);
+    }
+
+    private static int indexOf(ByteBuffer buf, byte b, int start, int end) {
+        for(int i = start; i < end; i++) {
+            if(buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skip(ByteBuffer buf, byte b, int start, int end) {
+        int i = start;
+        while(i < end && buf.get(i) == b) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Decode a byte range of the buffer using the server character set, without disturbing the buffer position
+     */
+    static String decode(ByteBuffer buf, int start, int end, Charset charset) {
+        if(buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + start, end - start, charset);
+        }
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(end).position(start);
+        return charset.decode(slice).toString();
+    }
+
+    /**
+     * Decode a byte range which has already been validated as ASCII
+     */
+    private static String decodeAscii(ByteBuffer buf, int start, int end) {
+        char[] c = new char[end - start];
+        for(int i = start; i < end; i++) {
+            c[i - start] = (char) buf.get(i);
+        }
+        return new String(c);
+    }
+}
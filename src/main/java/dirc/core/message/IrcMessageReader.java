@@ -4,15 +4,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import dirc.core.message.TextStyle.Style;
-import dirc.core.message.TextStyle.Color;
 
 /**
  * Adapter around an {@link InputStream} of server responses which converts the byte sequences into a
@@ -20,30 +18,48 @@ import dirc.core.message.TextStyle.Color;
  * encode characters to byte sequences using a character set which must be specified when creating an instance of
  * this class. Most IRC servers use UTF-8.
  * 
+ * Server responses are read in blocks into a reusable buffer and decoded by an {@link IrcMessageDecoder}.
+ * 
  * @see https://tools.ietf.org/html/rfc2812#section-2.3
  */
 public class IrcMessageReader {
-    // Regular expressions defined below correspond to the IRC message format defined in IRC 2812
-    private static final Pattern SERVERNAME_PREFIX_PATTERN = Pattern.compile(
-            "([A-z0-9][A-z0-9-]*[A-z0-9]*(?:\\.[A-z0-9][A-z0-9-]*[A-z0-9]*)+)");
-    private static final Pattern NICKNAME_PREFIX_PATTERN = Pattern.compile(
-            "([A-z\\x5B-\\x60\\x7B-\\x7D](?:[A-z0-9\\x5B-\\x60\\x7B-\\x7D-]){0,8})(?:(?:!([^!@]+))?@([^!@]+))?");
-    private static final Pattern COMMAND_PATTERN = Pattern.compile(
-            "[A-z]+|[0-9]{3}");
-    private static final Pattern FORMATTING_PATTERN = Pattern.compile(
-            "(\u0002)|(\u001D)|(\u001F)|(\u000F)|(\u0003)([0-9]{2})?(?:,([0-9]{2}))?|(\u0016)");
-    
-    private InputStreamReader r;
+    // Formatting control codes, which are the only characters below 0x20 allowed in a parameter
+    private static final char BOLD = '\u0002';
+    private static final char COLOR = '\u0003';
+    private static final char HEX_COLOR = '\u0004';
+    private static final char RESET = '\u000F';
+    private static final char REVERSE = '\u0016';
+    private static final char ITALIC = '\u001D';
+    private static final char UNDERLINED = '\u001F';
+
+    // Value of each hex digit, or -1
+    private static final int[] HEX_DIGITS = new int[128];
+    static {
+        for(int c = 0; c < HEX_DIGITS.length; c++) {
+            HEX_DIGITS[c] = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'f' ? c - 'a' + 10 :
+                    c >= 'A' && c <= 'F' ? c - 'A' + 10 : -1;
+        }
+    }
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private InputStream is;
+    private ByteBuffer buf;
+    private IrcMessageDecoder decoder;
+    private boolean discarding;
 
     /**
-     * State machine - each enum represents a parse state, and the next method represents the state transition to the
-     * next parse state.
+     * State machine used by {@link MessageParser} - each enum represents a parse state, and the next method
+     * represents the state transition to the next parse state.
      */
     private enum State {
         Init {
             @Override
             public State next(char c, MessageParser p) {
-                if(c == ':') {
+                if(c == '@') {
+                    return Tags;
+                }
+                else if(c == ':') {
                     return Prefix;
                 }
                 else if(isCommandChar(c)) {
@@ -56,6 +72,41 @@ public class IrcMessageReader {
                 return Error;
             }
         }, 
+        Tags {
+            @Override
+            public State next(char c, MessageParser p) {
+                if(c == ' ') {
+                    p.consumeTags();
+                    return TagsEnd;
+                }
+                else if(isCRLF(c)) {
+                    return Init;
+                }
+                else {
+                    p.appendToken(c);
+                    return Tags;
+                }
+            }
+        },
+        TagsEnd {
+            @Override
+            public State next(char c, MessageParser p) {
+                if(c == ' ') {
+                    return TagsEnd;
+                }
+                else if(c == ':') {
+                    return Prefix;
+                }
+                else if(isCommandChar(c)) {
+                    p.appendToken(c);
+                    return Command;
+                }
+                else if(isCRLF(c)) {
+                    return Init;
+                }
+                return Error;
+            }
+        },
         Prefix {
             @Override
             public State next(char c, MessageParser p) {
@@ -154,7 +205,22 @@ public class IrcMessageReader {
      * @throws UnsupportedEncodingException 
      */
     public IrcMessageReader(InputStream is, Charset charset) throws IOException {
-        r = new InputStreamReader(is, charset.name());
+        this(is, charset, false);
+    }
+
+    /**
+     * Create a message reader
+     * 
+     * @param is      - input byte stream of IRC server responses
+     * @param charset - character encoding of the byte stream
+     * @param lazy    - true to return messages which decode their prefix and parameters on first access
+     * @throws UnsupportedEncodingException 
+     */
+    public IrcMessageReader(InputStream is, Charset charset, boolean lazy) throws IOException {
+        this.is = is;
+        this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buf.flip();
+        this.decoder = new IrcMessageDecoder(charset, lazy);
     }
 
     /**
@@ -164,16 +230,77 @@ public class IrcMessageReader {
      * @throws IOException 
      */
     public IrcMessage nextMessage() throws IOException {
-        return new MessageParser(r).getMessage();
+        while(true) {
+            if(discarding) {
+                discarding = !skipLine();
+            }
+            IrcMessage m;
+            if(!discarding && (m = decoder.decode(buf)) != null) {
+                return m;
+            }
+            if(!fill()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Skip the remainder of an overlong line
+     * 
+     * @return true if the end of the line was found
+     */
+    private boolean skipLine() {
+        for(int i = buf.position(); i < buf.limit(); i++) {
+            byte b = buf.get(i);
+            if(b == '\r' || b == '\n') {
+                buf.position(i + 1);
+                return true;
+            }
+        }
+        buf.position(buf.limit());
+        return false;
+    }
+
+    /**
+     * Read more server responses into the buffer, preserving any partial line already read. A line which
+     * outgrows {@link #MAX_LINE_LENGTH} is discarded, as it cannot be a valid message.
+     * 
+     * @return false if the end of the stream has been reached
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        buf.compact();
+        if(!buf.hasRemaining()) {
+            if(buf.capacity() < MAX_LINE_LENGTH) {
+                ByteBuffer grown = ByteBuffer.allocate(buf.capacity() * 2);
+                buf.flip();
+                grown.put(buf);
+                buf = grown;
+            }
+            else {
+                buf.clear();
+                discarding = true;
+            }
+        }
+        int n = is.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        if(n > 0) {
+            buf.position(buf.position() + n);
+        }
+        buf.flip();
+        return n != -1;
     }
 
     /**
      * Parse the input stream to produce a {@link IrcMessage}
      * 
      * Holds parsing state for a single parse. Create a new instance for each parse.
+     * 
+     * This is the original character at a time parser, which {@link IrcMessageReader} no longer uses. It is kept
+     * as the reference implementation that {@link IrcMessageDecoder} is benchmarked against.
      */
     public static class MessageParser {
         private InputStreamReader r;
+        private MessageTags tags;
         private String command;
         private String servername;
         private String nickname;
@@ -197,15 +324,23 @@ public class IrcMessageReader {
          * Reset MessageParser state
          */
         private void init() {
+            this.tags = MessageTags.EMPTY;
             this.servername = null;
             this.nickname = null;
             this.user = null;
             this.host = null;
             this.parameters = new ArrayList<String>();
-            this.styles = new ArrayList<TextStyle>();
+            this.styles = new TextStyleList();
             this.token = new StringBuilder();
         }
         
+        /**
+         * Consume the tag block, which is kept as it is for {@link MessageTags} to unescape on demand
+         */
+        public void consumeTags() {
+            tags = new MessageTags(getToken());
+        }
+
         /**
          * Consume the prefix token, mapping the token to the servername or the components of the user information
          * 
@@ -213,18 +348,37 @@ public class IrcMessageReader {
          */
         public boolean consumePrefix() {
             String prefix = getToken();
-            Matcher m;
-            if(SERVERNAME_PREFIX_PATTERN.matcher(prefix).matches()) {
+            if(isServername(prefix)) {
                 servername = prefix;
                 return true;
             }
-            else if((m = NICKNAME_PREFIX_PATTERN.matcher(prefix)).matches()) {
-                nickname = m.group(1);
-                user = m.group(2);
-                host = m.group(3);
-                return true;
+
+            int n = indexOfUserOrHost(prefix, 0);
+            if(!isNickname(prefix, n)) {
+                return false;
             }
-            return false;
+            String user = null;
+            int hostStart = n + 1;
+            if(n < prefix.length() && prefix.charAt(n) == '!') {
+                hostStart = indexOfUserOrHost(prefix, n + 1);
+                if(hostStart == n + 1 || hostStart == prefix.length() || prefix.charAt(hostStart) != '@') {
+                    return false;
+                }
+                user = prefix.substring(n + 1, hostStart);
+                hostStart++;
+            }
+            String host = null;
+            if(n < prefix.length()) {
+                if(hostStart == prefix.length() || indexOfUserOrHost(prefix, hostStart) != prefix.length()) {
+                    return false;
+                }
+                host = prefix.substring(hostStart);
+            }
+
+            this.nickname = prefix.substring(0, n);
+            this.user = user;
+            this.host = host;
+            return true;
         }
         
         /**
@@ -234,7 +388,7 @@ public class IrcMessageReader {
          */
         public boolean consumeCommand() {
             String commandVal = getToken();
-            if(COMMAND_PATTERN.matcher(commandVal).matches()) {
+            if(isCommand(commandVal)) {
                 command = commandVal;
                 return true;
             }
@@ -260,7 +414,8 @@ public class IrcMessageReader {
                     init();
                 }
             }
-            return i == -1 ? null : new IrcMessage(servername, nickname, user, host, command, parameters, styles);
+            return i == -1 ? null : new IrcMessage(tags, servername, nickname, user, host, command, parameters,
+                    styles);
         }
         
         /**
@@ -291,83 +446,272 @@ public class IrcMessageReader {
         }
         
         /**
-         * The trailing parameter is the only one for which IRC formatting codes will be considered. This method
-         * strips out the control codes from the trailing parameter and creates {@link TextStyle} objects which
-         * describe the requested formatting.
-         * 
-         * The IRC formatting codes are an unofficial subprotocol independent of the RFC, and are pretty much
-         * defined the mIRC client's interpretation of certain control codes.
+         * Strip the formatting control codes out of a parameter, recording the formatting in the parse state
          * 
          * @param trailing - the trailing parameter with formatting control codes embedded
          * 
          * @return the trailing parameter with formatting control codes stripped out
-         * 
-         * @see https://en.wikichip.org/wiki/irc/colors
          */
         private String parseTrailingFormatting(String trailing) {
-            int start = 0;
-            int end = trailing.length();
-            TextStyle style = new TextStyle(start, end);
-
-            StringBuffer sb = new StringBuffer();
-            Matcher m = FORMATTING_PATTERN.matcher(trailing);
-            while(m.find()) {
-                m.appendReplacement(sb, "");
-
-                end -= m.group().length();
-                if(sb.length() > start) {
-                    start = sb.length();
-                    styles.add(style.trimRange(start));
-                    style = new TextStyle(start, end, style);
-                }
+            return parseFormatting(trailing, styles);
+        }
+    }
 
-                if(m.group(1) != null) {
-                    style.toggle(Style.Bold);
-                }
-                else if(m.group(2) != null) {
-                    style.toggle(Style.Italic);
-                }
-                else if(m.group(3) != null) {
-                    style.toggle(Style.Underlined);
-                }
-                else if(m.group(4) != null) {
-                    style.clear();
-                }
-                else if(m.group(5) != null) {
-                    style.setColors(toColor(m.group(6)), toColor(m.group(7)));
+    /**
+     * The trailing parameter is the only one for which IRC formatting codes will be considered. This method
+     * strips out the control codes from the trailing parameter and creates {@link TextStyle} objects which
+     * describe the requested formatting.
+     * 
+     * The IRC formatting codes are an unofficial subprotocol independent of the RFC, and are pretty much
+     * defined the mIRC client's interpretation of certain control codes.
+     * 
+     * @param trailing - the trailing parameter with formatting control codes embedded
+     * 
+     * @return the trailing parameter with formatting control codes stripped out
+     * 
+     * @see https://en.wikichip.org/wiki/irc/colors
+     */
+    static String parseFormatting(String trailing, List<TextStyle> styles) {
+        int length = trailing.length();
+        int i = 0;
+        while(i < length && trailing.charAt(i) >= 0x20) {
+            i++;
+        }
+        if(i == length) {
+            return trailing;
+        }
+
+        int start = 0;
+        long style = 0;
+
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(trailing, 0, i);
+        while(i < length) {
+            char c = trailing.charAt(i);
+            int codeLength = formattingCodeLength(trailing, i);
+            if(codeLength == 0) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+
+            if(sb.length() > start) {
+                addRun(styles, start, sb.length(), style);
+                start = sb.length();
+            }
+
+            switch(c) {
+                case BOLD: style = TextStyle.toggle(style, Style.Bold); break;
+                case ITALIC: style = TextStyle.toggle(style, Style.Italic); break;
+                case UNDERLINED: style = TextStyle.toggle(style, Style.Underlined); break;
+                case RESET: style = 0; break;
+                case REVERSE: style = TextStyle.reverseColors(style); break;
+                case COLOR:
+                case HEX_COLOR:
+                    int foreground = TextStyle.DEFAULT_COLOR;
+                    int background = TextStyle.DEFAULT_COLOR;
+                    int digits = c == COLOR ? 2 : 6;
+                    int j = i + 1;
+                    if(isColorCode(trailing, j, c)) {
+                        foreground = toColor(trailing, j, c);
+                        j += digits;
+                    }
+                    if(j < length && trailing.charAt(j) == ',' && isColorCode(trailing, j + 1, c)) {
+                        background = toColor(trailing, j + 1, c);
+                    }
+                    style = TextStyle.setColors(style, foreground, background);
+                    break;
+            }
+            i += codeLength;
+        }
+
+        if(sb.length() > start) {
+            addRun(styles, start, sb.length(), style);
+        }
+        if(!styles.isEmpty() && isPlain(styles, 0)) {
+            styles.remove(0);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return whether a style run is plain, without creating a {@link TextStyle} if the list is packed
+     */
+    private static boolean isPlain(List<TextStyle> styles, int i) {
+        if(styles instanceof TextStyleList) {
+            return ((TextStyleList) styles).getPackedStyle(i) == 0;
+        }
+        return styles.get(i).isPlain();
+    }
+
+    /**
+     * Add a style run, without creating a {@link TextStyle} if the list is packed
+     */
+    private static void addRun(List<TextStyle> styles, int start, int end, long style) {
+        if(styles instanceof TextStyleList) {
+            ((TextStyleList) styles).add(start, end, style);
+        }
+        else {
+            styles.add(new TextStyle(start, end, style));
+        }
+    }
+
+    /**
+     * Length of the formatting code at the given index, including the color code arguments
+     * 
+     * @return length of the code, or 0 if the character is not a formatting code
+     */
+    private static int formattingCodeLength(String text, int i) {
+        switch(text.charAt(i)) {
+            case BOLD:
+            case ITALIC:
+            case UNDERLINED:
+            case RESET:
+            case REVERSE:
+                return 1;
+            case COLOR:
+            case HEX_COLOR:
+                int digits = text.charAt(i) == COLOR ? 2 : 6;
+                int j = i + 1;
+                if(isColorCode(text, j, text.charAt(i))) {
+                    j += digits;
                 }
-                else if(m.group(8) != null) {
-                    style.reverseColors();
+                if(j < text.length() && text.charAt(j) == ',' && isColorCode(text, j + 1, text.charAt(i))) {
+                    j += digits + 1;
                 }
+                return j - i;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * A color code argument is exactly two digits, or six hex digits for a hex color code
+     * 
+     * @param code - {@link #COLOR} or {@link #HEX_COLOR}
+     */
+    private static boolean isColorCode(String text, int i, char code) {
+        if(code == COLOR) {
+            return i + 1 < text.length() && isDigit(text.charAt(i)) && isDigit(text.charAt(i + 1));
+        }
+        if(i + 6 > text.length()) {
+            return false;
+        }
+        for(int k = i; k < i + 6; k++) {
+            char c = text.charAt(k);
+            if(c >= HEX_DIGITS.length || HEX_DIGITS[c] < 0) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            if(style.length() > 0) {
-                styles.add(style.trimRange(end));
+    /**
+     * Utility method to convert a color code argument, parsed in place, to a {@link TextStyle} color code. Two
+     * digits select a color from the extended palette, where 99 and above are the default color, and six hex
+     * digits give an RGB value.
+     * 
+     * @param text - text containing the color code
+     * @param i    - index of the first digit of the color code
+     * @param code - {@link #COLOR} or {@link #HEX_COLOR}
+     * 
+     * @return corresponding color code
+     */
+    private static int toColor(String text, int i, char code) {
+        if(code == COLOR) {
+            int n = (text.charAt(i) - '0') * 10 + (text.charAt(i + 1) - '0');
+            return n < TextStyle.PALETTE_SIZE ? n : TextStyle.DEFAULT_COLOR;
+        }
+        int rgb = 0;
+        for(int k = i; k < i + 6; k++) {
+            rgb = rgb << 4 | HEX_DIGITS[text.charAt(k)];
+        }
+        return TextStyle.RGB | rgb;
+    }
+
+    /**
+     * A servername is two or more dot separated labels, each starting with a letter or digit and continuing with
+     * letters, digits or hyphens
+     */
+    private static boolean isServername(String prefix) {
+        int labels = 0;
+        int labelStart = 0;
+        for(int i = 0; i <= prefix.length(); i++) {
+            if(i == prefix.length() || prefix.charAt(i) == '.') {
+                if(i == labelStart) {
+                    return false;
+                }
+                labels++;
+                labelStart = i + 1;
             }
-            if(styles.get(0).isPlain()) {
-                styles.remove(0);
+            else if(!isLetterOrDigit(prefix.charAt(i)) && (i == labelStart || prefix.charAt(i) != '-')) {
+                return false;
             }
-
-            m.appendTail(sb);
-            return sb.toString();
         }
+        return labels > 1;
+    }
 
-        /**
-         * Utility method to convert a text representation of a number (guaranteed to be between 1 and 2 digits),
-         * to the corresponding value from the {@link Color} enumeration. A missing value or a value that doesn't map to
-         * the color codes will be mapped to null, which is considered the default color.
-         * 
-         * @param text - up to two digit value to map
-         * 
-         * @return corresponding {@link Color} value
-         */
-        private Color toColor(String text) {
-            if(text == null) {
-                return null;
+    /**
+     * A nickname is a letter or special character followed by up to eight letters, digits, special characters or
+     * hyphens
+     */
+    private static boolean isNickname(String prefix, int end) {
+        if(end == 0 || end > 9 || !isLetterOrSpecial(prefix.charAt(0))) {
+            return false;
+        }
+        for(int i = 1; i < end; i++) {
+            char c = prefix.charAt(i);
+            if(!isLetterOrSpecial(c) && !isDigit(c) && c != '-') {
+                return false;
             }
+        }
+        return true;
+    }
 
-            int i = Integer.parseInt(text);
-            return i < Color.values().length ? Color.values()[i] : null;
+    /**
+     * Find the next '!' or '@' delimiter in the prefix
+     * 
+     * @return index of the delimiter, or the length of the prefix if there is none
+     */
+    private static int indexOfUserOrHost(String prefix, int start) {
+        int i = start;
+        while(i < prefix.length() && prefix.charAt(i) != '!' && prefix.charAt(i) != '@') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * A command is either a sequence of letters or a three digit numeric reply
+     */
+    private static boolean isCommand(String command) {
+        if(command.length() == 3 && isDigit(command.charAt(0))) {
+            return isDigit(command.charAt(1)) && isDigit(command.charAt(2));
+        }
+        for(int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if(!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z')) {
+                return false;
+            }
         }
+        return command.length() > 0;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Letters and the special characters [ \ ] ^ _ ` { | }
+     */
+    private static boolean isLetterOrSpecial(char c) {
+        return c >= 'A' && c <= 'z' || c >= '{' && c <= '}';
+    }
+
+    /**
+     * Letters, digits and the characters [ \ ] ^ _ ` which fall in the letter range
+     */
+    private static boolean isLetterOrDigit(char c) {
+        return c >= 'A' && c <= 'z' || isDigit(c);
     }
 }
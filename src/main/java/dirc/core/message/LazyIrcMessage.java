@@ -0,0 +1,150 @@
+package dirc.core.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * {@link IrcMessage} backed by the bytes of the original line. The line has already been validated by
+ * {@link IrcMessageDecoder}, which records the end of the tag block, the offsets of the prefix components and the
+ * end of the command. The tags and the prefix components are decoded when first requested, and the parameters and
+ * their formatting are decoded together the first time any of them is requested, so a message which is only routed
+ * by its command costs no more than the copy of its bytes.
+ *
+ * Decoded values are cached without synchronization. As with any mutable object, a message must be handed off
+ * safely if it is read by a thread other than the one which received it.
+ */
+class LazyIrcMessage extends IrcMessage {
+    private byte[] line;
+    private Charset charset;
+    private int tagsEnd;
+    private int prefixStart;
+    private int prefixKind;
+    private int nicknameEnd;
+    private int userStart;
+    private int hostStart;
+    private int prefixEnd;
+    private String command;
+    private int commandEnd;
+
+    private boolean prefixDecoded;
+    private String servername;
+    private String nickname;
+    private String user;
+    private String host;
+    private List<String> parameters;
+    private List<TextStyle> styles;
+    private MessageTags tags;
+
+    /**
+     * Create a message over a validated line. Offsets are relative to the start of the line, with 0 standing for
+     * an absent component.
+     *
+     * @param line        - bytes of the line, not including the line terminator
+     * @param charset     - character encoding of the line
+     * @param tagsEnd     - end of the tag block, or 0 if there are no tags
+     * @param prefixStart - start of the prefix, or of the command if there is no prefix
+     * @param prefixKind  - {@link IrcMessageDecoder#SERVERNAME}, {@link IrcMessageDecoder#NICKNAME}, or
+     *                      {@link IrcMessageDecoder#INVALID} if there is no prefix
+     * @param nicknameEnd - end of the nickname
+     * @param userStart   - start of the user
+     * @param hostStart   - start of the host
+     * @param prefixEnd   - end of the prefix
+     * @param command     - the command
+     * @param commandEnd  - end of the command
+     */
+    LazyIrcMessage(byte[] line, Charset charset, int tagsEnd, int prefixStart, int prefixKind, int nicknameEnd,
+            int userStart, int hostStart, int prefixEnd, String command, int commandEnd) {
+        super(null, null, null, null, command, null, null);
+        this.line = line;
+        this.charset = charset;
+        this.tagsEnd = tagsEnd;
+        this.prefixStart = prefixStart;
+        this.prefixKind = prefixKind;
+        this.nicknameEnd = nicknameEnd;
+        this.userStart = userStart;
+        this.hostStart = hostStart;
+        this.prefixEnd = prefixEnd;
+        this.command = command;
+        this.commandEnd = commandEnd;
+    }
+
+    @Override
+    public MessageTags getTags() {
+        if(tags == null) {
+            tags = tagsEnd == 0 ? MessageTags.EMPTY : new MessageTags(new String(line, 1, tagsEnd - 1, charset));
+        }
+        return tags;
+    }
+
+    @Override
+    public String getServername() {
+        decodePrefix();
+        return servername;
+    }
+
+    @Override
+    public String getNickname() {
+        decodePrefix();
+        return nickname;
+    }
+
+    @Override
+    public String getUser() {
+        decodePrefix();
+        return user;
+    }
+
+    @Override
+    public String getHost() {
+        decodePrefix();
+        return host;
+    }
+
+    @Override
+    public String getCommand() {
+        return command;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        decodeParameters();
+        return parameters;
+    }
+
+    @Override
+    public List<TextStyle> getTextStyles() {
+        decodeParameters();
+        return styles;
+    }
+
+    private void decodePrefix() {
+        if(prefixDecoded) {
+            return;
+        }
+        if(prefixKind == IrcMessageDecoder.SERVERNAME) {
+            servername = new String(line, prefixStart + 1, prefixEnd - prefixStart - 1, charset);
+        }
+        else if(prefixKind == IrcMessageDecoder.NICKNAME) {
+            nickname = new String(line, prefixStart + 1, nicknameEnd - prefixStart - 1, charset);
+            if(userStart > 0) {
+                user = new String(line, userStart, hostStart - 1 - userStart, charset);
+            }
+            if(hostStart > 0) {
+                host = new String(line, hostStart, prefixEnd - hostStart, charset);
+            }
+        }
+        prefixDecoded = true;
+    }
+
+    private void decodeParameters() {
+        if(parameters != null) {
+            return;
+        }
+        List<TextStyle> styles = new TextStyleList();
+        List<String> parameters = IrcMessageDecoder.parseParameters(
+                ByteBuffer.wrap(line), commandEnd, line.length, charset, styles);
+        this.styles = styles;
+        this.parameters = parameters;
+    }
+}
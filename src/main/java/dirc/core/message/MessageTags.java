@@ -0,0 +1,150 @@
+package dirc.core.message;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * IRCv3 message tags, the <code>@key=value;key2</code> block which may precede the prefix of a message. Only the
+ * text of the block is kept. Each lookup scans it for the key, and a value is unescaped only when it is returned,
+ * so tags such as server-time, msgid or batch cost nothing on a message which never reads them.
+ *
+ * @see https://ircv3.net/specs/extensions/message-tags
+ */
+public class MessageTags {
+    public static final MessageTags EMPTY = new MessageTags("");
+
+    private final String block;
+
+    /**
+     * @param block - the tag block, without the leading @ or the trailing space
+     */
+    public MessageTags(String block) {
+        this.block = block;
+    }
+
+    public boolean isEmpty() {
+        return block.isEmpty();
+    }
+
+    public boolean contains(String key) {
+        return indexOfValue(key) >= 0;
+    }
+
+    /**
+     * @param key - tag key, including any client-only + prefix or vendor prefix
+     *
+     * @return the unescaped value, an empty string if the tag has no value, or null if the tag is absent. A key
+     *         which appears more than once has its last value, as in {@link #toMap()}.
+     */
+    public String get(String key) {
+        int start = indexOfValue(key);
+        if(start < 0) {
+            return null;
+        }
+        int end = block.indexOf(';', start);
+        return unescape(block, start, end < 0 ? block.length() : end);
+    }
+
+    /**
+     * @return every tag with its unescaped value, in the order they appear. A key which appears more than once has
+     *         its last value.
+     */
+    public Map<String, String> toMap() {
+        if(block.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> tags = new LinkedHashMap<String, String>();
+        int i = 0;
+        while(i <= block.length()) {
+            int end = block.indexOf(';', i);
+            if(end < 0) {
+                end = block.length();
+            }
+            int eq = block.indexOf('=', i);
+            if(end > i) {
+                if(eq < 0 || eq > end) {
+                    tags.put(block.substring(i, end), "");
+                }
+                else {
+                    tags.put(block.substring(i, eq), unescape(block, eq + 1, end));
+                }
+            }
+            i = end + 1;
+        }
+        return tags;
+    }
+
+    /**
+     * Find a key in the block without creating any strings
+     *
+     * @return the index of the start of its last value, or -1 if the key is absent
+     */
+    private int indexOfValue(String key) {
+        int n = key.length();
+        int i = 0;
+        int length = block.length();
+        int found = -1;
+        while(i < length) {
+            if(block.regionMatches(i, key, 0, n)) {
+                int after = i + n;
+                if(after == length || block.charAt(after) == ';') {
+                    found = after;
+                }
+                else if(block.charAt(after) == '=') {
+                    found = after + 1;
+                }
+            }
+            int end = block.indexOf(';', i);
+            if(end < 0) {
+                break;
+            }
+            i = end + 1;
+        }
+        return found;
+    }
+
+    /**
+     * Undo the escaping of a tag value, in which \: stands for ; and \s for a space, \\ for \ and \r and \n for CR
+     * and LF. A backslash before any other character is dropped, as is a trailing backslash.
+     */
+    static String unescape(String s, int start, int end) {
+        int escape = s.indexOf('\\', start);
+        if(escape < 0 || escape >= end) {
+            return s.substring(start, end);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(s, start, escape);
+        for(int i = escape; i < end; i++) {
+            char c = s.charAt(i);
+            if(c != '\\') {
+                sb.append(c);
+            }
+            else if(++i < end) {
+                c = s.charAt(i);
+                switch(c) {
+                    case ':':
+                        sb.append(';');
+                        break;
+                    case 's':
+                        sb.append(' ');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    default:
+                        sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return block;
+    }
+}
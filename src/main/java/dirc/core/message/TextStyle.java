@@ -1,9 +1,5 @@
 package dirc.core.message;
 
-import java.util.Arrays;
-import java.util.EnumMap;
-import java.util.List;
-
 public class TextStyle {
     public enum Style {
         Bold, Italic, Underlined, Color
@@ -14,20 +10,43 @@ public class TextStyle {
         LightGreen, Teal, LightCyan, LightBlue, Pink, Grey, LightGrey
     }
 
+    /**
+     * Colour code of the default colour
+     */
+    public static final int DEFAULT_COLOR = -1;
+
+    /**
+     * Number of colours in the extended mIRC palette, 0 to 15 being the {@link Color}s
+     */
+    public static final int PALETTE_SIZE = 99;
+
+    /**
+     * Flag set on a colour code holding a 0xRRGGBB value rather than a palette number
+     */
+    public static final int RGB = 0x1000000;
+
+    private static final Color[] COLORS = Color.values();
+
+    // Layout of the packed style: a bit per Style by ordinal, then foreground and background colour fields which
+    // hold 0 for the default colour or the colour code plus one
+    private static final int FOREGROUND_SHIFT = 4;
+    private static final int BACKGROUND_SHIFT = 34;
+    private static final long COLOR_MASK = (1L << 30) - 1;
+    private static final long COLORS_MASK = ~((1L << FOREGROUND_SHIFT) - 1);
+
     private int start;
     private int end;
-    private EnumMap<Style, Object> styles;
+    private long style;
     
     public TextStyle(int start, int end) {
         this.start = start;
         this.end = end;
-        this.styles = new EnumMap<Style, Object>(Style.class);
     }
     
     public TextStyle(TextStyle style) {
         this.start = style.start;
         this.end = style.end;
-        this.styles = new EnumMap<Style, Object>(style.styles);
+        this.style = style.style;
     }
 
     public TextStyle(int start, int end, TextStyle style) {
@@ -36,16 +55,59 @@ public class TextStyle {
         this.end = end;
     }
 
+    /**
+     * Create a style run from its packed style
+     *
+     * @see #getPackedStyle()
+     */
+    public TextStyle(int start, int end, long packedStyle) {
+        this.start = start;
+        this.end = end;
+        this.style = packedStyle;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("textstyle: ");
         sb.append("[ start: ").append(start);
         sb.append(", end: ").append(end);
-        sb.append(", styles: ").append(styles);
-        sb.append("]");
+        sb.append(", styles: {");
+        String separator = "";
+        for (Style s : Style.values()) {
+            if(is(s)) {
+                sb.append(separator).append(s).append('=');
+                if(s == Style.Color) {
+                    sb.append('[');
+                    appendColor(sb, getForegroundColor());
+                    sb.append(", ");
+                    appendColor(sb, getBackgroundColor());
+                    sb.append(']');
+                }
+                else {
+                    sb.append(true);
+                }
+                separator = ", ";
+            }
+        }
+        sb.append("}]");
         return sb .toString();
     }
 
+    private static void appendColor(StringBuilder sb, int code) {
+        if(code == DEFAULT_COLOR) {
+            sb.append("null");
+        }
+        else if(code < COLORS.length) {
+            sb.append(COLORS[code]);
+        }
+        else if(code < PALETTE_SIZE) {
+            sb.append(code);
+        }
+        else {
+            sb.append('#').append(Integer.toHexString(code & 0xffffff | RGB).substring(1));
+        }
+    }
+
     public int getStart() {
         return start;
     }
@@ -53,48 +115,102 @@ public class TextStyle {
     public int getEnd() {
         return end;
     }
+
+    /**
+     * The styles and colours of this run packed into a long, as stored by {@link TextStyleList}
+     */
+    public long getPackedStyle() {
+        return style;
+    }
     
     public boolean is(Style style) {
-        return styles.containsKey(style);
+        return is(this.style, style);
+    }
+
+    static boolean is(long packedStyle, Style style) {
+        return (packedStyle & 1L << style.ordinal()) != 0;
     }
 
     public boolean isPlain() {
-        return styles.isEmpty();
+        return style == 0;
     }
 
+    /**
+     * @return the foreground, or null if it is the default colour or not one of the 16 basic colours
+     */
     public Color getForeground() {
-        return getColor().get(0);
+        return color(getForegroundColor());
     }
 
+    /**
+     * @return the background, or null if it is the default colour or not one of the 16 basic colours
+     */
     public Color getBackground() {
-        return getColor().get(1);
+        return color(getBackgroundColor());
     }
 
-    @SuppressWarnings("unchecked")
-    private List<Color> getColor() {
-        List<Color> colors = (List<Color>) styles.get(Style.Color);
-        return colors != null ? colors : Arrays.<Color> asList(null, null);
+    /**
+     * @return the foreground colour code: {@link #DEFAULT_COLOR}, a palette number, or {@link #RGB} with an RGB
+     *         value
+     */
+    public int getForegroundColor() {
+        return code(style >>> FOREGROUND_SHIFT);
     }
-    
+
+    /**
+     * @return the background colour code: {@link #DEFAULT_COLOR}, a palette number, or {@link #RGB} with an RGB
+     *         value
+     */
+    public int getBackgroundColor() {
+        return code(style >>> BACKGROUND_SHIFT);
+    }
+
+    private static int code(long field) {
+        return (int) (field & COLOR_MASK) - 1;
+    }
+
+    private static Color color(int code) {
+        return code >= 0 && code < COLORS.length ? COLORS[code] : null;
+    }
+
+    private static int code(Color color) {
+        return color == null ? DEFAULT_COLOR : color.ordinal();
+    }
+
     public void clear() {
-        styles.clear();
+        style = 0;
     }
 
     public TextStyle toggle(Style style) {
-        if(!styles.containsKey(style)) {
-            styles.put(style, Boolean.TRUE);
-        }
-        else {
-            styles.remove(style);
-        }
+        this.style = toggle(this.style, style);
         return this;
     }
 
+    static long toggle(long packedStyle, Style style) {
+        packedStyle ^= 1L << style.ordinal();
+        return is(packedStyle, Style.Color) ? packedStyle : packedStyle & ~COLORS_MASK;
+    }
+
     public TextStyle setColors(Color foreground, Color background) {
-        styles.put(Style.Color, Arrays.asList(foreground, background));
+        return setColors(code(foreground), code(background));
+    }
+
+    /**
+     * @param foreground - foreground colour code
+     * @param background - background colour code
+     *
+     * @see #getForegroundColor()
+     */
+    public TextStyle setColors(int foreground, int background) {
+        this.style = setColors(this.style, foreground, background);
         return this;
     }
 
+    static long setColors(long packedStyle, int foreground, int background) {
+        return packedStyle & ~COLORS_MASK | 1L << Style.Color.ordinal() |
+                (foreground + 1L) << FOREGROUND_SHIFT | (background + 1L) << BACKGROUND_SHIFT;
+    }
+
     public TextStyle trimRange(int end) {
         this.end = end;
         return this;
@@ -105,9 +221,13 @@ public class TextStyle {
     }
 
     public void reverseColors() {
-        Color foreground = getForeground();
-        Color background = getBackground();
-        setColors(background != null ? background : Color.White, foreground != null ? foreground : Color.Black);
+        style = reverseColors(style);
     }
-}
 
+    static long reverseColors(long packedStyle) {
+        int foreground = is(packedStyle, Style.Color) ? code(packedStyle >>> FOREGROUND_SHIFT) : DEFAULT_COLOR;
+        int background = is(packedStyle, Style.Color) ? code(packedStyle >>> BACKGROUND_SHIFT) : DEFAULT_COLOR;
+        return setColors(packedStyle, background != DEFAULT_COLOR ? background : Color.White.ordinal(),
+                foreground != DEFAULT_COLOR ? foreground : Color.Black.ordinal());
+    }
+}
@@ -0,0 +1,97 @@
+package dirc.core.message;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The style runs of a message packed into a single long array, two longs per run: the start and end offsets, and
+ * the styles and colours as packed by {@link TextStyle#getPackedStyle()}. A message's formatting costs one small
+ * array instead of a {@link TextStyle} object, a map and a colour list per run.
+ *
+ * {@link #get(int)} returns a new {@link TextStyle} holding a copy of the run, so changes to it are not seen by
+ * the list unless it is {@link #set(int, TextStyle) set} back.
+ */
+public class TextStyleList extends AbstractList<TextStyle> implements RandomAccess {
+    private static final long[] EMPTY = new long[0];
+
+    private long[] runs;
+    private int size;
+
+    public TextStyleList() {
+        this.runs = EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public TextStyle get(int i) {
+        check(i);
+        return new TextStyle(getStart(i), getEnd(i), runs[2 * i + 1]);
+    }
+
+    public int getStart(int i) {
+        check(i);
+        return (int) (runs[2 * i] >>> 32);
+    }
+
+    public int getEnd(int i) {
+        check(i);
+        return (int) runs[2 * i];
+    }
+
+    public long getPackedStyle(int i) {
+        check(i);
+        return runs[2 * i + 1];
+    }
+
+    /**
+     * Append a run without creating a {@link TextStyle}
+     */
+    public void add(int start, int end, long packedStyle) {
+        if(2 * size == runs.length) {
+            runs = Arrays.copyOf(runs, Math.max(8, runs.length * 2));
+        }
+        runs[2 * size] = (long) start << 32 | end & 0xffffffffL;
+        runs[2 * size + 1] = packedStyle;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public void add(int i, TextStyle ts) {
+        if(i < 0 || i > size) {
+            throw new IndexOutOfBoundsException("Index " + i + " of " + size);
+        }
+        add(0, 0, 0);
+        System.arraycopy(runs, 2 * i, runs, 2 * i + 2, 2 * (size - 1 - i));
+        runs[2 * i] = (long) ts.getStart() << 32 | ts.getEnd() & 0xffffffffL;
+        runs[2 * i + 1] = ts.getPackedStyle();
+    }
+
+    @Override
+    public TextStyle set(int i, TextStyle ts) {
+        TextStyle previous = get(i);
+        runs[2 * i] = (long) ts.getStart() << 32 | ts.getEnd() & 0xffffffffL;
+        runs[2 * i + 1] = ts.getPackedStyle();
+        return previous;
+    }
+
+    @Override
+    public TextStyle remove(int i) {
+        TextStyle previous = get(i);
+        System.arraycopy(runs, 2 * i + 2, runs, 2 * i, 2 * (size - 1 - i));
+        size--;
+        modCount++;
+        return previous;
+    }
+
+    private void check(int i) {
+        if(i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " of " + size);
+        }
+    }
+}
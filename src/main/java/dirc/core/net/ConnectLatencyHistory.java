@@ -0,0 +1,139 @@
+package dirc.core.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import dirc.core.config.IrcServerInfo;
+
+/**
+ * How long connecting to each server has taken, and how often it has failed, so that a {@link ConnectionRace} can
+ * try the servers most likely to answer quickly first. Connect times are kept as an exponentially weighted moving
+ * average, so a server which has become slow drops down the ranking within a few attempts. Safe for use by
+ * multiple threads.
+ */
+public class ConnectLatencyHistory {
+    // Weight of the newest sample in the moving average
+    private static final double ALPHA = 0.3;
+
+    private final ConcurrentMap<String, Entry> entries;
+
+    /**
+     * Connect history of a single server
+     */
+    public static class Entry {
+        private long attempts;
+        private long failures;
+        private int consecutiveFailures;
+        private long lastNanos = -1;
+        private double averageNanos = -1;
+
+        private synchronized void succeeded(long nanos) {
+            attempts++;
+            consecutiveFailures = 0;
+            lastNanos = nanos;
+            averageNanos = averageNanos < 0 ? nanos : ALPHA * nanos + (1 - ALPHA) * averageNanos;
+        }
+
+        private synchronized void failed() {
+            attempts++;
+            failures++;
+            consecutiveFailures++;
+        }
+
+        public synchronized long getAttempts() {
+            return attempts;
+        }
+
+        public synchronized long getFailures() {
+            return failures;
+        }
+
+        public synchronized int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        /**
+         * @return the time taken by the last successful connect, or -1 if there has been none
+         */
+        public synchronized long getLastNanos() {
+            return lastNanos;
+        }
+
+        /**
+         * @return the moving average of successful connect times, or -1 if there has been none
+         */
+        public synchronized long getAverageNanos() {
+            return (long) averageNanos;
+        }
+    }
+
+    public ConnectLatencyHistory() {
+        this.entries = new ConcurrentHashMap<String, Entry>();
+    }
+
+    /**
+     * @return the history of the server, or null if it has never been tried
+     */
+    public Entry get(IrcServerInfo s) {
+        return entries.get(key(s));
+    }
+
+    void succeeded(IrcServerInfo s, long nanos) {
+        entry(s).succeeded(nanos);
+    }
+
+    void failed(IrcServerInfo s) {
+        entry(s).failed();
+    }
+
+    /**
+     * Order servers by how promising they are: those failing least recently first, then those with the lowest
+     * average connect time, then those never tried. Servers which rank equally keep their configured order.
+     *
+     * @param servers - servers in configured order
+     *
+     * @return a new list of the servers in the order they should be tried
+     */
+    public List<IrcServerInfo> rank(List<IrcServerInfo> servers) {
+        List<IrcServerInfo> ranked = new ArrayList<IrcServerInfo>(servers);
+        Collections.sort(ranked, new Comparator<IrcServerInfo>() {
+            public int compare(IrcServerInfo a, IrcServerInfo b) {
+                Entry ea = get(a);
+                Entry eb = get(b);
+                int c = Integer.compare(failures(ea), failures(eb));
+                return c != 0 ? c : Long.compare(average(ea), average(eb));
+            }
+        });
+        return ranked;
+    }
+
+    private static int failures(Entry e) {
+        return e == null ? 0 : e.getConsecutiveFailures();
+    }
+
+    private static long average(Entry e) {
+        long average = e == null ? -1 : e.getAverageNanos();
+        return average < 0 ? Long.MAX_VALUE : average;
+    }
+
+    private Entry entry(IrcServerInfo s) {
+        String key = key(s);
+        Entry e = entries.get(key);
+        if(e == null) {
+            Entry created = new Entry();
+            e = entries.putIfAbsent(key, created);
+            if(e == null) {
+                e = created;
+            }
+        }
+        return e;
+    }
+
+    private static String key(IrcServerInfo s) {
+        return s.getHostname() + ":" + s.getPort();
+    }
+}
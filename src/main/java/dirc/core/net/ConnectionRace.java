@@ -0,0 +1,372 @@
+package dirc.core.net;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import dirc.core.config.IrcServerInfo;
+
+/**
+ * Connects to the first of several servers to answer, in the manner of Happy Eyeballs (RFC 8305). Servers are
+ * tried in the order ranked by a {@link ConnectLatencyHistory}, and the addresses of each server alternate between
+ * address families. A new attempt is started every attempt delay, or as soon as an attempt fails, without waiting
+ * for the attempts already in flight, so a slow or dead server costs no more than the attempt delay. The first
+ * attempt to connect wins and the others are closed.
+ *
+ * Host names are resolved on threads of their own when their server's turn comes, so a server which is never needed
+ * is never looked up, and a slow lookup neither holds up the attempts in flight nor outlasts the timeout. A lookup
+ * which takes longer than the attempt delay is treated like a slow attempt, and the next server is looked up too. A
+ * server is recorded as failed at most once per race, once every one of its addresses has failed. A race runs on
+ * the calling thread and may only be run once.
+ */
+public class ConnectionRace {
+    /** Delay between attempts recommended by RFC 8305 */
+    public static final long DEFAULT_ATTEMPT_DELAY_MILLIS = 250;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    private final Deque<IrcServerInfo> servers;
+    private final List<Resolution> resolving;
+    private final Deque<Attempt> candidates;
+    private final List<Attempt> attempts;
+    private final Map<IrcServerInfo, Integer> untried;
+    private final ConnectLatencyHistory history;
+    private final Resolver resolver;
+    private final long attemptDelayNanos;
+    private final long timeoutNanos;
+
+    private IOException failure;
+
+    /**
+     * Looks up the addresses of a host name
+     */
+    interface Resolver {
+        InetAddress[] resolve(String hostname) throws IOException;
+    }
+
+    static final Resolver SYSTEM_RESOLVER = new Resolver() {
+        public InetAddress[] resolve(String hostname) throws IOException {
+            return InetAddress.getAllByName(hostname);
+        }
+    };
+
+    /**
+     * Lookup of one server's addresses, which wakes the race up when it is done
+     */
+    private class Resolution implements Runnable {
+        private final IrcServerInfo server;
+        private final Selector selector;
+        private InetAddress[] addresses;
+        private IOException failure;
+        private volatile boolean done;
+
+        private Resolution(IrcServerInfo server, Selector selector) {
+            this.server = server;
+            this.selector = selector;
+        }
+
+        public void run() {
+            try {
+                addresses = resolver.resolve(server.getHostname());
+            }
+            catch (IOException ex) {
+                failure = ex;
+            }
+            catch (RuntimeException ex) {
+                failure = new IOException("Cannot resolve " + server.getHostname(), ex);
+            }
+            finally {
+                done = true;
+                selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Connection attempt to one address of a server
+     */
+    private static class Attempt {
+        private final IrcServerInfo server;
+        private final InetSocketAddress address;
+        private SocketChannel channel;
+        private long started;
+        private long connectNanos;
+
+        private Attempt(IrcServerInfo server, InetSocketAddress address) {
+            this.server = server;
+            this.address = address;
+        }
+    }
+
+    /**
+     * Established connection which won the race
+     */
+    public static class Result {
+        private final IrcServerInfo server;
+        private final SocketChannel channel;
+        private final long connectNanos;
+
+        private Result(IrcServerInfo server, SocketChannel channel, long connectNanos) {
+            this.server = server;
+            this.channel = channel;
+            this.connectNanos = connectNanos;
+        }
+
+        public IrcServerInfo getServer() {
+            return server;
+        }
+
+        /**
+         * @return the connected channel, in blocking mode
+         */
+        public SocketChannel getChannel() {
+            return channel;
+        }
+
+        /**
+         * @return time taken to connect by the winning attempt
+         */
+        public long getConnectNanos() {
+            return connectNanos;
+        }
+    }
+
+    public ConnectionRace(List<IrcServerInfo> servers, ConnectLatencyHistory history) {
+        this(servers, history, DEFAULT_ATTEMPT_DELAY_MILLIS, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param servers      - servers in configured order
+     * @param history      - history used to rank the servers, and which records the outcome of every attempt
+     * @param attemptDelay - time to wait for an attempt before starting the next
+     * @param timeout      - time to wait for any attempt to connect
+     * @param unit         - unit of the delay and timeout
+     */
+    public ConnectionRace(List<IrcServerInfo> servers, ConnectLatencyHistory history, long attemptDelay,
+            long timeout, TimeUnit unit) {
+        this(servers, history, attemptDelay, timeout, unit, SYSTEM_RESOLVER);
+    }
+
+    ConnectionRace(List<IrcServerInfo> servers, ConnectLatencyHistory history, long attemptDelay, long timeout,
+            TimeUnit unit, Resolver resolver) {
+        this.servers = new ArrayDeque<IrcServerInfo>(history.rank(servers));
+        this.resolving = new ArrayList<Resolution>();
+        this.candidates = new ArrayDeque<Attempt>();
+        this.attempts = new ArrayList<Attempt>();
+        this.untried = new HashMap<IrcServerInfo, Integer>();
+        this.history = history;
+        this.resolver = resolver;
+        this.attemptDelayNanos = unit.toNanos(attemptDelay);
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Race the servers until one connects
+     *
+     * @return the winning connection
+     * @throws SocketTimeoutException if no server connected within the timeout
+     * @throws IOException            the failure of the last attempt, if every attempt failed
+     */
+    public Result run() throws IOException {
+        Selector selector = Selector.open();
+        Attempt winner = null;
+        try {
+            long deadline = System.nanoTime() + timeoutNanos;
+            long nextAttempt = System.nanoTime();
+            int inFlight = 0;
+            while(winner == null) {
+                long now = System.nanoTime();
+                if(now - deadline >= 0) {
+                    throw new SocketTimeoutException("No server connected within "
+                            + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+                }
+
+                collectResolved();
+                // Look up the next server once the addresses resolved so far are used up, or if the lookup in
+                // progress is taking longer than an attempt would be given
+                if(candidates.isEmpty() && !servers.isEmpty() && (resolving.isEmpty() || now - nextAttempt >= 0)) {
+                    Resolution resolution = new Resolution(servers.poll(), selector);
+                    resolving.add(resolution);
+                    Thread t = new Thread(resolution, "irc-resolve-" + resolution.server.getHostname());
+                    t.setDaemon(true);
+                    t.start();
+                    nextAttempt = now + attemptDelayNanos;
+                    continue;
+                }
+
+                if(!candidates.isEmpty() && (inFlight == 0 || now - nextAttempt >= 0)) {
+                    Attempt a = candidates.poll();
+                    if(start(a, selector)) {
+                        winner = a;
+                    }
+                    else if(a.channel != null) {
+                        inFlight++;
+                        nextAttempt = now + attemptDelayNanos;
+                    }
+                    continue;
+                }
+                if(inFlight == 0 && candidates.isEmpty() && resolving.isEmpty() && servers.isEmpty()) {
+                    throw failure != null ? failure : new ConnectException("No server to connect to");
+                }
+
+                long wait = (candidates.isEmpty() && servers.isEmpty() ? deadline : Math.min(deadline, nextAttempt))
+                        - now;
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                for(Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext();) {
+                    SelectionKey key = i.next();
+                    i.remove();
+                    Attempt a = (Attempt) key.attachment();
+                    if(finish(a)) {
+                        winner = a;
+                        break;
+                    }
+                    if(a.channel == null) {
+                        inFlight--;
+                        // A failed attempt is followed straight away rather than after the attempt delay
+                        nextAttempt = now;
+                    }
+                }
+            }
+        }
+        finally {
+            // Closing the selector deregisters the winner, so it can be put back into blocking mode
+            selector.close();
+            for(Attempt a : attempts) {
+                if(a != winner && a.channel != null) {
+                    close(a.channel);
+                }
+            }
+        }
+        winner.channel.configureBlocking(true);
+        return new Result(winner.server, winner.channel, winner.connectNanos);
+    }
+
+    /**
+     * Start a non-blocking connect to the attempt's address
+     *
+     * @return true if it connected immediately
+     */
+    private boolean start(Attempt a, Selector selector) {
+        attempts.add(a);
+        a.started = System.nanoTime();
+        try {
+            a.channel = SocketChannel.open();
+            a.channel.configureBlocking(false);
+            if(a.channel.connect(a.address)) {
+                connected(a);
+                return true;
+            }
+            a.channel.register(selector, SelectionKey.OP_CONNECT, a);
+        }
+        catch (IOException ex) {
+            failed(a, ex);
+        }
+        return false;
+    }
+
+    /**
+     * Complete a connect the selector reported as ready
+     *
+     * @return true if it connected, false if it failed
+     */
+    private boolean finish(Attempt a) {
+        try {
+            if(a.channel.finishConnect()) {
+                connected(a);
+                return true;
+            }
+            return false;
+        }
+        catch (IOException ex) {
+            failed(a, ex);
+            return false;
+        }
+    }
+
+    private void connected(Attempt a) {
+        a.connectNanos = System.nanoTime() - a.started;
+        history.succeeded(a.server, a.connectNanos);
+    }
+
+    private void failed(Attempt a, IOException ex) {
+        // A server only counts as failed once all of its addresses have
+        int left = untried.get(a.server) - 1;
+        untried.put(a.server, left);
+        if(left == 0) {
+            history.failed(a.server);
+        }
+        failure = ex;
+        if(a.channel != null) {
+            close(a.channel);
+            a.channel = null;
+        }
+    }
+
+    /**
+     * Take the addresses of the servers whose lookup has finished as candidates
+     */
+    private void collectResolved() {
+        for(Iterator<Resolution> i = resolving.iterator(); i.hasNext();) {
+            Resolution resolution = i.next();
+            if(!resolution.done) {
+                continue;
+            }
+            i.remove();
+            IrcServerInfo s = resolution.server;
+            if(resolution.failure != null || resolution.addresses.length == 0) {
+                history.failed(s);
+                failure = resolution.failure != null ? resolution.failure
+                        : new ConnectException("No address for " + s.getHostname());
+                continue;
+            }
+            untried.put(s, resolution.addresses.length);
+            for(InetAddress address : interleave(resolution.addresses)) {
+                candidates.add(new Attempt(s, new InetSocketAddress(address, s.getPort())));
+            }
+        }
+    }
+
+    /**
+     * Alternate the addresses between IPv6 and IPv4, starting with the family of the first address
+     */
+    static List<InetAddress> interleave(InetAddress[] addresses) {
+        List<InetAddress> first = new ArrayList<InetAddress>();
+        List<InetAddress> second = new ArrayList<InetAddress>();
+        for(InetAddress address : addresses) {
+            boolean sameFamily = (address instanceof Inet6Address) == (addresses[0] instanceof Inet6Address);
+            (sameFamily ? first : second).add(address);
+        }
+        List<InetAddress> interleaved = new ArrayList<InetAddress>(addresses.length);
+        for(int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if(i < first.size()) {
+                interleaved.add(first.get(i));
+            }
+            if(i < second.size()) {
+                interleaved.add(second.get(i));
+            }
+        }
+        return interleaved;
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            // nothing more to release
+        }
+    }
+}
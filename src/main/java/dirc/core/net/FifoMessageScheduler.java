@@ -0,0 +1,28 @@
+package dirc.core.net;
+
+/**
+ * Sends messages in the order they were queued, as fast as the connection can write them, apart from the
+ * keepalive and QUIT messages which jump ahead of the queue
+ */
+public class FifoMessageScheduler extends PriorityMessageScheduler {
+    public FifoMessageScheduler() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity - maximum number of queued bulk messages
+     */
+    public FifoMessageScheduler(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected boolean release(boolean priority) {
+        return true;
+    }
+
+    @Override
+    protected long nanosUntilRelease() {
+        return 0;
+    }
+}
@@ -1,13 +1,31 @@
 package dirc.core.net;
 
 import java.io.IOException;
+import java.nio.channels.SocketChannel;
 
 import dirc.core.message.IrcMessage;
 import dirc.core.message.IrcMessageListener;
 
 public interface IrcConnection {
     void addMessageListener(IrcMessageListener listener);
+    void addConnectionListener(IrcConnectionListener listener);
     void connect() throws IOException;
+    /**
+     * Start using a channel which has already been connected to the server, such as the winner of a
+     * {@link ConnectionRace}
+     * 
+     * @param channel - connected channel, in blocking mode
+     */
+    void connect(SocketChannel channel) throws IOException;
+    /**
+     * Close the connection. Messages still queued are kept, and sent if the connection is connected again.
+     */
     void close();
-    void sendMessage(IrcMessage message);
+    /**
+     * Queue a message for sending
+     * 
+     * @return false if the outbox is full and the message was not queued
+     */
+    boolean sendMessage(IrcMessage message);
+    WriteMetrics getWriteMetrics();
 }
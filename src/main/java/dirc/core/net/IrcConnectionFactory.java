@@ -0,0 +1,38 @@
+package dirc.core.net;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+
+import dirc.core.config.FloodControl;
+import dirc.core.config.IrcServerInfo;
+
+/**
+ * Creates the {@link IrcConnection} implementation selected by {@link IrcServerInfo#getConnectionType()}, with an
+ * outbox paced by the server's {@link FloodControl}, decoding received messages lazily if the server info asks for it
+ */
+public class IrcConnectionFactory {
+    private IrcConnectionFactory() {
+    }
+
+    public static IrcConnection create(IrcServerInfo s) throws IOException {
+        MessageScheduler scheduler = createScheduler(s.getFloodControl());
+        switch(s.getConnectionType()) {
+            case VirtualThreads:
+                return new ThreadedSocketIrcConnection(s.getHostname(), s.getPort(), s.getCharset(),
+                        VirtualThreads.factory(), scheduler, s.isLazyMessages());
+            case Selector:
+                return new SelectorIrcConnection(s.getHostname(), s.getPort(), s.getCharset(),
+                        IrcSelectorLoop.getDefault(), scheduler, s.isLazyMessages());
+            default:
+                return new ThreadedSocketIrcConnection(s.getHostname(), s.getPort(), s.getCharset(),
+                        Executors.defaultThreadFactory(), scheduler, s.isLazyMessages());
+        }
+    }
+
+    public static MessageScheduler createScheduler(FloodControl f) {
+        if(f == null) {
+            return new FifoMessageScheduler();
+        }
+        return new TokenBucketMessageScheduler(f.getBurst(), f.getRefillPerSecond(), f.getOutboxCapacity());
+    }
+}
@@ -0,0 +1,15 @@
+package dirc.core.net;
+
+import java.io.IOException;
+
+/**
+ * Notified when an {@link IrcConnection} is lost other than by being closed
+ */
+public interface IrcConnectionListener {
+    /**
+     * Called on the thread which noticed the loss, once the connection has been closed
+     *
+     * @param cause - the failure, or null if the server closed the connection
+     */
+    void connectionLost(IOException cause);
+}
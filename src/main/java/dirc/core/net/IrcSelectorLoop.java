@@ -0,0 +1,210 @@
+package dirc.core.net;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event loop which multiplexes the reads and writes of many {@link SelectorIrcConnection}s on a single thread.
+ * Channels are only ever registered and have their interest changed on the loop thread, so other threads hand
+ * that work over as tasks and wake the selector.
+ */
+public class IrcSelectorLoop {
+    private static IrcSelectorLoop defaultLoop;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final PriorityQueue<Timer> timers;
+    private final Thread thread;
+
+    /**
+     * Task to run on the loop thread once its deadline has passed
+     */
+    private static class Timer implements Comparable<Timer> {
+        private final long deadline;
+        private final Runnable task;
+
+        private Timer(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public int compareTo(Timer o) {
+            return Long.signum(deadline - o.deadline);
+        }
+    }
+
+    /**
+     * Create and start an event loop
+     *
+     * @param name - name of the loop thread
+     * @throws IOException
+     */
+    public IrcSelectorLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<Runnable>();
+        this.timers = new PriorityQueue<Timer>();
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * The loop shared by connections which are not given their own
+     *
+     * @throws IOException
+     */
+    public static synchronized IrcSelectorLoop getDefault() throws IOException {
+        if(defaultLoop == null) {
+            defaultLoop = new IrcSelectorLoop("irc-selector");
+        }
+        return defaultLoop;
+    }
+
+    /**
+     * Register a connected channel for reads, and for writes if messages were queued before it connected
+     *
+     * @param channel    - non-blocking channel
+     * @param connection - connection to notify of ready operations
+     */
+    void register(final SocketChannel channel, final SelectorIrcConnection connection) {
+        execute(new Runnable() {
+            public void run() {
+                try {
+                    int ops = SelectionKey.OP_READ | (connection.hasPendingWrites() ? SelectionKey.OP_WRITE : 0);
+                    channel.register(selector, ops, connection);
+                }
+                catch (ClosedChannelException ex) {
+                    connection.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Ask to be notified when the channel can be written
+     *
+     * @param channel - registered channel
+     */
+    void wantWrite(final SocketChannel channel) {
+        execute(new Runnable() {
+            public void run() {
+                SelectionKey key = channel.keyFor(selector);
+                if(key != null && key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run a task on the loop thread
+     */
+    void execute(Runnable task) {
+        if(Thread.currentThread() == thread) {
+            task.run();
+        }
+        else {
+            tasks.offer(task);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Run a task on the loop thread after a delay
+     */
+    void schedule(final Runnable task, long delayNanos) {
+        final long deadline = System.nanoTime() + delayNanos;
+        execute(new Runnable() {
+            public void run() {
+                timers.offer(new Timer(deadline, task));
+            }
+        });
+    }
+
+    /**
+     * Hand a failure to the loop thread's uncaught exception handler without stopping the loop
+     */
+    private void report(Throwable ex) {
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+    }
+
+    private void loop() {
+        while(!Thread.currentThread().isInterrupted()) {
+            try {
+                Timer next = timers.peek();
+                if(next == null) {
+                    selector.select();
+                }
+                else {
+                    long wait = TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime() + 999999);
+                    if(wait > 0) {
+                        selector.select(wait);
+                    }
+                    else {
+                        selector.selectNow();
+                    }
+                }
+            }
+            catch (IOException ex) {
+                if(!selector.isOpen()) {
+                    return;
+                }
+                // Still run the tasks and timers, and service whatever keys were selected
+                report(ex);
+            }
+
+            // A failing task or timer must not take down every connection on the loop either
+            Runnable task;
+            while((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                }
+                catch (RuntimeException ex) {
+                    report(ex);
+                }
+            }
+            long now = System.nanoTime();
+            while(!timers.isEmpty() && timers.peek().deadline - now <= 0) {
+                try {
+                    timers.poll().task.run();
+                }
+                catch (RuntimeException ex) {
+                    report(ex);
+                }
+            }
+
+            for(Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext();) {
+                SelectionKey key = i.next();
+                i.remove();
+                SelectorIrcConnection connection = (SelectorIrcConnection) key.attachment();
+                try {
+                    if(key.isValid() && key.isReadable()) {
+                        connection.read();
+                    }
+                    if(key.isValid() && key.isWritable()) {
+                        if(connection.write() && key.isValid()) {
+                            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                        }
+                    }
+                }
+                catch (RuntimeException ex) {
+                    // A failing connection must not take down every other connection on the loop
+                    connection.failed(ex);
+                    report(ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package dirc.core.net;
+
+import dirc.core.message.IrcMessage;
+
+/**
+ * Outbox of an {@link IrcConnection}, deciding the order in which queued messages are written and when each one
+ * may go. Callers queue from any thread; the connection's writer takes messages as they are released.
+ */
+public interface MessageScheduler {
+    /**
+     * Queue a message for sending
+     * 
+     * @return false if the outbox is full and the message was not queued
+     */
+    boolean offer(IrcMessage message);
+
+    /**
+     * Wait for the next message that may be sent now
+     */
+    IrcMessage take() throws InterruptedException;
+
+    /**
+     * @return the next message that may be sent now, or null if there is none
+     */
+    IrcMessage poll();
+
+    /**
+     * @return nanoseconds until {@link #poll()} will release a message, 0 if it will now, or {@link Long#MAX_VALUE}
+     *         if nothing is queued
+     */
+    long nanosUntilReady();
+
+    boolean isEmpty();
+}
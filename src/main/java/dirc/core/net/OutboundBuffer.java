@@ -0,0 +1,78 @@
+package dirc.core.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import dirc.core.message.IrcMessage;
+
+/**
+ * Reusable direct buffer into which outgoing messages are encoded back to back, so that a whole batch of messages
+ * goes out to the socket in a single write.
+ */
+class OutboundBuffer {
+    private static final Logger LOG = Logger.getLogger(OutboundBuffer.class.getName());
+    private static final int BUFFER_SIZE = 16384;
+
+    private ByteBuffer buf;
+    private CharsetEncoder encoder;
+
+    OutboundBuffer(Charset charset) {
+        this.buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Encode a message after those already in the buffer. A message which cannot be serialized, such as one with a
+     * space in a middle parameter, is logged and dropped, so that it does not hold up the messages queued after it.
+     *
+     * @return false if the message does not fit in the space left, in which case the buffer is unchanged
+     */
+    boolean add(IrcMessage message) {
+        try {
+            if(message.serializeTo(buf, encoder)) {
+                return true;
+            }
+        }
+        catch (IllegalArgumentException ex) {
+            LOG.log(Level.WARNING, "Dropped invalid " + message.getCommand() + " message", ex);
+            return true;
+        }
+        if(buf.position() > 0) {
+            return false;
+        }
+        // A single message larger than the buffer, grow to fit it
+        buf = ByteBuffer.allocateDirect(buf.capacity() * 2);
+        return add(message);
+    }
+
+    /**
+     * Discard the buffered bytes, such as the remains of a message part written to a connection which was lost
+     */
+    void clear() {
+        buf.clear();
+    }
+
+    boolean isEmpty() {
+        return buf.position() == 0;
+    }
+
+    /**
+     * Write the buffered bytes in a single write call, keeping any the channel did not accept
+     *
+     * @return true if the buffer was emptied
+     */
+    boolean writeTo(WritableByteChannel channel) throws IOException {
+        buf.flip();
+        channel.write(buf);
+        buf.compact();
+        return isEmpty();
+    }
+}
@@ -0,0 +1,153 @@
+package dirc.core.net;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import dirc.core.message.IrcMessage;
+
+/**
+ * Base for schedulers with two lanes. Keepalive traffic (PING and PONG) and QUIT go in a priority lane which is
+ * always sent ahead of the bulk lane, so a reply to a server PING is never stuck behind thousands of queued lines
+ * and the connection does not hit a ping timeout. Subclasses decide when bulk messages may be released.
+ * 
+ * A lock rather than a monitor guards the lanes, so a virtual thread waiting on the scheduler does not pin its
+ * carrier.
+ */
+public abstract class PriorityMessageScheduler implements MessageScheduler {
+    private final int capacity;
+    private final Queue<IrcMessage> priority;
+    private final Queue<IrcMessage> bulk;
+    private final ReentrantLock lock;
+    private final Condition changed;
+
+    /**
+     * @param capacity - maximum number of queued bulk messages
+     */
+    protected PriorityMessageScheduler(int capacity) {
+        this.capacity = capacity;
+        this.priority = new ArrayDeque<IrcMessage>();
+        this.bulk = new ArrayDeque<IrcMessage>();
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
+    }
+
+    /**
+     * Messages which keep the connection alive or end it must not wait behind bulk traffic
+     */
+    protected boolean isPriority(IrcMessage message) {
+        String command = message.getCommand();
+        return "PONG".equalsIgnoreCase(command) || "PING".equalsIgnoreCase(command) ||
+                "QUIT".equalsIgnoreCase(command);
+    }
+
+    /**
+     * Called with the lock held when a message is about to be released
+     * 
+     * @param priority - true if the message is from the priority lane, which is released regardless
+     * 
+     * @return true if a bulk message may be released now
+     */
+    protected abstract boolean release(boolean priority);
+
+    /**
+     * Called with the lock held when a bulk message is waiting
+     * 
+     * @return nanoseconds until a bulk message may be released
+     */
+    protected abstract long nanosUntilRelease();
+
+    public boolean offer(IrcMessage message) {
+        lock.lock();
+        try {
+            if(isPriority(message)) {
+                priority.offer(message);
+            }
+            else if(bulk.size() < capacity) {
+                bulk.offer(message);
+            }
+            else {
+                return false;
+            }
+            changed.signal();
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public IrcMessage take() throws InterruptedException {
+        lock.lock();
+        try {
+            while(true) {
+                IrcMessage m = next();
+                if(m != null) {
+                    return m;
+                }
+                long wait = waitNanos();
+                if(wait == Long.MAX_VALUE) {
+                    changed.await();
+                }
+                else {
+                    changed.awaitNanos(wait);
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public IrcMessage poll() {
+        lock.lock();
+        try {
+            return next();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public long nanosUntilReady() {
+        lock.lock();
+        try {
+            return waitNanos();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return priority.isEmpty() && bulk.isEmpty();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private IrcMessage next() {
+        if(!priority.isEmpty()) {
+            release(true);
+            return priority.poll();
+        }
+        if(!bulk.isEmpty() && release(false)) {
+            return bulk.poll();
+        }
+        return null;
+    }
+
+    private long waitNanos() {
+        if(!priority.isEmpty()) {
+            return 0;
+        }
+        if(bulk.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        return nanosUntilRelease();
+    }
+}
@@ -0,0 +1,278 @@
+package dirc.core.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import dirc.core.config.IrcServerInfo;
+import dirc.core.message.IrcMessage;
+import dirc.core.message.IrcMessageDecoder;
+import dirc.core.message.IrcMessageListener;
+
+/**
+ * {@link IrcConnection} over a non-blocking {@link SocketChannel}. Instead of dedicated threads, reads and writes
+ * are driven by an {@link IrcSelectorLoop} which can be shared by many connections. Received bytes are fed to an
+ * {@link IrcMessageDecoder} as they arrive, and listeners are notified on the loop thread.
+ */
+public class SelectorIrcConnection implements IrcConnection {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 65536;
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) ConnectionRace.DEFAULT_TIMEOUT_MILLIS;
+
+    private String hostname;
+    private int port;
+    private Charset charset;
+    private IrcSelectorLoop loop;
+    private List<IrcMessageListener> listeners;
+    private List<IrcConnectionListener> connectionListeners;
+    private MessageScheduler outbox;
+    private boolean wakeScheduled;
+    // Set by connecting threads and read by sending and closing ones
+    private volatile SocketChannel channel;
+    private IrcMessageDecoder decoder;
+    private ByteBuffer readBuffer;
+    private OutboundBuffer writeBuffer;
+    private IrcMessage pending;
+    private boolean discarding;
+    private WriteMetrics writeMetrics;
+
+    public SelectorIrcConnection(IrcServerInfo s) throws IOException {
+        this(s.getHostname(), s.getPort(), s.getCharset(), IrcSelectorLoop.getDefault(), new FifoMessageScheduler(),
+                s.isLazyMessages());
+    }
+
+    public SelectorIrcConnection(String hostname, int port, Charset charset, IrcSelectorLoop loop) {
+        this(hostname, port, charset, loop, new FifoMessageScheduler());
+    }
+
+    public SelectorIrcConnection(String hostname, int port, Charset charset, IrcSelectorLoop loop,
+            MessageScheduler outbox) {
+        this(hostname, port, charset, loop, outbox, false);
+    }
+
+    /**
+     * @param lazyMessages - whether received messages are decoded lazily, see {@link IrcServerInfo#isLazyMessages()}
+     */
+    public SelectorIrcConnection(String hostname, int port, Charset charset, IrcSelectorLoop loop,
+            MessageScheduler outbox, boolean lazyMessages) {
+        this.hostname = hostname;
+        this.port = port;
+        this.charset = charset;
+        this.loop = loop;
+        this.listeners = new CopyOnWriteArrayList<IrcMessageListener>();
+        this.connectionListeners = new CopyOnWriteArrayList<IrcConnectionListener>();
+        this.outbox = outbox;
+        this.decoder = new IrcMessageDecoder(charset, lazyMessages);
+        this.readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.writeBuffer = new OutboundBuffer(charset);
+        this.writeMetrics = new WriteMetrics();
+    }
+
+    public void addMessageListener(IrcMessageListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void addConnectionListener(IrcConnectionListener listener) {
+        this.connectionListeners.add(listener);
+    }
+
+    private void fireMessageRecieved(IrcMessage m) {
+        for (IrcMessageListener l : listeners) {
+            l.receivedMessage(m);
+        }
+    }
+
+    private void fireConnectionLost(IOException cause) {
+        for (IrcConnectionListener l : connectionListeners) {
+            l.connectionLost(cause);
+        }
+    }
+
+    public void connect() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(hostname, port), CONNECT_TIMEOUT_MILLIS);
+        }
+        catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        connect(channel);
+    }
+
+    public void connect(final SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        // Buffers are only touched on the loop thread, where a lost connection may have left a partial line
+        loop.execute(new Runnable() {
+            public void run() {
+                readBuffer.clear();
+                writeBuffer.clear();
+                discarding = false;
+            }
+        });
+        this.channel = channel;
+        loop.register(channel, this);
+    }
+
+    public void close() {
+        if(channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * Close a channel which has failed, and report it unless it had already been closed. Called on the loop thread.
+     */
+    private void lost(IOException cause) {
+        if(!channel.isOpen()) {
+            return;
+        }
+        close();
+        fireConnectionLost(cause);
+    }
+
+    /**
+     * Close the connection after handling it failed unexpectedly, such as a message listener throwing, and report
+     * it lost so that it can be reconnected. Called on the loop thread.
+     */
+    void failed(RuntimeException cause) {
+        if(channel != null) {
+            lost(new IOException(cause));
+        }
+    }
+
+    public boolean sendMessage(IrcMessage message) {
+        if(!outbox.offer(message)) {
+            return false;
+        }
+        if(channel != null) {
+            loop.wantWrite(channel);
+        }
+        return true;
+    }
+
+    public WriteMetrics getWriteMetrics() {
+        return writeMetrics;
+    }
+
+    boolean hasPendingWrites() {
+        return pending != null || !writeBuffer.isEmpty() || !outbox.isEmpty();
+    }
+
+    /**
+     * Read whatever is available from the channel and deliver every complete message. A line which outgrows
+     * {@link #MAX_LINE_LENGTH} is discarded up to its end, as it cannot be a valid message. Called on the loop
+     * thread.
+     */
+    void read() {
+        try {
+            int n = channel.read(readBuffer);
+            readBuffer.flip();
+            if(discarding) {
+                discarding = !skipLine();
+            }
+            IrcMessage m;
+            while(!discarding && (m = decoder.decode(readBuffer)) != null) {
+                fireMessageRecieved(m);
+            }
+            readBuffer.compact();
+            if(!readBuffer.hasRemaining()) {
+                if(readBuffer.capacity() < MAX_LINE_LENGTH) {
+                    ByteBuffer grown = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                    readBuffer.flip();
+                    grown.put(readBuffer);
+                    readBuffer = grown;
+                }
+                else {
+                    readBuffer.clear();
+                    discarding = true;
+                }
+            }
+            if(n == -1) {
+                lost(null);
+            }
+        }
+        catch (IOException ex) {
+            lost(ex);
+        }
+    }
+
+    /**
+     * Skip the remainder of an overlong line
+     *
+     * @return true if the end of the line was found
+     */
+    private boolean skipLine() {
+        for(int i = readBuffer.position(); i < readBuffer.limit(); i++) {
+            byte b = readBuffer.get(i);
+            if(b == '\r' || b == '\n') {
+                readBuffer.position(i + 1);
+                return true;
+            }
+        }
+        readBuffer.position(readBuffer.limit());
+        return false;
+    }
+
+    /**
+     * Write as much of the outbox as the channel will accept, coalescing as many messages as fit into each write.
+     * If the scheduler is holding messages back, the loop is asked to try again once it will release them. Called
+     * on the loop thread.
+     *
+     * @return true if everything released by the scheduler has been written
+     */
+    boolean write() {
+        long start = System.nanoTime();
+        int written = 0;
+        try {
+            while(true) {
+                if(pending == null) {
+                    pending = outbox.poll();
+                }
+                while(pending != null && writeBuffer.add(pending)) {
+                    written++;
+                    pending = outbox.poll();
+                }
+                if(writeBuffer.isEmpty()) {
+                    scheduleWake();
+                    return true;
+                }
+                if(!writeBuffer.writeTo(channel)) {
+                    return false;
+                }
+            }
+        }
+        catch (IOException ex) {
+            lost(ex);
+            return true;
+        }
+        finally {
+            if(written > 0) {
+                writeMetrics.record(written, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void scheduleWake() {
+        long delay = outbox.nanosUntilReady();
+        if(delay == Long.MAX_VALUE || wakeScheduled) {
+            return;
+        }
+        wakeScheduled = true;
+        loop.schedule(new Runnable() {
+            public void run() {
+                wakeScheduled = false;
+                loop.wantWrite(channel);
+            }
+        }, delay);
+    }
+}
@@ -1,129 +1,257 @@
 package dirc.core.net;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import dirc.core.config.IrcServerInfo;
 import dirc.core.message.IrcMessage;
 import dirc.core.message.IrcMessageListener;
 import dirc.core.message.IrcMessageReader;
 
+/**
+ * {@link IrcConnection} over a blocking {@link Socket}, with one thread receiving and one thread sending. The
+ * threads come from a {@link ThreadFactory}, so the same blocking loops can run on platform threads or, with
+ * {@link VirtualThreads}, on virtual threads. Neither loop holds a monitor around socket I/O, so a virtual thread
+ * blocked on the socket never pins its carrier thread.
+ * 
+ * Messages may be sent before the connection is established; they are queued and written once connected. The
+ * sender takes everything its {@link MessageScheduler} releases and writes it as a single batch. If the socket
+ * fails, both threads stop and the {@link IrcConnectionListener}s are told, while the outbox is kept for when the
+ * connection is connected again.
+ */
 public class ThreadedSocketIrcConnection implements IrcConnection {
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) ConnectionRace.DEFAULT_TIMEOUT_MILLIS;
+
     private String hostname;
     private int port;
     private Charset charset;
+    private ThreadFactory threadFactory;
     private List<IrcMessageListener> listeners;
+    private List<IrcConnectionListener> connectionListeners;
     private Socket s;
-    private Sender sender;
+    private MessageScheduler outbox;
+    private WriteMetrics writeMetrics;
+    private Thread senderThread;
+    private boolean lazyMessages;
 
     public ThreadedSocketIrcConnection(IrcServerInfo s) {
-        this(s.getHostname(), s.getPort(), s.getCharset());
+        this(s.getHostname(), s.getPort(), s.getCharset(), Executors.defaultThreadFactory(),
+                new FifoMessageScheduler(), s.isLazyMessages());
     }
-    
+
     public ThreadedSocketIrcConnection(String hostname, int port, Charset charset) {
+        this(hostname, port, charset, Executors.defaultThreadFactory());
+    }
+
+    public ThreadedSocketIrcConnection(String hostname, int port, Charset charset, ThreadFactory threadFactory) {
+        this(hostname, port, charset, threadFactory, new FifoMessageScheduler());
+    }
+
+    public ThreadedSocketIrcConnection(String hostname, int port, Charset charset, ThreadFactory threadFactory,
+            MessageScheduler outbox) {
+        this(hostname, port, charset, threadFactory, outbox, false);
+    }
+
+    /**
+     * @param lazyMessages - whether received messages are decoded lazily, see {@link IrcServerInfo#isLazyMessages()}
+     */
+    public ThreadedSocketIrcConnection(String hostname, int port, Charset charset, ThreadFactory threadFactory,
+            MessageScheduler outbox, boolean lazyMessages) {
+        this.lazyMessages = lazyMessages;
         this.hostname = hostname;
         this.port = port;
         this.charset = charset;
-        this.listeners = new ArrayList<IrcMessageListener>();
+        this.threadFactory = threadFactory;
+        this.listeners = new CopyOnWriteArrayList<IrcMessageListener>();
+        this.connectionListeners = new CopyOnWriteArrayList<IrcConnectionListener>();
+        this.outbox = outbox;
+        this.writeMetrics = new WriteMetrics();
     }
-    
+
     public void addMessageListener(IrcMessageListener listener) {
         this.listeners.add(listener);
     }
-    
+
+    public void addConnectionListener(IrcConnectionListener listener) {
+        this.connectionListeners.add(listener);
+    }
+
     private void fireMessageRecieved(IrcMessage m) {
         for (IrcMessageListener l : listeners) {
             l.receivedMessage(m);
         }
     }
 
+    private void fireConnectionLost(IOException cause) {
+        for (IrcConnectionListener l : connectionListeners) {
+            l.connectionLost(cause);
+        }
+    }
+
     public void connect() throws IOException {
-        s = new Socket(hostname, port);
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(hostname, port), CONNECT_TIMEOUT_MILLIS);
+        }
+        catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        connect(channel);
+    }
+
+    public void connect(SocketChannel channel) throws IOException {
+        Socket socket = channel.socket();
+        synchronized(this) {
+            s = socket;
+        }
 
-        Receiver receiver = new Receiver(s.getInputStream());
-        receiver.start();
+        Thread sender = start(new Sender(channel), hostname + "-send");
+        senderThread = sender;
 
-        sender = new Sender(s.getOutputStream());
-        sender.start();
+        start(new Receiver(socket, sender), hostname + "-recv");
     }
-    
+
+    private Thread start(Runnable r, String name) {
+        Thread t = threadFactory.newThread(r);
+        t.setName(name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
     public void close() {
-        if(s != null) {
+        Socket socket;
+        synchronized(this) {
+            socket = s;
+            s = null;
+        }
+        if(socket != null) {
             try {
-                s.close();
+                socket.close();
             }
             catch (IOException ex) {
                 throw new IllegalStateException(ex);
             }
         }
 
-        if(sender != null) {
-            sender.interrupt();
+        if(senderThread != null) {
+            senderThread.interrupt();
         }
     }
 
-    public void sendMessage(IrcMessage message) {
-        sender.offer(message);
+    /**
+     * Tear down a connection whose socket has failed, unless it has already been closed or replaced
+     */
+    private void lost(Socket socket, Thread sender, IOException cause) {
+        sender.interrupt();
+        try {
+            socket.close();
+        }
+        catch (IOException ex) {
+            // already failed
+        }
+        synchronized(this) {
+            if(s != socket) {
+                return;
+            }
+            s = null;
+        }
+        fireConnectionLost(cause);
     }
 
-    private final class Sender extends Thread {
-        private final OutputStream os;
-        private LinkedBlockingQueue<IrcMessage> outbox;
+    public boolean sendMessage(IrcMessage message) {
+        return outbox.offer(message);
+    }
 
-        private Sender(OutputStream os) {
-            super(hostname + "-send");
-            this.os = os;
-            this.outbox = new LinkedBlockingQueue<IrcMessage>();
-            setDaemon(true);
-        }
+    public WriteMetrics getWriteMetrics() {
+        return writeMetrics;
+    }
+
+    private final class Sender implements Runnable {
+        private static final int MAX_BATCH_SIZE = 512;
+
+        private final WritableByteChannel channel;
+        private final OutboundBuffer buffer;
+        private final List<IrcMessage> batch;
 
-        public void offer(IrcMessage message) {
-            this.outbox.offer(message);
+        private Sender(WritableByteChannel channel) {
+            this.channel = channel;
+            this.buffer = new OutboundBuffer(charset);
+            this.batch = new ArrayList<IrcMessage>(MAX_BATCH_SIZE);
         }
 
-        @Override
         public void run() {
-            PrintWriter w = new PrintWriter(new OutputStreamWriter(os, charset));
             while(!Thread.currentThread().isInterrupted()) {
                 try {
-                    IrcMessage msg = outbox.take();
-                    w.print(msg.serialize());
-                    w.flush();
+                    batch.add(outbox.take());
+                    IrcMessage next;
+                    while(batch.size() < MAX_BATCH_SIZE && (next = outbox.poll()) != null) {
+                        batch.add(next);
+                    }
+
+                    long start = System.nanoTime();
+                    for (IrcMessage msg : batch) {
+                        if(!buffer.add(msg)) {
+                            flush();
+                            buffer.add(msg);
+                        }
+                    }
+                    flush();
+                    writeMetrics.record(batch.size(), System.nanoTime() - start);
+                    batch.clear();
                 }
                 catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                 }
+                catch (IOException ex) {
+                    // Closing the socket makes the receiver report the loss
+                    try {
+                        channel.close();
+                    }
+                    catch (IOException e) {
+                        // already failed
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void flush() throws IOException {
+            while(!buffer.writeTo(channel)) {
             }
         }
     }
 
-    private final class Receiver extends Thread {
-        private final InputStream is;
+    private final class Receiver implements Runnable {
+        private final Socket socket;
+        private final Thread sender;
 
-        private Receiver(InputStream is) {
-            super(hostname + "-recv");
-            this.is = is;
-            setDaemon(true);
+        private Receiver(Socket socket, Thread sender) {
+            this.socket = socket;
+            this.sender = sender;
         }
 
         public void run() {
             try {
-                IrcMessageReader r = new IrcMessageReader(is, Charset.forName("UTF-8"));
+                IrcMessageReader r = new IrcMessageReader(socket.getInputStream(), charset, lazyMessages);
                 IrcMessage m = null;
                 while((m = r.nextMessage()) != null) {
                     fireMessageRecieved(m);
                 }
+                lost(socket, sender, null);
             }
             catch(IOException ex) {
-                throw new IllegalStateException(ex);
+                lost(socket, sender, ex);
             }
         }
     }
@@ -0,0 +1,54 @@
+package dirc.core.net;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flood control for a single server connection. Every message sent costs a token from a bucket which holds up to
+ * a burst of tokens and refills at a steady rate, so that bulk traffic such as mass JOINs or WHO sweeps is paced
+ * below the server's excess flood limit instead of getting the connection killed.
+ * 
+ * Priority messages are never held back by an empty bucket, although the tokens they use still delay the bulk
+ * traffic behind them. The bulk lane is bounded, and {@link #offer(dirc.core.message.IrcMessage)} refuses messages
+ * once it is full.
+ */
+public class TokenBucketMessageScheduler extends PriorityMessageScheduler {
+    private final double burst;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param burst           - number of messages which may be sent back to back
+     * @param refillPerSecond - sustained number of messages per second
+     * @param capacity        - maximum number of queued bulk messages
+     */
+    public TokenBucketMessageScheduler(int burst, double refillPerSecond, int capacity) {
+        super(capacity);
+        this.burst = burst;
+        this.tokensPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    @Override
+    protected boolean release(boolean priority) {
+        refill();
+        if(priority || tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected long nanosUntilRelease() {
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,73 @@
+package dirc.core.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing how outgoing messages are coalesced into writes. Updated by the thread writing to the
+ * connection and readable from any thread.
+ */
+public class WriteMetrics {
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    /**
+     * Record a batch of messages written to the connection
+     *
+     * @param batchSize - number of messages in the batch
+     * @param nanos     - time taken to encode and write the batch
+     */
+    void record(int batchSize, long nanos) {
+        batches.incrementAndGet();
+        messages.addAndGet(batchSize);
+        flushNanos.addAndGet(nanos);
+        raise(maxBatchSize, batchSize);
+        raise(maxFlushNanos, nanos);
+    }
+
+    private static void raise(AtomicLong max, long value) {
+        long current;
+        while(value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public double getMeanBatchSize() {
+        long b = batches.get();
+        return b == 0 ? 0 : (double) messages.get() / b;
+    }
+
+    public long getMeanFlushNanos() {
+        long b = batches.get();
+        return b == 0 ? 0 : flushNanos.get() / b;
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("writemetrics: ");
+        sb.append("[ batches: ").append(getBatches());
+        sb.append(", messages: ").append(getMessages());
+        sb.append(", max batch size: ").append(getMaxBatchSize());
+        sb.append(", mean flush ns: ").append(getMeanFlushNanos());
+        sb.append(", max flush ns: ").append(getMaxFlushNanos());
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package dirc.core.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import dirc.core.message.IrcMessage;
+
+/**
+ * IRCv3 capability negotiation. While registering, the client lists the server's capabilities with CAP LS, requests
+ * those it wants which the server offers with CAP REQ, and ends negotiation with CAP END once the server has
+ * acknowledged or refused them. Capabilities the server adds or removes later through cap-notify are followed.
+ *
+ * The negotiation is driven by the thread receiving from the server; the wanted and enabled capabilities can be
+ * read from any thread.
+ *
+ * @see https://ircv3.net/specs/extensions/capability-negotiation
+ */
+public class Capabilities {
+    private static final String CAP = "CAP";
+
+    public static final String SERVER_TIME = "server-time";
+    public static final String BATCH = "batch";
+    public static final String CHATHISTORY = "draft/chathistory";
+
+    private final Set<String> wanted;
+    private final Set<String> enabled;
+    private final Map<String, String> offered;
+    private final StringBuilder listing;
+    private boolean negotiating;
+    private int pendingRequests;
+
+    public Capabilities() {
+        this.wanted = new CopyOnWriteArraySet<String>();
+        this.enabled = new CopyOnWriteArraySet<String>();
+        this.offered = new ConcurrentHashMap<String, String>();
+        this.listing = new StringBuilder();
+        this.wanted.add("message-tags");
+        this.wanted.add(SERVER_TIME);
+        this.wanted.add("cap-notify");
+        this.wanted.add(BATCH);
+        this.wanted.add(CHATHISTORY);
+    }
+
+    /**
+     * Ask for a capability in the next negotiation, and straight away if the server offers it later
+     */
+    public void want(String capability) {
+        wanted.add(capability);
+    }
+
+    public Set<String> getWanted() {
+        return Collections.unmodifiableSet(wanted);
+    }
+
+    public boolean isEnabled(String capability) {
+        return enabled.contains(capability);
+    }
+
+    public Set<String> getEnabled() {
+        return Collections.unmodifiableSet(enabled);
+    }
+
+    /**
+     * @return the value the server gave a capability it offers, such as the mechanisms of sasl, an empty string if
+     *         it gave none, or null if it does not offer the capability
+     */
+    public String getValue(String capability) {
+        return offered.get(capability);
+    }
+
+    /**
+     * Start negotiating, forgetting the capabilities of any earlier connection
+     *
+     * @return the message which opens negotiation, to be sent before registering
+     */
+    IrcMessage start() {
+        enabled.clear();
+        offered.clear();
+        listing.setLength(0);
+        negotiating = true;
+        pendingRequests = 0;
+        return new IrcMessage(CAP, "LS", "302");
+    }
+
+    static boolean isCap(IrcMessage message) {
+        return CAP.equals(message.getCommand());
+    }
+
+    /**
+     * Follow a CAP message from the server
+     *
+     * @return the messages to send in reply
+     */
+    List<IrcMessage> handle(IrcMessage message) {
+        List<IrcMessage> replies = new ArrayList<IrcMessage>();
+        String subcommand = message.getParameter(1);
+        String capabilities = message.getLastParameter();
+        if("LS".equals(subcommand)) {
+            listing.append(capabilities).append(' ');
+            // A listing continues while there is a * before the capabilities
+            if(message.getParameters().size() > 3 && "*".equals(message.getParameter(2))) {
+                return replies;
+            }
+            offer(listing.toString(), replies);
+            listing.setLength(0);
+        }
+        else if("NEW".equals(subcommand)) {
+            offer(capabilities, replies);
+        }
+        else if("ACK".equals(subcommand)) {
+            for(String capability : split(capabilities)) {
+                if(capability.startsWith("-")) {
+                    enabled.remove(capability.substring(1));
+                }
+                else {
+                    enabled.add(capability);
+                }
+            }
+            answered(replies);
+        }
+        else if("NAK".equals(subcommand)) {
+            answered(replies);
+        }
+        else if("DEL".equals(subcommand)) {
+            for(String capability : split(capabilities)) {
+                offered.remove(capability);
+                enabled.remove(capability);
+            }
+        }
+        return replies;
+    }
+
+    /**
+     * Record capabilities offered by the server, and request the wanted ones which are not yet enabled
+     */
+    private void offer(String capabilities, List<IrcMessage> replies) {
+        StringBuilder request = new StringBuilder();
+        for(String capability : split(capabilities)) {
+            int eq = capability.indexOf('=');
+            String name = eq < 0 ? capability : capability.substring(0, eq);
+            offered.put(name, eq < 0 ? "" : capability.substring(eq + 1));
+            if(wanted.contains(name) && !enabled.contains(name)) {
+                if(request.length() > 0) {
+                    request.append(' ');
+                }
+                request.append(name);
+            }
+        }
+        if(request.length() > 0) {
+            pendingRequests++;
+            replies.add(new IrcMessage(CAP, "REQ", request.toString()));
+        }
+        else if(pendingRequests == 0) {
+            end(replies);
+        }
+    }
+
+    private void answered(List<IrcMessage> replies) {
+        if(pendingRequests > 0 && --pendingRequests == 0) {
+            end(replies);
+        }
+    }
+
+    private void end(List<IrcMessage> replies) {
+        if(negotiating) {
+            negotiating = false;
+            replies.add(new IrcMessage(CAP, "END"));
+        }
+    }
+
+    private static List<String> split(String capabilities) {
+        List<String> split = new ArrayList<String>();
+        for(String capability : capabilities.split(" ")) {
+            if(!capability.isEmpty()) {
+                split.add(capability);
+            }
+        }
+        return split;
+    }
+}
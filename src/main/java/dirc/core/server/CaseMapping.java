@@ -0,0 +1,85 @@
+package dirc.core.server;
+
+/**
+ * How a server compares nicknames and channel names, as advertised by the CASEMAPPING token of RPL_ISUPPORT. Names
+ * are compared by folding upper case letters to lower case, where rfc1459 also counts []\~ as the upper case of
+ * {}|^, and strict-rfc1459 does the same except for ~ and ^.
+ *
+ * @see https://modern.ircdocs.horse/#casemapping-parameter
+ */
+public enum CaseMapping {
+    Ascii("ascii", 'Z'),
+    Rfc1459("rfc1459", '^'),
+    StrictRfc1459("strict-rfc1459", ']');
+
+    private final String token;
+    private final char last;
+
+    /**
+     * @param token - value of the CASEMAPPING token
+     * @param last  - last upper case character, folded along with those from A by adding 32
+     */
+    private CaseMapping(String token, char last) {
+        this.token = token;
+        this.last = last;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the casemapping named by a CASEMAPPING token, or rfc1459, which servers use when they name none, if the
+     *         token is not known
+     */
+    public static CaseMapping forToken(String token) {
+        for(CaseMapping m : values()) {
+            if(m.token.equalsIgnoreCase(token)) {
+                return m;
+            }
+        }
+        return Rfc1459;
+    }
+
+    public char fold(char c) {
+        return c >= 'A' && c <= last ? (char) (c + 32) : c;
+    }
+
+    /**
+     * @return the folded form of a name, which is the name itself if it has nothing to fold
+     */
+    public String canonical(String name) {
+        int n = name.length();
+        int i = 0;
+        while(i < n && fold(name.charAt(i)) == name.charAt(i)) {
+            i++;
+        }
+        if(i == n) {
+            return name;
+        }
+        char[] folded = name.toCharArray();
+        for(; i < n; i++) {
+            folded[i] = fold(folded[i]);
+        }
+        return new String(folded);
+    }
+
+    /**
+     * Compare two names without creating folded copies of them
+     */
+    public boolean equalsIgnoreCase(String a, String b) {
+        if(a == null || b == null) {
+            return a == b;
+        }
+        int n = a.length();
+        if(n != b.length()) {
+            return false;
+        }
+        for(int i = 0; i < n; i++) {
+            if(fold(a.charAt(i)) != fold(b.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
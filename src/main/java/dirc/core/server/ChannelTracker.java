@@ -0,0 +1,429 @@
+package dirc.core.server;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import dirc.core.message.IrcMessage;
+
+/**
+ * Follows the messages which change the channels the client is in, keeping each {@link IrcChannel} up to date with
+ * its members, their prefixes, its modes and its topic. Users are interned in one {@link UserTable} shared by every
+ * channel, which also knows which channels each user is in, so that a QUIT visits only those channels and a
+ * NICK visits none.
+ *
+ * Nicknames and channel names are compared under the casemapping the server advertises in its {@link ServerSupport},
+ * as are the membership prefixes and the kinds of channel mode.
+ *
+ * Messages are handled on the thread receiving from the server, under a write lock which the channels take for
+ * reading.
+ */
+class ChannelTracker {
+    private static final String WELCOME = "001";
+    private static final String NAMREPLY = "353";
+    private static final String ENDOFNAMES = "366";
+    private static final String CHANNELMODEIS = "324";
+    private static final String NOTOPIC = "331";
+    private static final String TOPIC = "332";
+
+    private final ReentrantReadWriteLock lock;
+    private final Map<String, IrcChannel> channels;
+    private final ServerSupport support;
+    private final UserTable users;
+    private NameTable channelIds;
+    private IrcChannel[] byId;
+    private int[] freeIds;
+    private int freeIdCount;
+    private int nextId;
+    private volatile String nickname;
+
+    /**
+     * @param channels - the channels joined by the name they were joined with, which channels are added to and
+     *                 removed from as the client joins and leaves them
+     * @param support  - the features of the server, which are taken in from RPL_ISUPPORT here
+     */
+    ChannelTracker(Map<String, IrcChannel> channels, ServerSupport support) {
+        this.lock = new ReentrantReadWriteLock();
+        this.channels = channels;
+        this.support = support;
+        this.users = new UserTable(support.getCaseMapping());
+        this.channelIds = new NameTable(support.getCaseMapping());
+        this.byId = new IrcChannel[8];
+        this.freeIds = new int[8];
+    }
+
+    void readLock() {
+        lock.readLock().lock();
+    }
+
+    void readUnlock() {
+        lock.readLock().unlock();
+    }
+
+    UserTable users() {
+        return users;
+    }
+
+    String prefixSymbols() {
+        return support.getPrefixSymbols();
+    }
+
+    /**
+     * @return the nickname the server knows the client by, or null before it has been welcomed
+     */
+    String getNickname() {
+        return nickname;
+    }
+
+    /**
+     * Bit of a channel mode in {@link IrcChannel#modes}, a to z then A to Z
+     *
+     * @return the bit, or -1 if the mode is not a letter
+     */
+    static int modeBit(char mode) {
+        if(mode >= 'a' && mode <= 'z') {
+            return mode - 'a';
+        }
+        if(mode >= 'A' && mode <= 'Z') {
+            return 26 + mode - 'A';
+        }
+        return -1;
+    }
+
+    boolean isSelf(String nick) {
+        return nick != null && support.getCaseMapping().equalsIgnoreCase(nick, nickname);
+    }
+
+    /**
+     * @return the channel, or null if the client has not joined it
+     */
+    IrcChannel channel(String channelname) {
+        lock.readLock().lock();
+        try {
+            return find(channelname);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private IrcChannel find(String channelname) {
+        int id = channelIds.get(channelname);
+        return id < 0 ? null : byId[id];
+    }
+
+    /**
+     * Create the channel for a channel being joined, or return the one already there
+     */
+    IrcChannel open(String channelname) {
+        lock.writeLock().lock();
+        try {
+            IrcChannel channel = find(channelname);
+            if(channel == null) {
+                int id = freeIdCount > 0 ? freeIds[--freeIdCount] : nextId++;
+                if(id == byId.length) {
+                    byId = Arrays.copyOf(byId, id * 2);
+                }
+                channel = new IrcChannel(channelname, id, this);
+                byId[id] = channel;
+                channelIds.put(channelname, id);
+                channels.put(channelname, channel);
+            }
+            return channel;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forget every member of every channel, as the connection has been lost. The channels themselves are kept to be
+     * rejoined, and are filled again by the NAMES the server sends on rejoining.
+     */
+    void reset() {
+        lock.writeLock().lock();
+        try {
+            users.clear();
+            for(IrcChannel channel : channels.values()) {
+                channel.clear();
+            }
+            // The server may be another one of the network, advertising other features
+            support.reset();
+            caseMappingChanged();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void handle(IrcMessage message) {
+        String command = message.getCommand();
+        if(command == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if(ServerSupport.ISUPPORT.equals(command)) {
+                support.handle(message);
+                caseMappingChanged();
+            }
+            else if(NAMREPLY.equals(command)) {
+                names(message);
+            }
+            else if(ENDOFNAMES.equals(command)) {
+                IrcChannel channel = find(message.getParameter(1));
+                if(channel != null) {
+                    channel.receivingNames = false;
+                }
+            }
+            else if("JOIN".equals(command)) {
+                joined(message);
+            }
+            else if("PART".equals(command)) {
+                for(String channelname : message.getParameter(0).split(",")) {
+                    left(find(channelname), message.getNickname());
+                }
+            }
+            else if("KICK".equals(command)) {
+                left(find(message.getParameter(0)), message.getParameter(1));
+            }
+            else if("QUIT".equals(command)) {
+                quit(message.getNickname());
+            }
+            else if("NICK".equals(command)) {
+                nick(message.getNickname(), message.getParameter(0));
+            }
+            else if("MODE".equals(command)) {
+                IrcChannel channel = find(message.getParameter(0));
+                if(channel != null) {
+                    modes(channel, message.getParameters(), 1);
+                }
+            }
+            else if(CHANNELMODEIS.equals(command)) {
+                IrcChannel channel = find(message.getParameter(1));
+                if(channel != null) {
+                    channel.modes = 0;
+                    modes(channel, message.getParameters(), 2);
+                }
+            }
+            else if("TOPIC".equals(command)) {
+                topic(message.getParameter(0), message.getParameter(1));
+            }
+            else if(TOPIC.equals(command)) {
+                topic(message.getParameter(1), message.getParameter(2));
+            }
+            else if(NOTOPIC.equals(command)) {
+                topic(message.getParameter(1), null);
+            }
+            else if(WELCOME.equals(command)) {
+                nickname = message.getParameter(0);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Look names up under the casemapping of the server, if it differs from the one they were added under
+     */
+    private void caseMappingChanged() {
+        CaseMapping caseMapping = support.getCaseMapping();
+        if(caseMapping == channelIds.getCaseMapping()) {
+            return;
+        }
+        users.setCaseMapping(caseMapping);
+        channelIds = new NameTable(caseMapping);
+        for(int id = 0; id < nextId; id++) {
+            if(byId[id] != null) {
+                channelIds.put(byId[id].getName(), id);
+            }
+        }
+    }
+
+    /**
+     * A RPL_NAMREPLY lists some of the members of a channel, each with its prefixes and perhaps its user and host.
+     * The first reply after a listing was completed starts the listing afresh.
+     */
+    private void names(IrcMessage message) {
+        IrcChannel channel = find(message.getParameter(2));
+        if(channel == null) {
+            return;
+        }
+        if(!channel.receivingNames) {
+            clearMembers(channel);
+            channel.receivingNames = true;
+        }
+        String list = message.getParameter(3);
+        String symbols = support.getPrefixSymbols();
+        int length = list.length();
+        int i = 0;
+        while(i < length) {
+            int end = list.indexOf(' ', i);
+            if(end < 0) {
+                end = length;
+            }
+            int prefixMask = 0;
+            int start = i;
+            int p;
+            while(start < end && (p = symbols.indexOf(list.charAt(start))) >= 0) {
+                prefixMask |= 1 << p;
+                start++;
+            }
+            // With userhost-in-names each entry is a full nick!user@host
+            int bang = list.indexOf('!', start);
+            int nickEnd = bang >= 0 && bang < end ? bang : end;
+            if(nickEnd > start) {
+                add(channel, users.intern(list, start, nickEnd), prefixMask);
+            }
+            i = end + 1;
+        }
+    }
+
+    private void joined(IrcMessage message) {
+        String nick = message.getNickname();
+        if(nick == null) {
+            return;
+        }
+        for(String channelname : message.getParameter(0).split(",")) {
+            IrcChannel channel = find(channelname);
+            if(channel == null) {
+                if(!isSelf(nick)) {
+                    continue;
+                }
+                // Joined by the server, or by a JOIN sent without IrcServer#join
+                channel = open(channelname);
+            }
+            add(channel, users.intern(nick), 0);
+        }
+    }
+
+    private void add(IrcChannel channel, int user, int prefixMask) {
+        if(channel.add(user, prefixMask)) {
+            users.addChannel(user, channel.id);
+        }
+    }
+
+    private void left(IrcChannel channel, String nick) {
+        if(channel == null || nick == null) {
+            return;
+        }
+        if(isSelf(nick)) {
+            clearMembers(channel);
+            channel.clear();
+            channels.remove(channel.getName());
+            channelIds.remove(channel.getName());
+            byId[channel.id] = null;
+            if(freeIdCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+            }
+            freeIds[freeIdCount++] = channel.id;
+            return;
+        }
+        int user = users.id(nick);
+        if(user >= 0 && channel.remove(user)) {
+            users.removeChannel(user, channel.id);
+        }
+    }
+
+    /**
+     * Remove a user from the channels it is in, found through the user rather than by searching every channel
+     */
+    private void quit(String nick) {
+        int user = nick == null ? -1 : users.id(nick);
+        if(user < 0) {
+            return;
+        }
+        int[] in = users.channels(user);
+        for(int i = users.channelCount(user) - 1; i >= 0; i--) {
+            byId[in[i]].remove(user);
+        }
+        users.remove(user);
+    }
+
+    private void nick(String oldNick, String newNick) {
+        if(oldNick == null || newNick.isEmpty()) {
+            return;
+        }
+        if(isSelf(oldNick)) {
+            nickname = newNick;
+        }
+        int user = users.id(oldNick);
+        if(user >= 0) {
+            users.rename(user, newNick);
+        }
+    }
+
+    private void clearMembers(IrcChannel channel) {
+        for(int user = channel.members.nextSetBit(0); user >= 0; user = channel.members.nextSetBit(user + 1)) {
+            users.removeChannel(user, channel.id);
+        }
+        channel.clearMembers();
+    }
+
+    /**
+     * Apply a mode string such as <code>+ov-k joe bob secret</code>, taking the arguments the modes take in order
+     *
+     * @param parameters - the parameters of the message
+     * @param first      - index of the mode string
+     */
+    private void modes(IrcChannel channel, List<String> parameters, int first) {
+        if(first >= parameters.size()) {
+            return;
+        }
+        String modestring = parameters.get(first);
+        String prefixModes = support.getPrefixModes();
+        String listModes = support.getListModes();
+        String argumentModes = support.getArgumentModes();
+        String setArgumentModes = support.getSetArgumentModes();
+        int arg = first + 1;
+        boolean set = true;
+        for(int i = 0; i < modestring.length(); i++) {
+            char mode = modestring.charAt(i);
+            if(mode == '+' || mode == '-') {
+                set = mode == '+';
+                continue;
+            }
+            int prefix = prefixModes.indexOf(mode);
+            if(prefix >= 0) {
+                if(arg < parameters.size()) {
+                    int user = users.id(parameters.get(arg++));
+                    if(user >= 0 && channel.members.get(user)) {
+                        if(set) {
+                            channel.prefix(prefix).set(user);
+                        }
+                        else if(prefix < channel.prefixes.length) {
+                            channel.prefixes[prefix].clear(user);
+                        }
+                    }
+                }
+                continue;
+            }
+            if(listModes.indexOf(mode) >= 0) {
+                // Bans and the like are not kept
+                arg++;
+                continue;
+            }
+            if(argumentModes.indexOf(mode) >= 0 || set && setArgumentModes.indexOf(mode) >= 0) {
+                arg++;
+            }
+            int bit = modeBit(mode);
+            if(bit >= 0) {
+                if(set) {
+                    channel.modes |= 1L << bit;
+                }
+                else {
+                    channel.modes &= ~(1L << bit);
+                }
+            }
+        }
+    }
+
+    private void topic(String channelname, String topic) {
+        IrcChannel channel = find(channelname);
+        if(channel != null) {
+            channel.topic = topic == null || topic.isEmpty() ? null : topic;
+        }
+    }
+}
@@ -1,14 +1,195 @@
 package dirc.core.server;
 
-import dirc.core.message.IrcMessage;
-import dirc.core.net.IrcConnection;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
+/**
+ * State of a channel the client has joined: its topic, its modes, and its members with their prefixes, kept up to
+ * date by the {@link ChannelTracker} of the server. Members are held as bits indexed by the ids of the server's
+ * {@link UserTable}, with a further set of bits for each membership prefix, so a member costs a few bits per
+ * channel rather than an entry in a map.
+ *
+ * Updated by the thread receiving from the server and readable from any thread.
+ */
 public class IrcChannel {
-    private IrcConnection connection;
+    private final String name;
+    private final ChannelTracker tracker;
+    final int id;
+    final BitSet members;
+    BitSet[] prefixes;
+    int memberCount;
+    String topic;
+    long modes;
+    boolean receivingNames;
 
-    public IrcChannel(String channelname, IrcConnection connection) {
-        this.connection = connection;
-        
-        this.connection.sendMessage(new IrcMessage("JOIN", channelname));
+    IrcChannel(String name, int id, ChannelTracker tracker) {
+        this.name = name;
+        this.id = id;
+        this.tracker = tracker;
+        this.members = new BitSet();
+        this.prefixes = new BitSet[0];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the topic, or null if there is none
+     */
+    public String getTopic() {
+        tracker.readLock();
+        try {
+            return topic;
+        }
+        finally {
+            tracker.readUnlock();
+        }
+    }
+
+    /**
+     * @return whether a channel mode without a membership prefix, such as n or t, is set
+     */
+    public boolean hasMode(char mode) {
+        int bit = ChannelTracker.modeBit(mode);
+        tracker.readLock();
+        try {
+            return bit >= 0 && (modes & 1L << bit) != 0;
+        }
+        finally {
+            tracker.readUnlock();
+        }
+    }
+
+    public int getMemberCount() {
+        tracker.readLock();
+        try {
+            return memberCount;
+        }
+        finally {
+            tracker.readUnlock();
+        }
+    }
+
+    public boolean isMember(String nick) {
+        tracker.readLock();
+        try {
+            int user = tracker.users().id(nick);
+            return user >= 0 && members.get(user);
+        }
+        finally {
+            tracker.readUnlock();
+        }
+    }
+
+    /**
+     * @return the nicknames of the members, in no particular order
+     */
+    public List<String> getMembers() {
+        tracker.readLock();
+        try {
+            List<String> nicks = new ArrayList<String>(memberCount);
+            for(int user = members.nextSetBit(0); user >= 0; user = members.nextSetBit(user + 1)) {
+                nicks.add(tracker.users().nick(user));
+            }
+            return nicks;
+        }
+        finally {
+            tracker.readUnlock();
+        }
+    }
+
+    /**
+     * @return the membership prefixes of a member, highest first, such as "@+", an empty string if it has none, or
+     *         null if it is not a member
+     */
+    public String getPrefixes(String nick) {
+        tracker.readLock();
+        try {
+            int user = tracker.users().id(nick);
+            if(user < 0 || !members.get(user)) {
+                return null;
+            }
+            String symbols = tracker.prefixSymbols();
+            StringBuilder sb = new StringBuilder(2);
+            for(int i = 0; i < prefixes.length && i < symbols.length(); i++) {
+                if(prefixes[i].get(user)) {
+                    sb.append(symbols.charAt(i));
+                }
+            }
+            return sb.toString();
+        }
+        finally {
+            tracker.readUnlock();
+        }
+    }
+
+    /**
+     * Add a member, or give an existing one further prefixes. Called with the write lock held.
+     *
+     * @param prefixMask - bit i set for the ith prefix of the server's PREFIX
+     * @return true if the user was not already a member
+     */
+    boolean add(int user, int prefixMask) {
+        boolean added = !members.get(user);
+        if(added) {
+            members.set(user);
+            memberCount++;
+        }
+        for(int i = 0; prefixMask >> i != 0; i++) {
+            if((prefixMask & 1 << i) != 0) {
+                prefix(i).set(user);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Remove a member and its prefixes. Called with the write lock held.
+     *
+     * @return true if the user was a member
+     */
+    boolean remove(int user) {
+        if(!members.get(user)) {
+            return false;
+        }
+        members.clear(user);
+        memberCount--;
+        for(BitSet p : prefixes) {
+            p.clear(user);
+        }
+        return true;
+    }
+
+    /**
+     * Forget every member and prefix, as when the names are listed afresh
+     */
+    void clearMembers() {
+        members.clear();
+        memberCount = 0;
+        prefixes = new BitSet[0];
+    }
+
+    /**
+     * Forget everything known about the channel, as when the client leaves it or loses the connection
+     */
+    void clear() {
+        clearMembers();
+        topic = null;
+        modes = 0;
+        receivingNames = false;
+    }
+
+    BitSet prefix(int i) {
+        if(i >= prefixes.length) {
+            BitSet[] grown = new BitSet[i + 1];
+            System.arraycopy(prefixes, 0, grown, 0, prefixes.length);
+            for(int j = prefixes.length; j <= i; j++) {
+                grown[j] = new BitSet();
+            }
+            prefixes = grown;
+        }
+        return prefixes[i];
     }
 }
@@ -0,0 +1,214 @@
+package dirc.core.server;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventFactory;
+import dirc.core.event.MotDEnd;
+import dirc.core.event.MotDStart;
+import dirc.core.event.PingEvent;
+import dirc.core.event.QuitEvent;
+import dirc.core.event.ServerEvent;
+import dirc.core.message.IrcMessage;
+
+/**
+ * Dispatch table from message commands to {@link IrcEventTranslator}s. Numeric replies index straight into an
+ * array by their value, and verbs are looked up in a map keyed by the upper case command, so the cost of
+ * translating a message does not grow with the number of commands handled. Commands without a translator of their
+ * own are turned into a {@link ServerEvent} holding all the parameters.
+ *
+ * The default translators are {@link RecyclingEventTranslator}s, so translating with a recycling
+ * {@link IrcEventFactory} creates no event for the commands and replies most often received.
+ *
+ * Translators may be registered while messages are being translated on another thread: verbs are kept in a
+ * concurrent map, and the array of numeric replies is replaced by a copy on each registration, so lookups take no
+ * lock.
+ */
+public class IrcEventTable {
+    public static final int RPL_WELCOME = 1;
+    public static final int RPL_YOURHOST = 2;
+    public static final int RPL_CREATED = 3;
+    public static final int RPL_MYINFO = 4;
+    public static final int RPL_ISUPPORT = 5;
+    public static final int RPL_STATCONN = 250;
+    public static final int RPL_LUSERCLIENT = 251;
+    public static final int RPL_LUSEROP = 252;
+    public static final int RPL_LUSERUNKNOWN = 253;
+    public static final int RPL_LUSERCHANNELS = 254;
+    public static final int RPL_LUSERME = 255;
+    public static final int RPL_LOCALUSERS = 265;
+    public static final int RPL_GLOBALUSERS = 266;
+    public static final int RPL_MOTD = 372;
+    public static final int RPL_MOTDSTART = 375;
+    public static final int RPL_ENDOFMOTD = 376;
+
+    /**
+     * Event holding the last parameter
+     */
+    public static final IrcEventTranslator LAST_PARAMETER = new RecyclingEventTranslator() {
+        public IrcEvent translate(IrcMessage message, IrcEventFactory events) {
+            return events.serverEvent(message.getParameter(0), message.getLastParameter());
+        }
+    };
+
+    /**
+     * Event holding every parameter after the target
+     */
+    public static final IrcEventTranslator JOINED_PARAMETERS = new RecyclingEventTranslator() {
+        public IrcEvent translate(IrcMessage message, IrcEventFactory events) {
+            return events.serverEvent(message.getParameter(0), message.getJoinedParameters(1));
+        }
+    };
+
+    /**
+     * Event holding every parameter, used for commands with no translator
+     */
+    public static final IrcEventTranslator UNKNOWN = new RecyclingEventTranslator() {
+        public IrcEvent translate(IrcMessage message, IrcEventFactory events) {
+            return events.serverEvent("*", message.getJoinedParameters(0));
+        }
+    };
+
+    private volatile IrcEventTranslator[] numerics;
+    private final Map<String, IrcEventTranslator> verbs;
+
+    /**
+     * Create an empty table, which translates every message as {@link #UNKNOWN}
+     */
+    public IrcEventTable() {
+        this.numerics = new IrcEventTranslator[1000];
+        this.verbs = new ConcurrentHashMap<String, IrcEventTranslator>();
+    }
+
+    /**
+     * Create a table with the translators for the commands and replies the client understands
+     */
+    public static IrcEventTable defaults() {
+        IrcEventTable t = new IrcEventTable();
+        t.register("QUIT", new IrcEventTranslator() {
+            public IrcEvent translate(IrcMessage message) {
+                return new QuitEvent("*", message.getLastParameter());
+            }
+        });
+        t.register("NOTICE", new RecyclingEventTranslator() {
+            public IrcEvent translate(IrcMessage message, IrcEventFactory events) {
+                return events.noticeEvent(message.getParameter(0), message.getLastParameter());
+            }
+        });
+        t.register("PING", new IrcEventTranslator() {
+            public IrcEvent translate(IrcMessage message) {
+                return new PingEvent(message.getParameter(0));
+            }
+        });
+        t.register("JOIN", LAST_PARAMETER);
+        for (int numeric : new int[] { RPL_WELCOME, RPL_YOURHOST, RPL_CREATED, RPL_LUSERCLIENT, RPL_LUSERME,
+                RPL_LOCALUSERS, RPL_GLOBALUSERS, RPL_STATCONN }) {
+            t.register(numeric, LAST_PARAMETER);
+        }
+        for (int numeric : new int[] { RPL_MYINFO, RPL_ISUPPORT, RPL_LUSEROP, RPL_LUSERUNKNOWN,
+                RPL_LUSERCHANNELS }) {
+            t.register(numeric, JOINED_PARAMETERS);
+        }
+        t.register(RPL_MOTDSTART, new IrcEventTranslator() {
+            public IrcEvent translate(IrcMessage message) {
+                return new MotDStart(message.getParameter(0), message.getLastParameter(), message.getTextStyles());
+            }
+        });
+        t.register(RPL_MOTD, new RecyclingEventTranslator() {
+            public IrcEvent translate(IrcMessage message, IrcEventFactory events) {
+                return events.motd(message.getParameter(0), message.getLastParameter(), message.getTextStyles());
+            }
+        });
+        t.register(RPL_ENDOFMOTD, new IrcEventTranslator() {
+            public IrcEvent translate(IrcMessage message) {
+                return new MotDEnd(message.getParameter(0), message.getLastParameter(), message.getTextStyles());
+            }
+        });
+        return t;
+    }
+
+    /**
+     * Set the translator of a numeric reply, replacing any existing one
+     *
+     * @param numeric    - reply number from 0 to 999
+     * @param translator - translator for the reply
+     */
+    public synchronized void register(int numeric, IrcEventTranslator translator) {
+        if(numeric < 0 || numeric >= numerics.length) {
+            throw new IllegalArgumentException("Numeric reply out of range: " + numeric);
+        }
+        IrcEventTranslator[] copy = numerics.clone();
+        copy[numeric] = translator;
+        numerics = copy;
+    }
+
+    /**
+     * Set the translator of a command, replacing any existing one
+     *
+     * @param command    - command verb, or three digit numeric reply
+     * @param translator - translator for the command
+     */
+    public void register(String command, IrcEventTranslator translator) {
+        int numeric = numeric(command);
+        if(numeric >= 0) {
+            register(numeric, translator);
+        }
+        else {
+            verbs.put(command.toUpperCase(Locale.ROOT), translator);
+        }
+    }
+
+    /**
+     * @return the translator for the command, or {@link #UNKNOWN} if there is none
+     */
+    public IrcEventTranslator lookup(String command) {
+        IrcEventTranslator t;
+        int numeric = numeric(command);
+        if(numeric >= 0) {
+            t = numerics[numeric];
+        }
+        else {
+            // Servers send verbs in upper case, so the lookup normally needs neither a copy nor a rehash
+            t = verbs.get(command);
+            if(t == null && !verbs.isEmpty()) {
+                t = verbs.get(command.toUpperCase(Locale.ROOT));
+            }
+        }
+        return t == null ? UNKNOWN : t;
+    }
+
+    public IrcEvent translate(IrcMessage message) {
+        return lookup(message.getCommand()).translate(message);
+    }
+
+    /**
+     * Translate a message, taking the event from a factory if its translator can
+     */
+    public IrcEvent translate(IrcMessage message, IrcEventFactory events) {
+        IrcEventTranslator t = lookup(message.getCommand());
+        if(t instanceof RecyclingEventTranslator) {
+            return ((RecyclingEventTranslator) t).translate(message, events);
+        }
+        return t.translate(message);
+    }
+
+    /**
+     * @return the value of a three digit numeric reply, or -1 if the command is not a numeric reply
+     */
+    private static int numeric(String command) {
+        if(command.length() != 3) {
+            return -1;
+        }
+        int n = 0;
+        for(int i = 0; i < 3; i++) {
+            char c = command.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            n = n * 10 + c - '0';
+        }
+        return n;
+    }
+}
@@ -0,0 +1,11 @@
+package dirc.core.server;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.message.IrcMessage;
+
+/**
+ * Turns a message with a particular command into the event delivered to listeners
+ */
+public interface IrcEventTranslator {
+    IrcEvent translate(IrcMessage message);
+}
@@ -1,144 +1,603 @@
 package dirc.core.server;
 
 import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import dirc.core.event.BatchEvent;
 import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventBus;
+import dirc.core.event.IrcEventFactory;
 import dirc.core.event.IrcEventListener;
-import dirc.core.event.MotD;
-import dirc.core.event.MotDEnd;
-import dirc.core.event.MotDStart;
-import dirc.core.event.NoticeEvent;
 import dirc.core.event.PingEvent;
-import dirc.core.event.QuitEvent;
-import dirc.core.event.ServerEvent;
 import dirc.core.message.IrcMessage;
 import dirc.core.message.IrcMessageListener;
 import dirc.core.net.IrcConnection;
+import dirc.core.net.IrcConnectionListener;
 
 public class IrcServer {
-    private static final String RPL_WELCOME = "001";
-    private static final String RPL_YOURHOST = "002";
-    private static final String RPL_CREATED = "003";
-    private static final String RPL_MYINFO = "004";
-    private static final String RPL_ISUPPORT = "005";
-    private static final String RPL_STATCONN = "250";
-    private static final String RPL_LUSERCLIENT = "251";
-    private static final String RPL_LUSEROP = "252";
-    private static final String RPL_LUSERUNKNOWN = "253";
-    private static final String RPL_LUSERCHANNELS = "254";
-    private static final String RPL_LUSERME = "255";
-    private static final String RPL_LOCALUSERS = "265";
-    private static final String RPL_GLOBALUSERS = "266";
-    private static final String RPL_MOTDSTART = "375";
-    private static final String RPL_MOTD = "372";
-    private static final String RPL_ENDOFMOTD = "376";
+    private static final Logger LOG = Logger.getLogger(IrcServer.class.getName());
+
+    private static final String LAG_TOKEN = "dirc-lag-";
+
+    /** Longest line a server accepts, including the line terminator */
+    public static final int MAX_LINE_LENGTH = 512;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String WELCOME = "001";
+    private static final String BATCH = "BATCH";
+
+    /** Number of messages of history requested for each channel rejoined */
+    public static final int HISTORY_LIMIT = 500;
+
+    // Lag probes of every server are sent from one daemon thread
+    private static final ScheduledExecutorService PROBES = daemonScheduler("irc-lag-probe");
+
+    // Reconnects are timed apart from the lag probes, and each attempt, which blocks while resolving and connecting,
+    // runs on a thread of its own so that a slow server holds up no other
+    private static final ScheduledExecutorService RECONNECTS = daemonScheduler("irc-reconnect");
+    private static final ExecutorService CONNECTS = Executors.newCachedThreadPool(daemonThreads("irc-connect"));
     
     private IrcConnection connection;
     private List<IrcEventListener> listeners;
+    private List<IrcEventListener> recycledListeners;
+    // Only used by the thread receiving from the server
+    private IrcEventFactory recycledEvents;
+    private IrcEventBus eventBus;
     private Map<String, IrcChannel> channels;
+    private ChannelTracker tracker;
+    private ServerSupport support;
+    private IrcEventTable events;
+    private LagMetrics lagMetrics;
+    private Capabilities capabilities;
+    private ScheduledFuture<?> lagProbes;
+    private volatile ReconnectPolicy reconnectPolicy;
+    private volatile Callable<SocketChannel> connector;
+    private ReconnectMetrics reconnectMetrics;
+    private volatile boolean recovering;
+    private volatile boolean closed;
+    private volatile String nickname;
+    private volatile String username;
+    private volatile String realname;
+    private volatile String lastServerTime;
+    private Map<String, OpenBatch> batches;
+
+    /**
+     * Batch whose messages are still being received. Only touched by the thread receiving from the server.
+     */
+    private static class OpenBatch {
+        private final String reference;
+        private final String type;
+        private final List<String> parameters;
+        private final String parent;
+        private final List<IrcEvent> events;
+        // Replays past messages, which must not change the state of the channels
+        private final boolean history;
+
+        private OpenBatch(String reference, String type, List<String> parameters, String parent, boolean history) {
+            this.reference = reference;
+            this.type = type;
+            this.parameters = parameters;
+            this.parent = parent;
+            this.events = new ArrayList<IrcEvent>();
+            this.history = history || "chathistory".equals(type);
+        }
+
+        private BatchEvent toEvent() {
+            String recipient = "chathistory".equals(type) && !parameters.isEmpty() ? parameters.get(0) : "*";
+            return new BatchEvent(recipient, reference, type, parameters, events);
+        }
+    }
 
     public IrcServer(IrcConnection connection) {
         this.connection = connection;
-        this.listeners = new ArrayList<IrcEventListener>();
-        this.channels = new HashMap<String, IrcChannel>();
+        this.listeners = new CopyOnWriteArrayList<IrcEventListener>();
+        this.recycledListeners = new CopyOnWriteArrayList<IrcEventListener>();
+        this.recycledEvents = IrcEventFactory.recycling();
+        this.eventBus = new IrcEventBus();
+        this.channels = new ConcurrentHashMap<String, IrcChannel>();
+        this.support = new ServerSupport();
+        this.tracker = new ChannelTracker(channels, support);
+        this.lagMetrics = new LagMetrics();
+        this.capabilities = new Capabilities();
+        this.batches = new HashMap<String, OpenBatch>();
+        this.reconnectMetrics = new ReconnectMetrics();
+        this.events = IrcEventTable.defaults();
         
         connection.addMessageListener(new IrcMessageListener() {
             public void receivedMessage(IrcMessage message) {
-                IrcEvent ev = translateEvent(message);
+                if(isLagProbeReply(message)) {
+                    return;
+                }
+                if(Capabilities.isCap(message)) {
+                    for (IrcMessage reply : capabilities.handle(message)) {
+                        send(reply);
+                    }
+                    return;
+                }
+                if(recovering && WELCOME.equals(message.getCommand())) {
+                    recovered();
+                }
+                if(BATCH.equals(message.getCommand())) {
+                    batch(message);
+                    return;
+                }
+                if(batches.isEmpty() || !isHistory(message)) {
+                    tracker.handle(message);
+                }
+                // Decided once, so that a listener added meanwhile is not handed an event it must not keep
+                boolean recycle = canRecycle();
+                IrcEvent ev = translateEvent(message, recycle ? recycledEvents : IrcEventFactory.ALLOCATING);
                 if(ev instanceof PingEvent) {
+                    lagMetrics.serverPinged();
                     pong(((PingEvent) ev).getServername());
                 } 
-                else {
-                    fireEvent(ev);
+                else if(batches.isEmpty() || !collect(message, ev)) {
+                    if(tracksServerTime()) {
+                        String time = message.getTag("time");
+                        if(time != null) {
+                            lastServerTime = time;
+                        }
+                    }
+                    fireEvent(ev, recycle);
                 }
             }
         });
+        connection.addConnectionListener(new IrcConnectionListener() {
+            public void connectionLost(IOException cause) {
+                IrcServer.this.connectionLost(cause);
+            }
+        });
+    }
+
+    private static ScheduledExecutorService daemonScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(daemonThreads(name));
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
     }
     
+    /**
+     * Add a listener which is called on the thread receiving from the server, so must not block
+     */
     public void addEventListener(IrcEventListener eventListener) {
         this.listeners.add(eventListener);
     }
-    
-    private void fireEvent(IrcEvent ev) {
-        for (IrcEventListener l : listeners) {
-            l.handleEvent(ev);
-        }
+
+    /**
+     * Add a listener which is called on the thread receiving from the server, and which agrees not to keep the
+     * events it is handed once it returns. While every listener is of this kind, the events of the commonest
+     * messages are refilled for each message rather than created, sparing the garbage collector under heavy
+     * traffic. Such a listener must copy what it needs from an event which {@link IrcEvent#isRecycled()} before
+     * returning, and must not hand the event to another thread.
+     */
+    public void addRecycledEventListener(IrcEventListener eventListener) {
+        this.recycledListeners.add(eventListener);
+    }
+
+    /**
+     * Add a listener which is called on a thread of its own, so that it cannot hold up the connection
+     *
+     * @param eventListener - the listener
+     * @param capacity      - number of events the listener may fall behind by
+     * @param overflow      - what to do with further events once it is that far behind
+     *
+     * @return the subscription, for its lag metrics and to remove the listener
+     */
+    public IrcEventBus.Subscription addEventListener(IrcEventListener eventListener, int capacity,
+            IrcEventBus.Overflow overflow) {
+        return this.eventBus.subscribe(eventListener, capacity, overflow);
     }
     
-    private IrcEvent translateEvent(IrcMessage message) {
-        System.out.println(message.toString());
-        if("QUIT".equalsIgnoreCase(message.getCommand())) {
-            return new QuitEvent("*", message.getLastParameter());
+    /**
+     * Open or close a batch. A closed batch is delivered as one {@link BatchEvent}, or added to the batch it is
+     * nested in.
+     */
+    private void batch(IrcMessage message) {
+        String reference = message.getParameter(0);
+        if(reference.length() < 2) {
+            return;
         }
-        if("NOTICE".equalsIgnoreCase(message.getCommand())) {
-            return new NoticeEvent(message.getParameter(0), message.getLastParameter());
+        String tag = reference.substring(1);
+        if(reference.charAt(0) == '+') {
+            List<String> parameters = message.getParameters();
+            String parent = message.getTag("batch");
+            batches.put(tag, new OpenBatch(tag, message.getParameter(1),
+                    new ArrayList<String>(parameters.subList(Math.min(2, parameters.size()), parameters.size())),
+                    parent, parent != null && isHistory(message)));
         }
-        if("PING".equalsIgnoreCase(message.getCommand())) {
-            return new PingEvent(message.getParameter(0));
+        else if(reference.charAt(0) == '-') {
+            OpenBatch b = batches.remove(tag);
+            if(b == null) {
+                return;
+            }
+            OpenBatch parent = b.parent == null ? null : batches.get(b.parent);
+            if(parent != null) {
+                parent.events.add(b.toEvent());
+            }
+            else {
+                fireEvent(b.toEvent(), false);
+            }
         }
-        else if("JOIN".equalsIgnoreCase(message.getCommand())) {
-            return new ServerEvent(message.getParameter(0), message.getLastParameter());
+    }
+
+    /**
+     * Hold back the event of a message which belongs to an open batch
+     *
+     * @return true if the event was added to a batch
+     */
+    private boolean collect(IrcMessage message, IrcEvent ev) {
+        String tag = message.getTag("batch");
+        OpenBatch b = tag == null ? null : batches.get(tag);
+        if(b == null) {
+            return false;
         }
-        else if(RPL_WELCOME.equals(message.getCommand()) ||
-                RPL_YOURHOST.equals(message.getCommand()) ||
-                RPL_CREATED.equals(message.getCommand()) ||
-                RPL_LUSERCLIENT.equals(message.getCommand()) ||
-                RPL_LUSERME.equals(message.getCommand()) ||
-                RPL_LOCALUSERS.equals(message.getCommand()) ||
-                RPL_GLOBALUSERS.equals(message.getCommand()) ||
-                RPL_STATCONN.equals(message.getCommand())) {
-            return new ServerEvent(message.getParameter(0), message.getLastParameter());
+        b.events.add(ev);
+        return true;
+    }
+
+    /**
+     * @return true if the message belongs to a batch replaying history
+     */
+    private boolean isHistory(IrcMessage message) {
+        String tag = message.getTag("batch");
+        OpenBatch b = tag == null ? null : batches.get(tag);
+        return b != null && b.history;
+    }
+
+    /**
+     * The time of the latest message is only needed to ask for the history missed while disconnected
+     */
+    private boolean tracksServerTime() {
+        return capabilities.isEnabled(Capabilities.CHATHISTORY) && capabilities.isEnabled(Capabilities.SERVER_TIME);
+    }
+
+    /**
+     * An event may only be recycled when no listener could keep it, and no open batch could collect it
+     */
+    private boolean canRecycle() {
+        return listeners.isEmpty() && !eventBus.hasSubscribers() && batches.isEmpty();
+    }
+
+    /**
+     * @param recycled - whether the event was taken from the recycling factory, in which case it is only handed to
+     *                 the listeners which agreed not to keep it, even if others have been added since
+     */
+    private void fireEvent(IrcEvent ev, boolean recycled) {
+        if(!recycled) {
+            for (IrcEventListener l : listeners) {
+                l.handleEvent(ev);
+            }
+            eventBus.publish(ev);
         }
-        else if(RPL_MYINFO.equals(message.getCommand()) ||
-                RPL_ISUPPORT.equals(message.getCommand()) ||
-                RPL_LUSEROP.equals(message.getCommand()) ||
-                RPL_LUSERUNKNOWN.equals(message.getCommand()) ||
-                RPL_LUSERCHANNELS.equals(message.getCommand())) {
-            return new ServerEvent(message.getParameter(0), message.getJoinedParameters(1));
+        for (IrcEventListener l : recycledListeners) {
+            l.handleEvent(ev);
         }
-        else if(RPL_MOTDSTART.equals(message.getCommand())) {
-            return new MotDStart(message.getParameter(0), message.getLastParameter(), message.getTextStyles());
+    }
+    
+    /**
+     * Record the round trip of a PONG answering one of our lag probes
+     */
+    private boolean isLagProbeReply(IrcMessage message) {
+        if(!"PONG".equalsIgnoreCase(message.getCommand())) {
+            return false;
+        }
+        String token = message.getLastParameter();
+        if(token == null || !token.startsWith(LAG_TOKEN)) {
+            return false;
         }
-        else if(RPL_MOTD.equals(message.getCommand())) {
-            return new MotD(message.getParameter(0), message.getLastParameter(), message.getTextStyles());
+        try {
+            lagMetrics.record(System.nanoTime() - Long.parseLong(token.substring(LAG_TOKEN.length())));
         }
-        else if(RPL_ENDOFMOTD.equals(message.getCommand())) {
-            return new MotDEnd(message.getParameter(0), message.getLastParameter(), message.getTextStyles());
+        catch (NumberFormatException ex) {
+            return false;
         }
-        return new ServerEvent("*", message.getJoinedParameters(0));
+        return true;
+    }
+    
+    private IrcEvent translateEvent(IrcMessage message, IrcEventFactory factory) {
+        if(LOG.isLoggable(Level.FINE)) {
+            LOG.fine(message.toString());
+        }
+        return events.translate(message, factory);
+    }
+
+    /**
+     * Set how messages with a command are turned into events, replacing the default translation
+     *
+     * @param command    - command verb, or three digit numeric reply
+     * @param translator - translator for the command
+     */
+    public void registerTranslator(String command, IrcEventTranslator translator) {
+        events.register(command, translator);
     }
 
+    /**
+     * Connect to the server and open capability negotiation, which the server holds registration open for
+     */
     public void connect() throws IOException {
         this.connection.connect();
+        send(capabilities.start());
+    }
+
+    /**
+     * Connect over a channel which has already been established, such as the winner of a
+     * {@link dirc.core.net.ConnectionRace}
+     */
+    public void connect(SocketChannel channel) throws IOException {
+        this.connection.connect(channel);
+        send(capabilities.start());
+    }
+
+    /**
+     * The IRCv3 capabilities to request when connecting, and those the server enabled
+     */
+    public Capabilities getCapabilities() {
+        return capabilities;
     }
     
     public void close() {
+        closed = true;
+        stopLagProbes();
         this.connection.close();
+        this.eventBus.close();
+    }
+
+    /**
+     * Send a PING carrying the current time, whose PONG is recorded in the {@link LagMetrics} rather than
+     * delivered as an event
+     */
+    public void probeLag() {
+        if(this.connection.sendMessage(new IrcMessage("PING", LAG_TOKEN + System.nanoTime()))) {
+            lagMetrics.probeSent();
+        }
+    }
+
+    /**
+     * Probe the lag of this connection periodically until it is closed
+     *
+     * @param period - time between probes
+     * @param unit   - unit of the period
+     */
+    public synchronized void startLagProbes(long period, TimeUnit unit) {
+        stopLagProbes();
+        lagProbes = PROBES.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                probeLag();
+            }
+        }, period, period, unit);
+    }
+
+    public synchronized void stopLagProbes() {
+        if(lagProbes != null) {
+            lagProbes.cancel(false);
+            lagProbes = null;
+        }
+    }
+
+    public LagMetrics getLagMetrics() {
+        return lagMetrics;
+    }
+
+    /**
+     * Set how to reconnect when the connection is lost. After reconnecting, the nickname and user are registered
+     * again, and once the server welcomes the client every channel joined is rejoined.
+     *
+     * @param policy - delays between attempts, or null not to reconnect
+     */
+    public void setReconnectPolicy(ReconnectPolicy policy) {
+        this.reconnectPolicy = policy;
+    }
+
+    /**
+     * Set how to establish the channel of each reconnect, such as a new {@link dirc.core.net.ConnectionRace} over
+     * every server of the network, so that the client fails over to another server when the one it was connected to
+     * stays down. Without one, the connection reconnects to the server it was created for.
+     *
+     * @param connector - returns a connected channel, or null to reconnect to the same server
+     */
+    public void setConnector(Callable<SocketChannel> connector) {
+        this.connector = connector;
+    }
+
+    public ReconnectMetrics getReconnectMetrics() {
+        return reconnectMetrics;
+    }
+
+    private void connectionLost(IOException cause) {
+        LOG.log(Level.INFO, "Connection lost", cause);
+        // Batches cut short by the loss will never be closed
+        batches.clear();
+        tracker.reset();
+        ReconnectPolicy policy = reconnectPolicy;
+        if(policy == null || closed) {
+            return;
+        }
+        reconnectMetrics.lost(System.nanoTime());
+        scheduleReconnect(policy, 0);
+    }
+
+    private void scheduleReconnect(final ReconnectPolicy policy, final int attempt) {
+        final Runnable attemptReconnect = new Runnable() {
+            public void run() {
+                reconnect(policy, attempt);
+            }
+        };
+        RECONNECTS.schedule(new Runnable() {
+            public void run() {
+                CONNECTS.execute(attemptReconnect);
+            }
+        }, policy.delayNanos(attempt), TimeUnit.NANOSECONDS);
+    }
+
+    private void reconnect(ReconnectPolicy policy, int attempt) {
+        if(closed) {
+            return;
+        }
+        // Set first, as the welcome may arrive before connect returns
+        recovering = true;
+        Callable<SocketChannel> c = connector;
+        try {
+            if(c == null) {
+                connect();
+            }
+            else {
+                connect(c.call());
+            }
+        }
+        catch (Exception ex) {
+            LOG.log(Level.FINE, "Reconnect failed", ex);
+            reconnectMetrics.attemptFailed();
+            scheduleReconnect(policy, attempt + 1);
+            return;
+        }
+        if(nickname != null) {
+            nickname(nickname);
+        }
+        if(username != null) {
+            username(username, realname);
+        }
+    }
+
+    /**
+     * Rejoin the channels once the server has accepted the registration, as it would refuse them before, and ask
+     * for the messages missed while disconnected if the server keeps history
+     */
+    private void recovered() {
+        recovering = false;
+        for (IrcMessage join : joinMessages(channels.keySet(), MAX_LINE_LENGTH)) {
+            send(join);
+        }
+        if(capabilities.isEnabled(Capabilities.CHATHISTORY)) {
+            String since = lastServerTime;
+            for (String channelname : channels.keySet()) {
+                send(since == null
+                        ? new IrcMessage("CHATHISTORY", "LATEST", channelname, "*", Integer.toString(HISTORY_LIMIT))
+                        : new IrcMessage("CHATHISTORY", "AFTER", channelname, "timestamp=" + since,
+                                Integer.toString(HISTORY_LIMIT)));
+            }
+        }
+        reconnectMetrics.recovered(System.nanoTime());
+    }
+
+    /**
+     * Join channels with as few messages as possible, by listing as many channels in each JOIN as fit in a line
+     *
+     * @param channelnames  - channels to join
+     * @param maxLineLength - longest line the server accepts, including the line terminator
+     *
+     * @return the JOIN messages
+     */
+    static List<IrcMessage> joinMessages(Collection<String> channelnames, int maxLineLength) {
+        // "JOIN " and the line terminator
+        int room = maxLineLength - 7;
+        List<IrcMessage> joins = new ArrayList<IrcMessage>();
+        StringBuilder list = new StringBuilder();
+        int length = 0;
+        for (String channelname : channelnames) {
+            int n = channelname.getBytes(UTF8).length;
+            if(length > 0 && length + 1 + n > room) {
+                joins.add(new IrcMessage("JOIN", list.toString()));
+                list.setLength(0);
+                length = 0;
+            }
+            if(length > 0) {
+                list.append(',');
+                length++;
+            }
+            list.append(channelname);
+            length += n;
+        }
+        if(length > 0) {
+            joins.add(new IrcMessage("JOIN", list.toString()));
+        }
+        return joins;
+    }
+
+    /**
+     * Queue a message, logging it if the outbox is full and it was dropped
+     * 
+     * @return false if the message was dropped
+     */
+    private boolean send(IrcMessage message) {
+        if(this.connection.sendMessage(message)) {
+            return true;
+        }
+        LOG.log(Level.WARNING, "Outbox full, dropped {0}", message.getCommand());
+        return false;
     }
 
     public void nickname(String nick) {
-        this.connection.sendMessage(new IrcMessage("NICK", nick));
+        this.nickname = nick;
+        send(new IrcMessage("NICK", nick));
     }
 
     public void username(String username, String realname) {
-        this.connection.sendMessage(new IrcMessage("USER", username, "0", "*", realname));
+        this.username = username;
+        this.realname = realname;
+        send(new IrcMessage("USER", username, "0", "*", realname));
     }
 
     public void quit() {
-        this.connection.sendMessage(new IrcMessage("QUIT"));
+        send(new IrcMessage("QUIT"));
     }
     
     public void pong(String servername) {
-        this.connection.sendMessage(new IrcMessage("PONG", servername));
+        send(new IrcMessage("PONG", servername));
     }
 
+    /**
+     * Join a channel. The channel is filled in as the server confirms the join and lists its members, and is
+     * rejoined after reconnecting until the client leaves it.
+     */
     public IrcChannel join(String channelname) {
-        IrcChannel channel = new IrcChannel(channelname, this.connection);
-        channels.put(channelname, channel);
+        IrcChannel channel = tracker.open(channelname);
+        send(new IrcMessage("JOIN", channelname));
         return channel;
     }
+
+    /**
+     * @return the channel, or null if the client has not joined it
+     */
+    public IrcChannel getChannel(String channelname) {
+        return tracker.channel(channelname);
+    }
+
+    /**
+     * The features the server advertised, such as how it compares nicknames and channel names
+     */
+    public ServerSupport getSupport() {
+        return support;
+    }
+
+    /**
+     * @return the nickname the server knows the client by, which may differ from the one asked for, or null before
+     *         the server has welcomed the client
+     */
+    public String getCurrentNickname() {
+        return tracker.getNickname();
+    }
 }
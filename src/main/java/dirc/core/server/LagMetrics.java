@@ -0,0 +1,80 @@
+package dirc.core.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round-trip latency of a server connection, measured by PINGs the client sends with a timestamp token and the
+ * matching PONGs, along with a count of the server's own PINGs answered. Updated by the thread receiving from the
+ * connection and readable from any thread.
+ */
+public class LagMetrics {
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong replies = new AtomicLong();
+    private final AtomicLong lastLagNanos = new AtomicLong(-1);
+    private final AtomicLong lagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private final AtomicLong serverPings = new AtomicLong();
+
+    void probeSent() {
+        probes.incrementAndGet();
+    }
+
+    /**
+     * Record the PONG answering a probe
+     *
+     * @param nanos - time between sending the probe and receiving the reply
+     */
+    void record(long nanos) {
+        replies.incrementAndGet();
+        lastLagNanos.set(nanos);
+        lagNanos.addAndGet(nanos);
+        long current;
+        while(nanos > (current = maxLagNanos.get()) && !maxLagNanos.compareAndSet(current, nanos)) {
+        }
+    }
+
+    void serverPinged() {
+        serverPings.incrementAndGet();
+    }
+
+    public long getProbes() {
+        return probes.get();
+    }
+
+    public long getReplies() {
+        return replies.get();
+    }
+
+    /**
+     * @return the round-trip time of the last answered probe, or -1 if no probe has been answered
+     */
+    public long getLastLagNanos() {
+        return lastLagNanos.get();
+    }
+
+    public long getMeanLagNanos() {
+        long r = replies.get();
+        return r == 0 ? 0 : lagNanos.get() / r;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos.get();
+    }
+
+    public long getServerPings() {
+        return serverPings.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("lagmetrics: ");
+        sb.append("[ probes: ").append(getProbes());
+        sb.append(", replies: ").append(getReplies());
+        sb.append(", last lag ns: ").append(getLastLagNanos());
+        sb.append(", mean lag ns: ").append(getMeanLagNanos());
+        sb.append(", max lag ns: ").append(getMaxLagNanos());
+        sb.append(", server pings: ").append(getServerPings());
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package dirc.core.server;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table from names to int ids. Names can be looked up by a range of a larger string, such as
+ * one entry of a NAMES reply, so a name which is already known is found without creating a substring.
+ *
+ * Names are compared under the casemapping of the server. Each name is folded once when it is added, and a lookup
+ * folds the characters it hashes and compares as it goes, so it creates no lower case copy.
+ */
+class NameTable {
+    private static final int EMPTY = -1;
+
+    private final CaseMapping caseMapping;
+    private String[] keys;
+    private int[] values;
+    private int size;
+
+    NameTable(CaseMapping caseMapping) {
+        this(16, caseMapping);
+    }
+
+    /**
+     * @param capacity    - power of two number of slots to start with
+     * @param caseMapping - how names are compared
+     */
+    NameTable(int capacity, CaseMapping caseMapping) {
+        this.caseMapping = caseMapping;
+        this.keys = new String[capacity];
+        this.values = new int[capacity];
+    }
+
+    CaseMapping getCaseMapping() {
+        return caseMapping;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the id of the name, or -1 if it is not in the table
+     */
+    int get(String name) {
+        return get(name, 0, name.length());
+    }
+
+    /**
+     * @return the id of the name held in a range of a string, or -1 if it is not in the table
+     */
+    int get(String s, int start, int end) {
+        int mask = keys.length - 1;
+        for(int i = hash(s, start, end) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if(matches(keys[i], s, start, end)) {
+                return values[i];
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Add a name, or change the id of a name already in the table
+     */
+    void put(String name, int id) {
+        if((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = hash(name, 0, name.length()) & mask;
+        for(; keys[i] != null; i = (i + 1) & mask) {
+            if(matches(keys[i], name, 0, name.length())) {
+                values[i] = id;
+                return;
+            }
+        }
+        keys[i] = caseMapping.canonical(name);
+        values[i] = id;
+        size++;
+    }
+
+    /**
+     * Remove a name, shifting back any entries which probed past it so that every entry stays reachable
+     */
+    void remove(String name) {
+        int mask = keys.length - 1;
+        int i = hash(name, 0, name.length()) & mask;
+        while(keys[i] != null && !matches(keys[i], name, 0, name.length())) {
+            i = (i + 1) & mask;
+        }
+        if(keys[i] == null) {
+            return;
+        }
+        keys[i] = null;
+        size--;
+        for(int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            int home = hash(keys[j], 0, keys[j].length()) & mask;
+            // Move the entry into the gap if the gap lies between its home slot and where it is now
+            if(((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[capacity];
+        values = new int[capacity];
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Hash of the folded form of a range of a string, spread so that linear probing copes with similar names
+     */
+    private int hash(String s, int start, int end) {
+        int h = 0;
+        for(int i = start; i < end; i++) {
+            h = 31 * h + caseMapping.fold(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param key - a folded name in the table
+     */
+    private boolean matches(String key, String s, int start, int end) {
+        if(key.length() != end - start) {
+            return false;
+        }
+        for(int i = start; i < end; i++) {
+            if(key.charAt(i - start) != caseMapping.fold(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
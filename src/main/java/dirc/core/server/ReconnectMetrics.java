@@ -0,0 +1,88 @@
+package dirc.core.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outages of a server connection: how often it was lost, how many attempts it took to get it back, and how long
+ * it was down from the loss until the channels were rejoined. Updated by the reconnecting thread and readable from
+ * any thread.
+ */
+public class ReconnectMetrics {
+    private final AtomicLong disconnects = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong lastRecoveryNanos = new AtomicLong(-1);
+    private final AtomicLong maxRecoveryNanos = new AtomicLong();
+    private final AtomicLong downtimeNanos = new AtomicLong();
+    private final AtomicLong lostAt = new AtomicLong();
+    private volatile boolean down;
+
+    void lost(long now) {
+        disconnects.incrementAndGet();
+        lostAt.set(now);
+        down = true;
+    }
+
+    void attemptFailed() {
+        failedAttempts.incrementAndGet();
+    }
+
+    void recovered(long now) {
+        long nanos = now - lostAt.get();
+        reconnects.incrementAndGet();
+        lastRecoveryNanos.set(nanos);
+        downtimeNanos.addAndGet(nanos);
+        long current;
+        while(nanos > (current = maxRecoveryNanos.get()) && !maxRecoveryNanos.compareAndSet(current, nanos)) {
+        }
+        down = false;
+    }
+
+    public long getDisconnects() {
+        return disconnects.get();
+    }
+
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    public long getFailedAttempts() {
+        return failedAttempts.get();
+    }
+
+    /**
+     * @return the time from losing the connection to rejoining the channels after the last recovery, or -1 if the
+     *         connection has never recovered
+     */
+    public long getLastRecoveryNanos() {
+        return lastRecoveryNanos.get();
+    }
+
+    public long getMaxRecoveryNanos() {
+        return maxRecoveryNanos.get();
+    }
+
+    /**
+     * @return the total time spent down, not counting an outage still in progress
+     */
+    public long getDowntimeNanos() {
+        return downtimeNanos.get();
+    }
+
+    public boolean isDown() {
+        return down;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("reconnectmetrics: ");
+        sb.append("[ disconnects: ").append(getDisconnects());
+        sb.append(", reconnects: ").append(getReconnects());
+        sb.append(", failed attempts: ").append(getFailedAttempts());
+        sb.append(", last recovery ns: ").append(getLastRecoveryNanos());
+        sb.append(", max recovery ns: ").append(getMaxRecoveryNanos());
+        sb.append(", downtime ns: ").append(getDowntimeNanos());
+        sb.append("]");
+        return sb.toString();
+    }
+}
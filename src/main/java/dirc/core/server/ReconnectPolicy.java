@@ -0,0 +1,46 @@
+package dirc.core.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long to wait before each attempt to reconnect a lost server connection. The limit on the delay doubles with
+ * every failed attempt, up to a maximum, and each delay is drawn uniformly below that limit ("full jitter"), so
+ * that many clients dropped by the same outage do not all come back at the same moment.
+ */
+public class ReconnectPolicy {
+    /** Start at up to a second, backing off to up to five minutes */
+    public static final ReconnectPolicy DEFAULT = new ReconnectPolicy(1, 300, TimeUnit.SECONDS);
+
+    private long initialDelayNanos;
+    private long maxDelayNanos;
+
+    /**
+     * @param initialDelay - limit on the delay before the first attempt
+     * @param maxDelay     - limit on the delay before any attempt
+     * @param unit         - unit of the delays
+     */
+    public ReconnectPolicy(long initialDelay, long maxDelay, TimeUnit unit) {
+        this.initialDelayNanos = unit.toNanos(initialDelay);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * @param attempt - number of attempts already made since the connection was lost
+     *
+     * @return the delay before the next attempt, in nanoseconds
+     */
+    public long delayNanos(int attempt) {
+        return ThreadLocalRandom.current().nextLong(limitNanos(attempt) + 1);
+    }
+
+    /**
+     * @return the limit on the delay before the next attempt, in nanoseconds
+     */
+    public long limitNanos(int attempt) {
+        if(attempt >= 62 || initialDelayNanos << attempt >>> attempt != initialDelayNanos) {
+            return maxDelayNanos;
+        }
+        return Math.min(maxDelayNanos, initialDelayNanos << attempt);
+    }
+}
@@ -0,0 +1,17 @@
+package dirc.core.server;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventFactory;
+import dirc.core.message.IrcMessage;
+
+/**
+ * Translator which takes its events from an {@link IrcEventFactory}, so that it creates none when given a recycling
+ * factory. Translated without a factory, it creates a new event as any other translator does.
+ */
+public abstract class RecyclingEventTranslator implements IrcEventTranslator {
+    public final IrcEvent translate(IrcMessage message) {
+        return translate(message, IrcEventFactory.ALLOCATING);
+    }
+
+    public abstract IrcEvent translate(IrcMessage message, IrcEventFactory events);
+}
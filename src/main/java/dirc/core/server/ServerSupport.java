@@ -0,0 +1,241 @@
+package dirc.core.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dirc.core.message.IrcMessage;
+
+/**
+ * The features a server advertises in RPL_ISUPPORT (005) replies, sent in one or more lines after the welcome. Each
+ * token is kept as given, and those the client relies on are also parsed: the casemapping names are compared with,
+ * the membership prefixes, the kinds of channel mode and the channel types. Until the server says otherwise each has
+ * the value most servers use.
+ *
+ * Filled in by the thread receiving from the server and readable from any thread.
+ *
+ * @see https://modern.ircdocs.horse/#rplisupport-005
+ */
+public class ServerSupport {
+    static final String ISUPPORT = "005";
+
+    private static final String DEFAULT_PREFIX = "(qaohv)~&@%+";
+    private static final String DEFAULT_CHANMODES = "beI,k,l,";
+    private static final String DEFAULT_CHANTYPES = "#&";
+
+    private final Map<String, String> tokens;
+    private volatile CaseMapping caseMapping;
+    private volatile String prefixModes;
+    private volatile String prefixSymbols;
+    private volatile String[] chanModes;
+    private volatile String chanTypes;
+
+    public ServerSupport() {
+        this.tokens = new ConcurrentHashMap<String, String>();
+        reset();
+    }
+
+    /**
+     * Forget the tokens of an earlier connection
+     */
+    void reset() {
+        tokens.clear();
+        caseMapping = CaseMapping.Rfc1459;
+        prefix(DEFAULT_PREFIX);
+        chanModes = DEFAULT_CHANMODES.split(",", -1);
+        chanTypes = DEFAULT_CHANTYPES;
+    }
+
+    /**
+     * Take in the tokens of a RPL_ISUPPORT, which follow the nickname and precede a closing description
+     */
+    void handle(IrcMessage message) {
+        List<String> parameters = message.getParameters();
+        for(int i = 1; i < parameters.size() - 1; i++) {
+            String token = parameters.get(i);
+            if(token.startsWith("-")) {
+                remove(token.substring(1));
+                continue;
+            }
+            int eq = token.indexOf('=');
+            String name = eq < 0 ? token : token.substring(0, eq);
+            String value = eq < 0 ? "" : unescape(token.substring(eq + 1));
+            tokens.put(name, value);
+            set(name, value);
+        }
+    }
+
+    private void remove(String name) {
+        tokens.remove(name);
+        set(name, null);
+    }
+
+    /**
+     * Parse a token the client relies on
+     *
+     * @param value - the value, or null to go back to the default
+     */
+    private void set(String name, String value) {
+        if("CASEMAPPING".equals(name)) {
+            caseMapping = value == null ? CaseMapping.Rfc1459 : CaseMapping.forToken(value);
+        }
+        else if("PREFIX".equals(name)) {
+            prefix(value == null ? DEFAULT_PREFIX : value);
+        }
+        else if("CHANMODES".equals(name)) {
+            String[] kinds = (value == null ? DEFAULT_CHANMODES : value).split(",", -1);
+            if(kinds.length >= 4) {
+                chanModes = kinds;
+            }
+        }
+        else if("CHANTYPES".equals(name)) {
+            chanTypes = value == null ? DEFAULT_CHANTYPES : value;
+        }
+    }
+
+    /**
+     * PREFIX pairs modes with their symbols, highest first, as in (ov)@+. An empty value means there are none.
+     */
+    private void prefix(String value) {
+        int close = value.indexOf(')');
+        if(value.startsWith("(") && close > 0 && value.length() - close - 1 == close - 1) {
+            prefixModes = value.substring(1, close);
+            prefixSymbols = value.substring(close + 1);
+        }
+        else if(value.isEmpty()) {
+            prefixModes = "";
+            prefixSymbols = "";
+        }
+    }
+
+    /**
+     * Values escape characters as \xHH, most often a space as \x20
+     */
+    static String unescape(String value) {
+        int escape = value.indexOf("\\x");
+        if(escape < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        int i = 0;
+        while(escape >= 0 && escape + 4 <= value.length()) {
+            sb.append(value, i, escape);
+            try {
+                sb.append((char) Integer.parseInt(value.substring(escape + 2, escape + 4), 16));
+            }
+            catch (NumberFormatException ex) {
+                sb.append(value, escape, escape + 4);
+            }
+            i = escape + 4;
+            escape = value.indexOf("\\x", i);
+        }
+        return sb.append(value, i, value.length()).toString();
+    }
+
+    /**
+     * @return whether the server advertised a token
+     */
+    public boolean isSupported(String name) {
+        return tokens.containsKey(name);
+    }
+
+    /**
+     * @return the value of a token, an empty string if it has none, or null if the server did not advertise it
+     */
+    public String getValue(String name) {
+        return tokens.get(name);
+    }
+
+    public Map<String, String> getTokens() {
+        return Collections.unmodifiableMap(tokens);
+    }
+
+    public CaseMapping getCaseMapping() {
+        return caseMapping;
+    }
+
+    /**
+     * @return the modes giving membership prefixes, highest first, such as ov
+     */
+    public String getPrefixModes() {
+        return prefixModes;
+    }
+
+    /**
+     * @return the membership prefixes in the order of {@link #getPrefixModes()}, such as @+
+     */
+    public String getPrefixSymbols() {
+        return prefixSymbols;
+    }
+
+    /**
+     * @return the channel modes which add to or remove from a list, such as bans, and always take an argument
+     */
+    public String getListModes() {
+        return chanModes[0];
+    }
+
+    /**
+     * @return the channel modes which always take an argument, such as the key
+     */
+    public String getArgumentModes() {
+        return chanModes[1];
+    }
+
+    /**
+     * @return the channel modes which take an argument only when set, such as the limit
+     */
+    public String getSetArgumentModes() {
+        return chanModes[2];
+    }
+
+    /**
+     * @return the channel modes which never take an argument
+     */
+    public String getFlagModes() {
+        return chanModes[3];
+    }
+
+    public String getChanTypes() {
+        return chanTypes;
+    }
+
+    public boolean isChannel(String name) {
+        return !name.isEmpty() && chanTypes.indexOf(name.charAt(0)) >= 0;
+    }
+
+    /**
+     * @return the name of the network, or null if the server did not give one
+     */
+    public String getNetwork() {
+        return tokens.get("NETWORK");
+    }
+
+    /**
+     * @return the longest nickname the server accepts, or 9, the limit of RFC 1459, if it did not say
+     */
+    public int getNickLength() {
+        return intValue("NICKLEN", 9);
+    }
+
+    /**
+     * @return the longest channel name the server accepts, or 200, the limit of RFC 1459, if it did not say
+     */
+    public int getChannelLength() {
+        return intValue("CHANNELLEN", 200);
+    }
+
+    private int intValue(String name, int otherwise) {
+        String value = tokens.get(name);
+        if(value == null) {
+            return otherwise;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException ex) {
+            return otherwise;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package dirc.core.server;
+
+import java.util.Arrays;
+
+/**
+ * The users sharing channels with the client, each interned once under an int id. Channels refer to their members
+ * by id, so a nickname is held once however many channels the user is in, and a change of nickname touches no
+ * channel. Each user also keeps the ids of the channels it is in, so that a QUIT only visits those channels. A user
+ * is forgotten, and its id reused, once it leaves the last channel it shared with the client.
+ *
+ * Nicknames are looked up under the casemapping of the server, and each is kept as the server last spelt it.
+ */
+class UserTable {
+    private static final int[] NO_CHANNELS = new int[0];
+
+    private NameTable ids;
+    private String[] nicks;
+    private int[][] channels;
+    private int[] channelCounts;
+    private int[] free;
+    private int freeCount;
+    private int next;
+
+    UserTable(CaseMapping caseMapping) {
+        this.ids = new NameTable(caseMapping);
+        this.nicks = new String[16];
+        this.channels = new int[16][];
+        this.channelCounts = new int[16];
+        this.free = new int[16];
+    }
+
+    /**
+     * @return the number of users known
+     */
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * @return the id of the user, or -1 if not known
+     */
+    int id(String nick) {
+        return ids.get(nick);
+    }
+
+    /**
+     * @return the id of the user named by a range of a string, or -1 if not known
+     */
+    int id(String s, int start, int end) {
+        return ids.get(s, start, end);
+    }
+
+    /**
+     * @return the id of the user named by a range of a string, adding the user if not known
+     */
+    int intern(String s, int start, int end) {
+        int id = ids.get(s, start, end);
+        if(id >= 0) {
+            return id;
+        }
+        id = freeCount > 0 ? free[--freeCount] : next++;
+        if(id == nicks.length) {
+            int capacity = nicks.length * 2;
+            nicks = Arrays.copyOf(nicks, capacity);
+            channels = Arrays.copyOf(channels, capacity);
+            channelCounts = Arrays.copyOf(channelCounts, capacity);
+        }
+        String nick = start == 0 && end == s.length() ? s : s.substring(start, end);
+        nicks[id] = nick;
+        channels[id] = NO_CHANNELS;
+        channelCounts[id] = 0;
+        ids.put(nick, id);
+        return id;
+    }
+
+    int intern(String nick) {
+        return intern(nick, 0, nick.length());
+    }
+
+    String nick(int id) {
+        return nicks[id];
+    }
+
+    /**
+     * Look nicknames up under another casemapping, as advertised by the server
+     */
+    void setCaseMapping(CaseMapping caseMapping) {
+        if(caseMapping == ids.getCaseMapping()) {
+            return;
+        }
+        ids = new NameTable(caseMapping);
+        for(int id = 0; id < next; id++) {
+            if(nicks[id] != null) {
+                ids.put(nicks[id], id);
+            }
+        }
+    }
+
+    void rename(int id, String nick) {
+        ids.remove(nicks[id]);
+        nicks[id] = nick;
+        ids.put(nick, id);
+    }
+
+    /**
+     * Record that a user is in a channel
+     *
+     * @return false if it already was
+     */
+    boolean addChannel(int id, int channel) {
+        int n = channelCounts[id];
+        int[] c = channels[id];
+        for(int i = 0; i < n; i++) {
+            if(c[i] == channel) {
+                return false;
+            }
+        }
+        if(n == c.length) {
+            c = channels[id] = Arrays.copyOf(c, Math.max(4, n * 2));
+        }
+        c[n] = channel;
+        channelCounts[id] = n + 1;
+        return true;
+    }
+
+    /**
+     * Record that a user has left a channel, forgetting the user if it was the last one
+     */
+    void removeChannel(int id, int channel) {
+        int n = channelCounts[id];
+        int[] c = channels[id];
+        for(int i = 0; i < n; i++) {
+            if(c[i] == channel) {
+                c[i] = c[n - 1];
+                channelCounts[id] = --n;
+                break;
+            }
+        }
+        if(n == 0) {
+            forget(id);
+        }
+    }
+
+    int channelCount(int id) {
+        return channelCounts[id];
+    }
+
+    /**
+     * @return the ids of the channels the user is in, valid up to {@link #channelCount(int)}
+     */
+    int[] channels(int id) {
+        return channels[id];
+    }
+
+    void clear() {
+        ids.clear();
+        Arrays.fill(nicks, null);
+        Arrays.fill(channels, null);
+        freeCount = 0;
+        next = 0;
+    }
+
+    /**
+     * Forget a user, such as one which has quit, whichever channels it was in
+     */
+    void remove(int id) {
+        forget(id);
+    }
+
+    private void forget(int id) {
+        ids.remove(nicks[id]);
+        nicks[id] = null;
+        channels[id] = null;
+        if(freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = id;
+    }
+}
@@ -0,0 +1,70 @@
+package dirc.ui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.Timer;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventListener;
+
+/**
+ * Collects events from any thread and adds them to an {@link IrcTableModel} in batches on the event dispatch
+ * thread. The first event after a drain starts a timer, and everything which arrives before it fires is added at
+ * once, so a burst such as a MOTD or a netsplit costs one trip through the EDT queue and one table update rather
+ * than one per line.
+ */
+public class BatchingEventListener implements IrcEventListener {
+    /**
+     * Roughly one frame at 60Hz
+     */
+    public static final int DEFAULT_DELAY_MILLIS = 16;
+
+    private final IrcTableModel model;
+    private final Queue<IrcEvent> pending;
+    private final AtomicBoolean scheduled;
+    private final Timer timer;
+
+    public BatchingEventListener(IrcTableModel model) {
+        this(model, DEFAULT_DELAY_MILLIS);
+    }
+
+    /**
+     * @param model       - model to add the events to
+     * @param delayMillis - longest time an event waits before it is added to the model
+     */
+    public BatchingEventListener(IrcTableModel model, int delayMillis) {
+        this.model = model;
+        this.pending = new ConcurrentLinkedQueue<IrcEvent>();
+        this.scheduled = new AtomicBoolean();
+        this.timer = new Timer(delayMillis, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                drain();
+            }
+        });
+        this.timer.setRepeats(false);
+    }
+
+    public void handleEvent(IrcEvent ev) {
+        pending.offer(ev);
+        if(scheduled.compareAndSet(false, true)) {
+            timer.restart();
+        }
+    }
+
+    private void drain() {
+        // Cleared before draining, so an event queued during the drain either is drained or schedules another
+        scheduled.set(false);
+        List<IrcEvent> batch = new ArrayList<IrcEvent>();
+        IrcEvent ev;
+        while((ev = pending.poll()) != null) {
+            batch.add(ev);
+        }
+        model.addEvents(batch);
+    }
+}
@@ -0,0 +1,48 @@
+package dirc.ui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Appends evicted rows to a text file, one row per line with the recipient and message separated by a tab. Writes
+ * are buffered until {@link #close()}, which the scrollback calls when the window is closed.
+ */
+public class FileScrollbackSpill implements ScrollbackSpill {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Writer out;
+
+    /**
+     * @param file - file to append to, created if it does not exist
+     * @throws IOException
+     */
+    public FileScrollbackSpill(File file) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8));
+    }
+
+    public void spill(String recipient, String message) {
+        try {
+            out.write(recipient == null ? "" : recipient);
+            out.write('\t');
+            out.write(message.replace('\n', ' '));
+            out.write('\n');
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public void close() {
+        try {
+            out.close();
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package dirc.ui;
 
-import java.util.EnumMap;
+import java.util.List;
 
 import dirc.core.message.TextStyle;
-import dirc.core.message.TextStyle.Color;
 import dirc.core.message.TextStyle.Style;
 
 public enum HtmlStyle {
@@ -11,54 +10,132 @@ public enum HtmlStyle {
     Italic(Style.Italic, "i"), 
     Underline(Style.Underlined, "u"),
     Color(Style.Color, "font") {
-        private EnumMap<Color, String> colorCodes;
-        {
-            colorCodes = new EnumMap<Color, String>(Color.class);
-            colorCodes.put(TextStyle.Color.White, "#ffffff");
-            colorCodes.put(TextStyle.Color.Black, "#000000");
-            colorCodes.put(TextStyle.Color.Blue, "#0000aa");
-            colorCodes.put(TextStyle.Color.Green, "#00aa00");
-            colorCodes.put(TextStyle.Color.Red, "#aa0000");
-            colorCodes.put(TextStyle.Color.Brown, "#aa5500");
-            colorCodes.put(TextStyle.Color.Purple, "#aa00aa");
-            colorCodes.put(TextStyle.Color.Orange, "#ff5555");
-            colorCodes.put(TextStyle.Color.Yellow, "#ffff55");
-            colorCodes.put(TextStyle.Color.LightGreen, "#55ff55");
-            colorCodes.put(TextStyle.Color.Teal, "#00aaaa");
-            colorCodes.put(TextStyle.Color.LightCyan, "#55ffff");
-            colorCodes.put(TextStyle.Color.LightBlue, "#5555ff");
-            colorCodes.put(TextStyle.Color.Pink, "#ff55ff");
-            colorCodes.put(TextStyle.Color.Grey, "#555555");
-            colorCodes.put(TextStyle.Color.LightGrey, "#aaaaaa");
-        }
-        
         @Override
-        public String attrs(TextStyle ts) {
-            String foreground = colorCodes.get(ts.getForeground());
-            String background = colorCodes.get(ts.getBackground());
-            return " style='" + 
-                   (foreground != null ? "color: " + foreground + ";" : "") +
-                   (background != null ? "background: " + background + ";" : "") +
-                   "' ";
+        public void open(StringBuilder sb, TextStyle ts) {
+            if(!ts.is(Style.Color)) {
+                return;
+            }
+            int foreground = ts.getForegroundColor();
+            int background = ts.getBackgroundColor();
+            sb.append("<font style='");
+            if(foreground != TextStyle.DEFAULT_COLOR) {
+                appendColorCode(sb.append("color: "), foreground).append(';');
+            }
+            if(background != TextStyle.DEFAULT_COLOR) {
+                appendColorCode(sb.append("background: "), background).append(';');
+            }
+            sb.append("' >");
         }
     };
     
+    private static final HtmlStyle[] STYLES = values();
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * RGB values of the extended mIRC palette, indexed by colour number. The 16 basic colours are followed by the
+     * 16 to 98 range of shades and greys.
+     */
+    private static class Palette {
+        private static final int[] RGB = {
+            0xffffff, 0x000000, 0x0000aa, 0x00aa00, 0xaa0000, 0xaa5500, 0xaa00aa, 0xff5555,
+            0xffff55, 0x55ff55, 0x00aaaa, 0x55ffff, 0x5555ff, 0xff55ff, 0x555555, 0xaaaaaa,
+            0x470000, 0x472100, 0x474700, 0x324700, 0x004700, 0x00472c, 0x004747, 0x002747,
+            0x000047, 0x2e0047, 0x470047, 0x47002a, 0x740000, 0x743a00, 0x747400, 0x517400,
+            0x007400, 0x007449, 0x007474, 0x004074, 0x000074, 0x4b0074, 0x740074, 0x740045,
+            0xb50000, 0xb56300, 0xb5b500, 0x7db500, 0x00b500, 0x00b571, 0x00b5b5, 0x0063b5,
+            0x0000b5, 0x7500b5, 0xb500b5, 0xb5006b, 0xff0000, 0xff8c00, 0xffff00, 0xb2ff00,
+            0x00ff00, 0x00ffa0, 0x00ffff, 0x008cff, 0x0000ff, 0xa500ff, 0xff00ff, 0xff0098,
+            0xff5959, 0xffb459, 0xffff71, 0xcfff60, 0x6fff6f, 0x65ffc9, 0x6dffff, 0x59b4ff,
+            0x5959ff, 0xc459ff, 0xff66ff, 0xff59bc, 0xff9c9c, 0xffd39c, 0xffff9c, 0xe2ff9c,
+            0x9cff9c, 0x9cffdb, 0x9cffff, 0x9cd3ff, 0x9c9cff, 0xdc9cff, 0xff9cff, 0xff94d3,
+            0x000000, 0x131313, 0x282828, 0x363636, 0x4d4d4d, 0x656565, 0x818181, 0x9f9f9f,
+            0xbcbcbc, 0xe2e2e2, 0xffffff
+        };
+        private static final String[] CODES = new String[RGB.length];
+        static {
+            for(int i = 0; i < RGB.length; i++) {
+                CODES[i] = appendHex(new StringBuilder(7), RGB[i]).toString();
+            }
+        }
+    }
+
+    /**
+     * @param code - a {@link TextStyle} colour code other than the default colour
+     *
+     * @return the RGB value of the colour
+     */
+    public static int rgb(int code) {
+        return code < TextStyle.PALETTE_SIZE ? Palette.RGB[code] : code & 0xffffff;
+    }
+
+    /**
+     * Append the RGB code of a colour, as #rrggbb, without creating a String for RGB colour codes
+     *
+     * @param code - a {@link TextStyle} colour code other than the default colour
+     */
+    private static StringBuilder appendColorCode(StringBuilder sb, int code) {
+        return code < TextStyle.PALETTE_SIZE ? sb.append(Palette.CODES[code]) : appendHex(sb, code);
+    }
+
+    private static StringBuilder appendHex(StringBuilder sb, int rgb) {
+        sb.append('#');
+        for(int shift = 20; shift >= 0; shift -= 4) {
+            sb.append(HEX[rgb >> shift & 0xf]);
+        }
+        return sb;
+    }
+
     private Style s;
-    private String tag;
+    private String open;
+    private String close;
     
     HtmlStyle(Style s, String tag) {
         this.s = s;
-        this.tag = tag;
+        this.open = "<" + tag + ">";
+        this.close = "</" + tag + ">";
     }
     
-    public String attrs(TextStyle ts) {
-        return "";
+    /**
+     * Append the opening tag, if the style run has this style
+     */
+    public void open(StringBuilder sb, TextStyle ts) {
+        if(ts.is(s)) {
+            sb.append(open);
+        }
     }
-    
-    public void insert(StringBuilder sb, int i, TextStyle ts) {
+
+    /**
+     * Append the closing tag, if the style run has this style
+     */
+    public void close(StringBuilder sb, TextStyle ts) {
         if(ts.is(s)) {
-            sb.insert(i, "<" + tag + attrs(ts) + ">");
-            sb.append("</" + tag + ">");
+            sb.append(close);
+        }
+    }
+
+    /**
+     * Render text as HTML in a single pass, wrapping each style run in the tags of its styles
+     *
+     * @param text   - the text, without formatting codes
+     * @param styles - the style runs, in order and not overlapping
+     */
+    public static String toHtml(String text, List<TextStyle> styles) {
+        StringBuilder sb = new StringBuilder(text.length() + 16 + styles.size() * 48);
+        sb.append("<html>");
+        int start = 0;
+        for (TextStyle ts : styles) {
+            sb.append(text, start, ts.getStart());
+            for(int i = STYLES.length - 1; i >= 0; i--) {
+                STYLES[i].open(sb, ts);
+            }
+            sb.append(text, ts.getStart(), ts.getEnd());
+            for(int i = 0; i < STYLES.length; i++) {
+                STYLES[i].close(sb, ts);
+            }
+            start = ts.getEnd();
         }
+        sb.append(text, start, text.length());
+        return sb.toString();
     }
-}
\ No newline at end of file
+}
@@ -85,9 +85,14 @@ public class IrcClient extends JFrame {
         table.setShowVerticalLines(true);
         s.getServerConsoleModel().addTableModelListener(new TableModelListener() {
             public void tableChanged(final TableModelEvent e) {
+                if(e.getType() != TableModelEvent.INSERT) {
+                    return;
+                }
+                // Rows arrive in batches, so scroll once to the last row of the batch. Deferred until the table
+                // itself has handled the insert.
                 SwingUtilities.invokeLater(new Runnable() {
                     public void run() {
-                        table.scrollRectToVisible(table.getCellRect(e.getFirstRow(), 0, true));
+                        table.scrollRectToVisible(table.getCellRect(e.getLastRow(), 0, true));
                     }
                 });
             }
@@ -100,6 +105,7 @@ public class IrcClient extends JFrame {
         DefaultTableCellRenderer renderer = new DefaultTableCellRenderer();
         renderer.setHorizontalAlignment(SwingConstants.TRAILING);
         column.setCellRenderer(renderer);
+        table.getColumnModel().getColumn(1).setCellRenderer(new StyledTextRenderer());
 
         container.add(new JScrollPane(table), s.getHostname());
         containerLayout.last(container);
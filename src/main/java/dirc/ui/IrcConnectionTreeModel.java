@@ -1,6 +1,10 @@
 package dirc.ui;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -11,17 +15,27 @@ import javax.swing.tree.TreePath;
 
 import dirc.core.config.IrcNetwork;
 import dirc.core.config.IrcServerInfo;
+import dirc.core.net.ConnectLatencyHistory;
+import dirc.core.net.ConnectionRace;
 import dirc.core.net.IrcConnection;
-import dirc.core.net.ThreadedSocketIrcConnection;
+import dirc.core.net.IrcConnectionFactory;
 import dirc.core.server.IrcServer;
+import dirc.core.server.ReconnectPolicy;
 
 public class IrcConnectionTreeModel implements TreeModel {
+    // Connections to the same network as the same nickname which may keep their scrollback at once
+    private static final int MAX_SCROLLBACK_DIRECTORIES = 100;
+
     private DefaultTreeModel treeModel;
     private DefaultMutableTreeNode root;
+    private ConnectLatencyHistory latencyHistory;
+    private File scrollbackDirectory;
+    private int scrollbackCapacity;
 
     public IrcConnectionTreeModel() {
         root = new DefaultMutableTreeNode();
         treeModel = new DefaultTreeModel(root);
+        latencyHistory = new ConnectLatencyHistory();
     }
     
     public Object getRoot() {
@@ -56,22 +70,109 @@ public class IrcConnectionTreeModel implements TreeModel {
         treeModel.removeTreeModelListener(l);
     }
     
+    public ConnectLatencyHistory getLatencyHistory() {
+        return latencyHistory;
+    }
+
+    /**
+     * Keep the scrollback of the servers connected after this call on disk, up to
+     * {@link MappedScrollback#DEFAULT_CAPACITY} rows each
+     *
+     * @see #setScrollbackDirectory(File, int)
+     */
+    public void setScrollbackDirectory(File scrollbackDirectory) {
+        setScrollbackDirectory(scrollbackDirectory, MappedScrollback.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Keep the scrollback of the servers connected after this call on disk, so that it survives restarts. Each
+     * connection has a directory named after its network and nickname, and a connection which finds its directory
+     * in use by another takes the next free one. By default the scrollback is kept on the heap and limited to
+     * {@link IrcTableModel#DEFAULT_SCROLLBACK} rows.
+     *
+     * @param scrollbackDirectory - directory for the scrollback of every connection, or null to keep it on the heap
+     * @param capacity            - rows kept for each connection, after which the oldest are evicted
+     */
+    public void setScrollbackDirectory(File scrollbackDirectory, int capacity) {
+        this.scrollbackDirectory = scrollbackDirectory;
+        this.scrollbackCapacity = capacity;
+    }
+
     public TreeNode[] getPathToRoot(TreeNode node) {
         return treeModel.getPathToRoot(node);
     }
 
+    /**
+     * Connect to whichever server of the network answers first, preferring those which have connected quickest
+     * before
+     */
     public IrcServerNode connect(final IrcNetwork network) throws IOException {
-        IrcServerInfo sc = network.getServer();
-        final IrcConnection c = new ThreadedSocketIrcConnection(sc);
+        Scrollback scrollback = openScrollback(network);
+        ConnectionRace.Result r;
+        try {
+            r = new ConnectionRace(network.getServers(), latencyHistory, network.getAttemptDelayMillis(),
+                    network.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS).run();
+        }
+        catch (IOException ex) {
+            scrollback.close();
+            throw ex;
+        }
+        IrcServerInfo sc = r.getServer();
+        final IrcConnection c = IrcConnectionFactory.create(sc);
         IrcServer s = new IrcServer(c);
+        s.setReconnectPolicy(ReconnectPolicy.DEFAULT);
+        // Reconnect to whichever server of the network answers first, so that a server staying down is failed over
+        s.setConnector(new Callable<SocketChannel>() {
+            public SocketChannel call() throws IOException {
+                return new ConnectionRace(network.getServers(), latencyHistory, network.getAttemptDelayMillis(),
+                        network.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS).run().getChannel();
+            }
+        });
         
-        final IrcServerNode serverNode = new IrcServerNode(s, sc.getHostname(), network.getNickname());
+        final IrcServerNode serverNode = new IrcServerNode(s, sc.getHostname(), network.getNickname(), scrollback);
         treeModel.insertNodeInto(serverNode, root, root.getChildCount());
         
-        s.connect();
+        s.connect(r.getChannel());
         s.nickname(network.getNickname());
         s.username(network.getUsername(), network.getRealName());
         
         return serverNode;
     }
-}
\ No newline at end of file
+
+    /**
+     * Open the scrollback of a connection to a network. The network is known by its first server, as the server
+     * connected to may differ from one session to the next.
+     */
+    Scrollback openScrollback(IrcNetwork network) throws IOException {
+        if(scrollbackDirectory == null) {
+            return new RingScrollback(IrcTableModel.DEFAULT_SCROLLBACK, null);
+        }
+        String name = fileName(network.getServers().get(0).getHostname() + "-" + network.getNickname());
+        for(int i = 1; ; i++) {
+            File directory = new File(scrollbackDirectory, i == 1 ? name : name + "-" + i);
+            try {
+                return new MappedScrollback(directory, scrollbackCapacity);
+            }
+            catch (IOException ex) {
+                // Only a directory in use by another connection is worth passing over
+                if(!directory.isDirectory() || i == MAX_SCROLLBACK_DIRECTORIES) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name with any character which is not safe in a file name replaced
+     */
+    static String fileName(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean safe = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '.' ||
+                    c == '-' || c == '_';
+            sb.append(safe ? c : '_');
+        }
+        return sb.toString();
+    }
+}
@@ -15,21 +15,33 @@ public class IrcServerNode extends DefaultMutableTreeNode {
     private String hostname;
     private IrcTableModel serverConsoleModel;
 
-    public IrcServerNode(final IrcServer server, final String hostname, final String nickname) {
+    public IrcServerNode(IrcServer server, String hostname, String nickname) {
+        this(server, hostname, nickname, new RingScrollback(IrcTableModel.DEFAULT_SCROLLBACK, null));
+    }
+
+    /**
+     * @param scrollback - store for the rows of the server console, closed when the server quits
+     */
+    public IrcServerNode(final IrcServer server, final String hostname, final String nickname,
+            Scrollback scrollback) {
         this.server = server;
         this.hostname = hostname;
-        this.serverConsoleModel = new IrcTableModel(nickname);
+        this.serverConsoleModel = new IrcTableModel(nickname, scrollback);
         setUserObject(hostname);
         
+        final BatchingEventListener console = new BatchingEventListener(serverConsoleModel);
         server.addEventListener(new IrcEventListener() {
             public void handleEvent(final IrcEvent ev) {
-                SwingUtilities.invokeLater(new Runnable() {
-                    public void run() {
-                        serverConsoleModel.handleEvent(ev);
-                    }
-                });
-                if(ev instanceof QuitEvent && nickname.equals(((QuitEvent) ev).getNickname())) {
+                console.handleEvent(ev);
+                if(ev instanceof QuitEvent && server.getSupport().getCaseMapping()
+                        .equalsIgnoreCase(nickname, ((QuitEvent) ev).getNickname())) {
                     server.close();
+                    // After the rows already queued by the console, which it adds on the event dispatch thread
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            serverConsoleModel.close();
+                        }
+                    });
                 }
             }
         });
@@ -1,11 +1,14 @@
 package dirc.ui;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 
+import dirc.core.event.BatchEvent;
 import dirc.core.event.IrcEvent;
 import dirc.core.event.IrcEventListener;
 import dirc.core.event.MotD;
@@ -17,60 +20,192 @@ import dirc.core.message.TextStyle;
 public class IrcTableModel extends AbstractTableModel implements IrcEventListener {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Rows kept by a window unless configured otherwise
+     */
+    public static final int DEFAULT_SCROLLBACK = 10000;
+
+    /**
+     * Rendered rows kept, enough for a few screens of the largest table
+     */
+    private static final int HTML_CACHE_SIZE = 512;
+
     private String nickname;
-    private List<String> recipients;
-    private List<String> messages;
+    private Scrollback scrollback;
+    private long evicted;
+    private Map<Long, String> htmlCache;
+    private boolean closed;
     
     public IrcTableModel(String nickname) {
+        this(nickname, DEFAULT_SCROLLBACK, null);
+    }
+
+    /**
+     * @param nickname   - nickname of the user, shown as "-" in the recipient column
+     * @param scrollback - maximum number of rows kept, after which the oldest rows are removed
+     * @param spill      - receives removed rows, or null to discard them
+     */
+    public IrcTableModel(String nickname, int scrollback, ScrollbackSpill spill) {
+        this(nickname, new RingScrollback(scrollback, spill));
+    }
+
+    /**
+     * @param nickname   - nickname of the user, shown as "-" in the recipient column
+     * @param scrollback - store for the rows, which may already hold rows from earlier sessions
+     */
+    public IrcTableModel(String nickname, Scrollback scrollback) {
         this.nickname = nickname;
-        recipients = new ArrayList<String>();
-        messages = new ArrayList<String>();
+        this.scrollback = scrollback;
+        this.htmlCache = new LinkedHashMap<Long, String>(HTML_CACHE_SIZE * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > HTML_CACHE_SIZE;
+            }
+        };
     }
     
     public int getRowCount() {
-        return messages.size();
+        return scrollback.size();
     }
 
     public int getColumnCount() {
         return 2;
     }
 
+    /**
+     * The message column is a handle on the row, which reads it only when turned into text, so that renderers which
+     * read the row themselves, such as {@link StyledTextRenderer}, do not pay for decoding and rendering it as HTML
+     */
     public Object getValueAt(int r, int c) {
         switch(c) {
-            case 0: return recipients.get(r);
-            case 1: return messages.get(r);
+            case 0: return scrollback.getRecipient(r);
+            case 1: return new Message(evicted + r);
             default: return null;
         }
     }
 
-    private String convertToHtml(String text, List<TextStyle> textStyles) {
-        int start = 0;
-        StringBuilder sb = new StringBuilder("<html>");
-        for (TextStyle s : textStyles) {
-            sb.append(text.substring(start, s.getStart()));
-            int i = sb.length();
-            sb.append(text.substring(s.getStart(), s.getEnd()));
-            for (HtmlStyle hs : HtmlStyle.values()) {
-                hs.insert(sb, i, s);
-            }
-            start = s.getEnd();
+    /**
+     * @return the message text of a row, without formatting
+     */
+    public String getText(int r) {
+        return scrollback.getText(r);
+    }
+
+    /**
+     * @return the formatting of a row's message text, or null if it is shown as plain text
+     */
+    public List<TextStyle> getStyles(int r) {
+        return scrollback.getStyles(r);
+    }
+
+    /**
+     * @return the message of a row as HTML for label based renderers, or as plain text if it has no formatting
+     */
+    public String getHtml(int r) {
+        List<TextStyle> styles = scrollback.getStyles(r);
+        if(styles == null) {
+            return scrollback.getText(r);
+        }
+        // Keyed by the number of rows ever added before this one, which does not change as rows are evicted
+        Long key = evicted + r;
+        String html = htmlCache.get(key);
+        if(html == null) {
+            html = HtmlStyle.toHtml(scrollback.getText(r), styles);
+            htmlCache.put(key, html);
         }
-        sb.append(text.substring(start, text.length()));
-        return sb.toString();
+        return html;
     }
 
+    /**
+     * Add an event as a row, switching to the event dispatch thread if necessary. Use a
+     * {@link BatchingEventListener} for events arriving in bulk.
+     */
     public void handleEvent(final IrcEvent ev) {
+        if(SwingUtilities.isEventDispatchThread()) {
+            addEvents(Collections.singletonList(ev));
+            return;
+        }
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                int r = messages.size();
-                String text = ev.getMessage();
-                if(ev instanceof MotD || ev instanceof MotDStart || ev instanceof MotDEnd || ev instanceof NoticeEvent) {
-                    text = convertToHtml(text, ev.getTextStyles());
-                }
-                recipients.add(nickname.equals(ev.getRecipient()) ? "-" : ev.getRecipient());
-                messages.add(text);
-                fireTableRowsInserted(r, r);
+                addEvents(Collections.singletonList(ev));
             }
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Add a row for each event, notifying listeners of all of them at once. A {@link BatchEvent}, such as a replay
+     * of chat history, adds a row for each event in it. If that takes the scrollback past its limit, the oldest rows
+     * are removed first, and listeners notified of that too. Every removed row reaches the spill, including rows of a
+     * batch larger than the scrollback which are never shown. Must be called on the event dispatch thread.
+     */
+    public void addEvents(List<IrcEvent> events) {
+        events = BatchEvent.expand(events);
+        if(closed || events.isEmpty()) {
+            return;
+        }
+        int excess = scrollback.size() + events.size() - scrollback.capacity();
+        if(excess > 0) {
+            int deleted = Math.min(excess, scrollback.size());
+            if(deleted > 0) {
+                scrollback.evict(deleted);
+                evicted += deleted;
+                fireTableRowsDeleted(0, deleted - 1);
+            }
+            // Rows which would be evicted by the rest of the batch are never shown, but still pass through the
+            // scrollback a capacity at a time so that they are spilled in order
+            int passing = excess - deleted;
+            for(int i = 0; i < passing; ) {
+                int n = Math.min(passing - i, scrollback.capacity());
+                for (IrcEvent ev : events.subList(i, i + n)) {
+                    add(ev);
+                }
+                scrollback.evict(n);
+                evicted += n;
+                i += n;
+            }
+            events = events.subList(passing, events.size());
+        }
+
+        int first = scrollback.size();
+        for (IrcEvent ev : events) {
+            add(ev);
+        }
+        fireTableRowsInserted(first, scrollback.size() - 1);
+    }
+
+    /**
+     * Close the scrollback once the window is closed. Events arriving later are ignored. Must be called on the event
+     * dispatch thread.
+     */
+    public void close() {
+        closed = true;
+        scrollback.close();
+    }
+
+    /**
+     * A row of the message column, by the number of rows ever added before it so that it stays the same row as
+     * older rows are evicted
+     */
+    private class Message {
+        private final long key;
+
+        private Message(long key) {
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            long r = key - evicted;
+            return r < 0 || r >= scrollback.size() ? "" : getHtml((int) r);
+        }
+    }
+
+    private void add(IrcEvent ev) {
+        boolean styled = ev instanceof MotD || ev instanceof MotDStart || ev instanceof MotDEnd ||
+                ev instanceof NoticeEvent;
+        scrollback.add(nickname.equals(ev.getRecipient()) ? "-" : ev.getRecipient(), ev.getMessage(),
+                styled ? ev.getTextStyles() : null);
+    }
+}
@@ -0,0 +1,347 @@
+package dirc.ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import dirc.core.message.TextStyle;
+import dirc.core.message.TextStyleList;
+
+/**
+ * {@link Scrollback} kept on disk, so that a window can hold its whole history in constant heap. Rows are appended
+ * to segment files, and the offset of each row is written to an index file which starts with the number of rows
+ * appended, the first row kept and the capacity, so opening a scrollback of any length only reads those. Both are
+ * memory-mapped, and a row is only decoded when the table asks for it, which in practice means the rows on screen.
+ *
+ * A row is stored as the recipient and text in UTF-8, each preceded by its length, followed by the number of style
+ * runs (-1 for a plain row) and the start, end and packed style of each run. A row never
+ * spans two segments.
+ *
+ * The index is a ring of one entry per row of capacity, so it stops growing once the scrollback is full. Evicting
+ * rows moves the first row kept, and deletes the segments holding only evicted rows. Writes reach the disk when the
+ * operating system flushes the mapped pages, or on {@link #close()}.
+ *
+ * The directory is locked while the scrollback is open, so that two windows never write to the same files.
+ */
+public class MappedScrollback implements Scrollback {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Rows kept unless configured otherwise, which take 8MB of index */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+    private static final int DEFAULT_INDEX_CHUNK_SIZE = 8 << 20;
+
+    // Index header holding the number of rows appended, the offset of the next row, the first row kept and the
+    // capacity
+    private static final int COUNT = 0;
+    private static final int NEXT_OFFSET = 8;
+    private static final int FIRST = 16;
+    private static final int CAPACITY = 24;
+    private static final int HEADER_SIZE = 32;
+
+    private final File directory;
+    private final int capacity;
+    private final int segmentSize;
+    private final int indexChunkSize;
+    private final List<MappedByteBuffer> segments;
+    private final List<MappedByteBuffer> indexChunks;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private ByteBuffer scratch;
+    private long first;
+    private int size;
+    private long nextOffset;
+    private int firstSegment;
+
+    /**
+     * Open the scrollback in a directory, creating it if it does not exist
+     *
+     * @param directory - directory holding the index and segment files of this scrollback only
+     * @throws IOException
+     */
+    public MappedScrollback(File directory) throws IOException {
+        this(directory, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param directory - directory holding the index and segment files of this scrollback only
+     * @param capacity  - maximum number of rows kept, after which the oldest are evicted. A scrollback opened again
+     *                  keeps the capacity it was created with.
+     * @throws IOException if the directory cannot be created, or is locked by another open scrollback
+     */
+    public MappedScrollback(File directory, int capacity) throws IOException {
+        this(directory, capacity, DEFAULT_SEGMENT_SIZE, DEFAULT_INDEX_CHUNK_SIZE);
+    }
+
+    MappedScrollback(File directory, int segmentSize, int indexChunkSize) throws IOException {
+        this(directory, DEFAULT_CAPACITY, segmentSize, indexChunkSize);
+    }
+
+    /**
+     * @param segmentSize    - size of each segment file, which limits the size of a row
+     * @param indexChunkSize - size of each mapping of the index file, a multiple of 8
+     */
+    MappedScrollback(File directory, int capacity, int segmentSize, int indexChunkSize) throws IOException {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Scrollback capacity must be positive: " + capacity);
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create scrollback directory " + directory);
+        }
+        this.lockFile = new RandomAccessFile(new File(directory, "lock"), "rw");
+        FileLock l;
+        try {
+            l = lockFile.getChannel().tryLock();
+        }
+        catch (OverlappingFileLockException ex) {
+            // Held by another scrollback in this process
+            l = null;
+        }
+        if(l == null) {
+            lockFile.close();
+            throw new IOException("Scrollback directory " + directory + " is in use");
+        }
+        this.lock = l;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexChunkSize = indexChunkSize;
+        this.segments = new ArrayList<MappedByteBuffer>();
+        this.indexChunks = new ArrayList<MappedByteBuffer>();
+        this.scratch = ByteBuffer.allocate(1024);
+
+        MappedByteBuffer header = indexChunk(0);
+        if(header.getLong(CAPACITY) == 0) {
+            header.putLong(CAPACITY, capacity);
+        }
+        this.capacity = (int) header.getLong(CAPACITY);
+        this.first = header.getLong(FIRST);
+        this.size = (int) (header.getLong(COUNT) - first);
+        this.nextOffset = header.getLong(NEXT_OFFSET);
+        this.firstSegment = (int) (firstOffset() / segmentSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public String getRecipient(int r) {
+        ByteBuffer row = row(r);
+        return string(row);
+    }
+
+    public String getText(int r) {
+        ByteBuffer row = row(r);
+        skipString(row);
+        return string(row);
+    }
+
+    public List<TextStyle> getStyles(int r) {
+        ByteBuffer row = row(r);
+        skipString(row);
+        skipString(row);
+        int n = row.getInt();
+        if(n < 0) {
+            return null;
+        }
+        TextStyleList styles = new TextStyleList();
+        for(int i = 0; i < n; i++) {
+            styles.add(row.getInt(), row.getInt(), row.getLong());
+        }
+        return styles;
+    }
+
+    public void add(String recipient, String text, List<TextStyle> styles) {
+        if(size == capacity) {
+            throw new IllegalStateException("Scrollback is full");
+        }
+        scratch.clear();
+        putString(recipient);
+        putString(text);
+        if(styles == null) {
+            ensureScratch(4);
+            scratch.putInt(-1);
+        }
+        else {
+            ensureScratch(4 + styles.size() * 16);
+            scratch.putInt(styles.size());
+            for (TextStyle ts : styles) {
+                scratch.putInt(ts.getStart());
+                scratch.putInt(ts.getEnd());
+                scratch.putLong(ts.getPackedStyle());
+            }
+        }
+        scratch.flip();
+        if(scratch.remaining() > segmentSize) {
+            throw new IllegalArgumentException("Row of " + scratch.remaining() + " bytes does not fit a segment");
+        }
+
+        long offset = nextOffset;
+        if(offset % segmentSize + scratch.remaining() > segmentSize) {
+            offset = (offset / segmentSize + 1) * segmentSize;
+        }
+        ByteBuffer segment = segment((int) (offset / segmentSize)).duplicate();
+        segment.position((int) (offset % segmentSize));
+        segment.put(scratch);
+
+        long entry = entry(first + size);
+        indexChunk((int) (entry / indexChunkSize)).putLong((int) (entry % indexChunkSize), offset);
+        nextOffset = offset + segment.position() - offset % segmentSize;
+        size++;
+        MappedByteBuffer header = indexChunk(0);
+        header.putLong(NEXT_OFFSET, nextOffset);
+        header.putLong(COUNT, first + size);
+    }
+
+    public void evict(int n) {
+        n = Math.min(n, size);
+        if(n <= 0) {
+            return;
+        }
+        first += n;
+        size -= n;
+        indexChunk(0).putLong(FIRST, first);
+        int segment = (int) (firstOffset() / segmentSize);
+        for(; firstSegment < segment; firstSegment++) {
+            if(firstSegment < segments.size()) {
+                segments.set(firstSegment, null);
+            }
+            // A file still mapped on some platforms cannot be deleted until its mapping is collected, and is then
+            // only left behind
+            segmentFile(firstSegment).delete();
+        }
+    }
+
+    /**
+     * Write the mapped pages to disk, release the mappings and unlock the directory
+     */
+    public void close() {
+        for (MappedByteBuffer b : segments) {
+            if(b != null) {
+                b.force();
+            }
+        }
+        for (MappedByteBuffer b : indexChunks) {
+            if(b != null) {
+                b.force();
+            }
+        }
+        segments.clear();
+        indexChunks.clear();
+        try {
+            lock.release();
+            lockFile.close();
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private ByteBuffer row(int r) {
+        if(r < 0 || r >= size) {
+            throw new IndexOutOfBoundsException("Row " + r + " of " + size);
+        }
+        long offset = offset(first + r);
+        ByteBuffer row = segment((int) (offset / segmentSize)).duplicate();
+        row.position((int) (offset % segmentSize));
+        return row;
+    }
+
+    /**
+     * @return the position in the index of the entry of a row, counted from the first row ever appended
+     */
+    private long entry(long row) {
+        return HEADER_SIZE + 8L * (row % capacity);
+    }
+
+    private long offset(long row) {
+        long entry = entry(row);
+        return indexChunk((int) (entry / indexChunkSize)).getLong((int) (entry % indexChunkSize));
+    }
+
+    /**
+     * @return the offset of the first row kept, or of the next row if none is
+     */
+    private long firstOffset() {
+        return size > 0 ? offset(first) : nextOffset;
+    }
+
+    private static String string(ByteBuffer row) {
+        byte[] b = new byte[row.getInt()];
+        row.get(b);
+        return new String(b, UTF8);
+    }
+
+    private static void skipString(ByteBuffer row) {
+        int n = row.getInt();
+        row.position(row.position() + n);
+    }
+
+    private void putString(String s) {
+        byte[] b = s == null ? new byte[0] : s.getBytes(UTF8);
+        ensureScratch(4 + b.length);
+        scratch.putInt(b.length);
+        scratch.put(b);
+    }
+
+    private void ensureScratch(int n) {
+        if(scratch.remaining() < n) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + n));
+            scratch.flip();
+            grown.put(scratch);
+            scratch = grown;
+        }
+    }
+
+    private MappedByteBuffer segment(int i) {
+        return map(segments, i, segmentFile(i), 0, segmentSize);
+    }
+
+    private File segmentFile(int i) {
+        return new File(directory, String.format("segment-%05d", i));
+    }
+
+    private MappedByteBuffer indexChunk(int i) {
+        return map(indexChunks, i, new File(directory, "index"), (long) i * indexChunkSize, indexChunkSize);
+    }
+
+    /**
+     * Map a region of a file, extending the file if necessary. Mappings stay valid after the file is closed, so
+     * they are kept for the life of the scrollback.
+     */
+    private static MappedByteBuffer map(List<MappedByteBuffer> mapped, int i, File file, long position,
+            int regionSize) {
+        while(mapped.size() <= i) {
+            mapped.add(null);
+        }
+        MappedByteBuffer b = mapped.get(i);
+        if(b == null) {
+            try {
+                RandomAccessFile f = new RandomAccessFile(file, "rw");
+                try {
+                    b = f.getChannel().map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+                }
+                finally {
+                    f.close();
+                }
+            }
+            catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            mapped.set(i, b);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,91 @@
+package dirc.ui;
+
+import java.util.List;
+
+import dirc.core.message.TextStyle;
+
+/**
+ * {@link Scrollback} held on the heap in a fixed capacity ring buffer. Once full, adding a row evicts the oldest,
+ * which is handed to the {@link ScrollbackSpill} if there is one, so the memory used by a window is bounded by its
+ * capacity no matter how long it stays open.
+ */
+public class RingScrollback implements Scrollback {
+    private final String[] recipients;
+    private final String[] texts;
+    private final Object[] styles;
+    private final ScrollbackSpill spill;
+    private int head;
+    private int size;
+
+    /**
+     * @param capacity - maximum number of rows kept
+     * @param spill    - receives evicted rows, or null to discard them
+     */
+    public RingScrollback(int capacity, ScrollbackSpill spill) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Scrollback capacity must be positive: " + capacity);
+        }
+        this.recipients = new String[capacity];
+        this.texts = new String[capacity];
+        this.styles = new Object[capacity];
+        this.spill = spill;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return texts.length;
+    }
+
+    public String getRecipient(int r) {
+        return recipients[index(r)];
+    }
+
+    public String getText(int r) {
+        return texts[index(r)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<TextStyle> getStyles(int r) {
+        return (List<TextStyle>) styles[index(r)];
+    }
+
+    public void add(String recipient, String text, List<TextStyle> styles) {
+        if(size == texts.length) {
+            throw new IllegalStateException("Scrollback is full");
+        }
+        int i = (head + size) % texts.length;
+        this.recipients[i] = recipient;
+        this.texts[i] = text;
+        this.styles[i] = styles;
+        size++;
+    }
+
+    public void evict(int n) {
+        for(int k = 0; k < n && size > 0; k++) {
+            if(spill != null) {
+                spill.spill(recipients[head], texts[head]);
+            }
+            recipients[head] = null;
+            texts[head] = null;
+            styles[head] = null;
+            head = (head + 1) % texts.length;
+            size--;
+        }
+    }
+
+    public void close() {
+        if(spill != null) {
+            spill.close();
+        }
+    }
+
+    private int index(int r) {
+        if(r < 0 || r >= size) {
+            throw new IndexOutOfBoundsException("Row " + r + " of " + size);
+        }
+        return (head + r) % texts.length;
+    }
+}
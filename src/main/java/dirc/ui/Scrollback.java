@@ -0,0 +1,50 @@
+package dirc.ui;
+
+import java.util.List;
+
+import dirc.core.message.TextStyle;
+
+/**
+ * Rows of a window, each a recipient and a message with its formatting. Rows are only ever appended, or evicted
+ * from the start once the scrollback reaches its capacity.
+ *
+ * Implementations are not thread safe; a window's scrollback is only used on the event dispatch thread.
+ */
+public interface Scrollback {
+    int size();
+
+    /**
+     * @return the maximum number of rows kept
+     */
+    int capacity();
+
+    String getRecipient(int r);
+
+    String getText(int r);
+
+    /**
+     * @return the formatting of the text, or null if the row is shown as plain text
+     */
+    List<TextStyle> getStyles(int r);
+
+    /**
+     * Append a row. The scrollback must not be full.
+     *
+     * @param recipient - the recipient column
+     * @param text      - the message text, without formatting codes
+     * @param styles    - the formatting of the text, or null to show it as plain text
+     */
+    void add(String recipient, String text, List<TextStyle> styles);
+
+    /**
+     * Evict the oldest rows
+     *
+     * @param n - number of rows to evict
+     */
+    void evict(int n);
+
+    /**
+     * Release whatever the scrollback holds outside the heap, once its window is closed
+     */
+    void close();
+}
@@ -0,0 +1,13 @@
+package dirc.ui;
+
+/**
+ * Receives rows as they are evicted from a {@link RingScrollback}
+ */
+public interface ScrollbackSpill {
+    void spill(String recipient, String message);
+
+    /**
+     * Write out whatever is still buffered and release the spill, once its window is closed
+     */
+    void close();
+}
@@ -0,0 +1,206 @@
+package dirc.ui;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.JComponent;
+import javax.swing.JTable;
+import javax.swing.border.Border;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.TableCellRenderer;
+
+import dirc.core.message.TextStyle;
+import dirc.core.message.TextStyle.Style;
+
+/**
+ * Renders the message column of an {@link IrcTableModel} by painting the plain text of each row directly, run by
+ * run, in the font and colours of its {@link TextStyle}s. Unlike an HTML label this builds no document per cell,
+ * and the fonts and colours are created once and shared by every cell painted.
+ *
+ * Rows of other models are painted as plain text. Like other renderers, one instance paints every cell on the
+ * event dispatch thread.
+ */
+public class StyledTextRenderer extends JComponent implements TableCellRenderer {
+    private static final long serialVersionUID = 1L;
+
+    private static final Border BORDER = new EmptyBorder(1, 2, 1, 2);
+    private static final Color[] PALETTE = new Color[TextStyle.PALETTE_SIZE];
+    static {
+        for(int i = 0; i < PALETTE.length; i++) {
+            PALETTE[i] = new Color(HtmlStyle.rgb(i));
+        }
+    }
+    // Colours of RGB colour codes, by the low bits of the RGB value
+    private static final int RGB_CACHE_SIZE = 64;
+
+    private Font baseFont;
+    private final Font[] fonts;
+    private String text;
+    private List<TextStyle> styles;
+    private char[] chars;
+    private final Color[] rgbColors;
+
+    public StyledTextRenderer() {
+        this.rgbColors = new Color[RGB_CACHE_SIZE];
+        this.fonts = new Font[4];
+        this.text = "";
+        this.styles = Collections.emptyList();
+        this.chars = new char[256];
+        setOpaque(true);
+        setBorder(BORDER);
+    }
+
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+            boolean hasFocus, int row, int column) {
+        if(table.getModel() instanceof IrcTableModel) {
+            IrcTableModel model = (IrcTableModel) table.getModel();
+            int r = table.convertRowIndexToModel(row);
+            text = model.getText(r);
+            styles = model.getStyles(r);
+        }
+        else {
+            text = value == null ? "" : value.toString();
+            styles = null;
+        }
+        if(text == null) {
+            text = "";
+        }
+        if(styles == null) {
+            styles = Collections.emptyList();
+        }
+        setFont(table.getFont());
+        setForeground(isSelected ? table.getSelectionForeground() : table.getForeground());
+        setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+        return this;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if(isOpaque()) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+        int length = text.length();
+        if(chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        text.getChars(0, length, chars, 0);
+
+        Insets insets = getInsets();
+        FontMetrics plain = g.getFontMetrics(font(null));
+        int baseline = insets.top + (getHeight() - insets.top - insets.bottom - plain.getHeight()) / 2 +
+                plain.getAscent();
+        int x = insets.left;
+        int clip = getWidth() - insets.right;
+        int start = 0;
+        for (TextStyle ts : styles) {
+            if(x >= clip) {
+                return;
+            }
+            x = paintRun(g, null, start, Math.min(ts.getStart(), length), x, baseline);
+            x = paintRun(g, ts, Math.min(ts.getStart(), length), Math.min(ts.getEnd(), length), x, baseline);
+            start = Math.min(ts.getEnd(), length);
+        }
+        if(x < clip) {
+            paintRun(g, null, start, length, x, baseline);
+        }
+    }
+
+    /**
+     * Paint the characters of one style run
+     *
+     * @return the x position following the run
+     */
+    private int paintRun(Graphics g, TextStyle ts, int start, int end, int x, int baseline) {
+        if(start >= end) {
+            return x;
+        }
+        Font font = font(ts);
+        FontMetrics fm = g.getFontMetrics(font);
+        int width = fm.charsWidth(chars, start, end - start);
+
+        Color foreground = getForeground();
+        if(ts != null && ts.is(Style.Color)) {
+            if(ts.getBackgroundColor() != TextStyle.DEFAULT_COLOR) {
+                g.setColor(color(ts.getBackgroundColor()));
+                g.fillRect(x, baseline - fm.getAscent(), width, fm.getHeight());
+            }
+            if(ts.getForegroundColor() != TextStyle.DEFAULT_COLOR) {
+                foreground = color(ts.getForegroundColor());
+            }
+        }
+        g.setColor(foreground);
+        g.setFont(font);
+        g.drawChars(chars, start, end - start, x, baseline);
+        if(ts != null && ts.is(Style.Underlined)) {
+            g.drawLine(x, baseline + 1, x + width - 1, baseline + 1);
+        }
+        return x + width;
+    }
+
+    /**
+     * The colour of a colour code, from the palette or, for RGB colour codes, from a small cache
+     */
+    private Color color(int code) {
+        if(code < PALETTE.length) {
+            return PALETTE[code];
+        }
+        int rgb = code & 0xffffff;
+        int slot = (rgb ^ rgb >>> 12) & (RGB_CACHE_SIZE - 1);
+        Color c = rgbColors[slot];
+        if(c == null || (c.getRGB() & 0xffffff) != rgb) {
+            c = rgbColors[slot] = new Color(rgb);
+        }
+        return c;
+    }
+
+    /**
+     * The font of a style run, derived from the table's font the first time each combination of bold and italic
+     * is needed
+     */
+    private Font font(TextStyle ts) {
+        Font base = getFont();
+        if(base != baseFont) {
+            baseFont = base;
+            fonts[0] = fonts[1] = fonts[2] = fonts[3] = null;
+        }
+        int style = Font.PLAIN;
+        if(ts != null && ts.is(Style.Bold)) {
+            style |= Font.BOLD;
+        }
+        if(ts != null && ts.is(Style.Italic)) {
+            style |= Font.ITALIC;
+        }
+        if(fonts[style] == null) {
+            fonts[style] = base.deriveFont(base.getStyle() | style);
+        }
+        return fonts[style];
+    }
+
+    // Renderers are painted on demand, so skip the repaint and revalidate work done by ordinary components
+    @Override
+    public void invalidate() {
+    }
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public void revalidate() {
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+    }
+
+    @Override
+    protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+    }
+}
@@ -0,0 +1,163 @@
+package dirc.core.event;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class IrcEventBusTest {
+    private final IrcEventBus bus = new IrcEventBus();
+
+    /**
+     * Listener which waits for the test to let it go before handling events
+     */
+    private static class GatedListener implements IrcEventListener {
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final CountDownLatch done;
+        private final List<String> messages = new CopyOnWriteArrayList<String>();
+
+        private GatedListener(int expected) {
+            this.done = new CountDownLatch(expected);
+        }
+
+        public void handleEvent(IrcEvent ev) {
+            try {
+                gate.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(ev.getRecipient() + ":" + ev.getMessage());
+            done.countDown();
+        }
+
+        private void await() throws InterruptedException {
+            gate.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @After
+    public void close() {
+        bus.close();
+    }
+
+    @Test
+    public void should_deliver_events_in_order_without_blocking_publisher() throws InterruptedException {
+        GatedListener l = new GatedListener(100);
+        IrcEventBus.Subscription s = bus.subscribe(l, 128, IrcEventBus.Overflow.Block);
+
+        for(int i = 0; i < 100; i++) {
+            bus.publish(new ServerEvent("*", Integer.toString(i)));
+        }
+        l.await();
+
+        for(int i = 0; i < 100; i++) {
+            assertEquals("*:" + i, l.messages.get(i));
+        }
+        assertEquals(100, s.getPublished());
+        assertEquals(0, s.getDropped());
+    }
+
+    @Test
+    public void should_drop_oldest_events_when_full() throws InterruptedException {
+        GatedListener l = new GatedListener(5);
+        IrcEventBus.Subscription s = bus.subscribe(l, 4, IrcEventBus.Overflow.DropOldest);
+
+        bus.publish(new ServerEvent("*", "0"));
+        // Wait for the first event to be taken, so the remaining events fill the buffer
+        while(s.getPending() > 0) {
+            Thread.yield();
+        }
+        for(int i = 1; i < 10; i++) {
+            bus.publish(new ServerEvent("*", Integer.toString(i)));
+        }
+        l.await();
+
+        assertEquals("[*:0, *:6, *:7, *:8, *:9]", l.messages.toString());
+        assertEquals(5, s.getDropped());
+        assertEquals(4, s.getMaxPending());
+    }
+
+    @Test
+    public void should_coalesce_events_for_same_recipient_when_full() throws InterruptedException {
+        GatedListener l = new GatedListener(3);
+        IrcEventBus.Subscription s = bus.subscribe(l, 2, IrcEventBus.Overflow.Coalesce);
+
+        bus.publish(new ServerEvent("#a", "0"));
+        while(s.getPending() > 0) {
+            Thread.yield();
+        }
+        bus.publish(new ServerEvent("#a", "1"));
+        bus.publish(new ServerEvent("#b", "2"));
+        bus.publish(new ServerEvent("#a", "3"));
+        bus.publish(new ServerEvent("#a", "4"));
+        l.await();
+
+        assertEquals("[#a:0, #b:2, #a:4]", l.messages.toString());
+        assertEquals(2, s.getCoalesced());
+        assertEquals(0, s.getDropped());
+    }
+
+    @Test
+    public void should_stop_delivering_after_unsubscribe() throws InterruptedException {
+        GatedListener l = new GatedListener(1);
+        IrcEventBus.Subscription s = bus.subscribe(l, 4, IrcEventBus.Overflow.Block);
+        s.unsubscribe();
+        s.getThread().join(5000);
+
+        bus.publish(new ServerEvent("*", "0"));
+
+        assertFalse(s.getThread().isAlive());
+        assertEquals(0, s.getPublished());
+    }
+
+    @Test
+    public void should_keep_delivering_after_listener_throws() throws InterruptedException {
+        final BlockingQueue<Throwable> uncaught = new LinkedBlockingQueue<Throwable>();
+        IrcEventBus reporting = new IrcEventBus(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    public void uncaughtException(Thread t, Throwable e) {
+                        uncaught.add(e);
+                    }
+                });
+                return t;
+            }
+        });
+        final List<String> messages = new CopyOnWriteArrayList<String>();
+        final CountDownLatch done = new CountDownLatch(2);
+        IrcEventBus.Subscription s = reporting.subscribe(new IrcEventListener() {
+            public void handleEvent(IrcEvent ev) {
+                if(ev.getMessage().equals("0")) {
+                    done.countDown();
+                    throw new IllegalStateException("listener failed");
+                }
+                messages.add(ev.getMessage());
+                done.countDown();
+            }
+        }, 4, IrcEventBus.Overflow.Block);
+        try {
+            reporting.publish(new ServerEvent("*", "0"));
+            reporting.publish(new ServerEvent("*", "1"));
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals("listener failed", uncaught.poll(5, TimeUnit.SECONDS).getMessage());
+            assertEquals("[1]", messages.toString());
+            assertTrue(s.getThread().isAlive());
+        }
+        finally {
+            reporting.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package dirc.core.message;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class IrcMessageDecoderTest {
+    private IrcMessageDecoder decoder = new IrcMessageDecoder(Charset.forName("UTF-8"));
+
+    @Test
+    public void should_leave_partial_line_in_buffer() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap("NOTICE :Hello World!\r\nNOTICE :Bye".getBytes("UTF-8"));
+
+        IrcMessage m = decoder.decode(buf);
+        assertEquals("NOTICE", m.getCommand());
+        assertEquals(Arrays.asList("Hello World!"), m.getParameters());
+
+        assertNull(decoder.decode(buf));
+        assertEquals(22, buf.position());
+    }
+
+    @Test
+    public void should_decode_line_completed_by_later_read() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        buf.put("NOTICE :Hel".getBytes("UTF-8")).flip();
+        assertNull(decoder.decode(buf));
+
+        buf.compact().put("lo World!\r\n".getBytes("UTF-8")).flip();
+        IrcMessage m = decoder.decode(buf);
+        assertEquals(Arrays.asList("Hello World!"), m.getParameters());
+        assertNull(decoder.decode(buf));
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    public void should_decode_from_direct_buffer() throws IOException {
+        byte[] line = ":joe!bob@foo.net PRIVMSG #haskell :\u00e9t\u00e9\r\n".getBytes("UTF-8");
+        ByteBuffer buf = ByteBuffer.allocateDirect(line.length);
+        buf.put(line).flip();
+
+        IrcMessage m = decoder.decode(buf);
+        assertEquals("joe", m.getNickname());
+        assertEquals("PRIVMSG", m.getCommand());
+        assertEquals(Arrays.asList("#haskell", "\u00e9t\u00e9"), m.getParameters());
+    }
+
+    @Test
+    public void should_skip_invalid_and_empty_lines() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap("\r\n:joe!bob NOTICE :x\r\n372! :x\r\nPING :foo.net\r\n".getBytes("UTF-8"));
+
+        IrcMessage m = decoder.decode(buf);
+        assertEquals("PING", m.getCommand());
+        assertEquals(Arrays.asList("foo.net"), m.getParameters());
+    }
+
+    @Test
+    public void should_not_fail_on_empty_trailing_parameter() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap("NOTICE a :\r\n".getBytes("UTF-8"));
+
+        IrcMessage m = decoder.decode(buf);
+        assertEquals(Arrays.asList("a", ""), m.getParameters());
+        assertTrue(m.getTextStyles().isEmpty());
+    }
+
+    @Test
+    public void should_decode_tags_before_prefix() throws IOException {
+        IrcMessage m = decoder.decode(ByteBuffer.wrap(
+                "@time=2020-01-01T00:00:00.000Z;msgid=abc;+draft/typing :joe!bob@foo.net PRIVMSG #c :Hi\r\n"
+                        .getBytes("UTF-8")));
+
+        assertEquals("2020-01-01T00:00:00.000Z", m.getTag("time"));
+        assertEquals("abc", m.getTag("msgid"));
+        assertEquals("", m.getTag("+draft/typing"));
+        assertNull(m.getTag("batch"));
+        assertEquals("joe", m.getNickname());
+        assertEquals("foo.net", m.getHost());
+        assertEquals("PRIVMSG", m.getCommand());
+        assertEquals(Arrays.asList("#c", "Hi"), m.getParameters());
+    }
+
+    @Test
+    public void should_decode_tags_without_prefix() throws IOException {
+        IrcMessage m = decoder.decode(ByteBuffer.wrap("@batch=1  PING :foo.net\r\n".getBytes("UTF-8")));
+
+        assertEquals("1", m.getTag("batch"));
+        assertNull(m.getServername());
+        assertEquals("PING", m.getCommand());
+        assertEquals("foo.net", m.getLastParameter());
+    }
+
+    @Test
+    public void should_skip_line_of_tags_only() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap("@time=1\r\n@time=2 \r\nPING :foo.net\r\n".getBytes("UTF-8"));
+
+        IrcMessage m = decoder.decode(buf);
+
+        assertEquals("PING", m.getCommand());
+        assertTrue(m.getTags().isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+package dirc.core.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Compares the throughput of the byte oriented {@link IrcMessageDecoder} used by {@link IrcMessageReader} with the
+ * character at a time {@link IrcMessageReader.MessageParser} state machine, by replaying a corpus of server lines.
+ * The lazy routing case only reads the command of each message, as a bouncer routing lines would.
+ * 
+ * Run with: java -cp target/classes:target/test-classes dirc.core.message.IrcMessageReaderBenchmark
+ */
+public class IrcMessageReaderBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String[] CORPUS = {
+        ":joe!bob@foo.net PRIVMSG #haskell :Hello World!\r\n",
+        ":joe!bob@foo.net PRIVMSG #java :\u0002Hello\u0002 World\r\n",
+        ":foo.net NOTICE * :*** Looking up your hostname...\r\n",
+        ":foo.net 372 sh0rug0ru :- \u000304,02Welcome\u000F to the server\r\n",
+        ":foo.net 005 sh0rug0ru CHANTYPES=# PREFIX=(ov)@+ NETWORK=Foo :are supported by this server\r\n",
+        "NOTICE a:b c :Hello World!\r\n",
+        "JOIN #haskell\r\n",
+        "PING :foo.net\r\n",
+    };
+    private static final int LINES = 200000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        byte[] replay = corpus();
+        for(int round = 0; round < ROUNDS; round++) {
+            long stateMachine = timeStateMachine(replay);
+            long decoder = timeDecoder(replay);
+            long routed = timeLazyRouting(replay);
+            System.out.printf("round %d: state machine %d ns/msg, decoder %d ns/msg, lazy routing %d ns/msg%n",
+                    round, stateMachine / LINES, decoder / LINES, routed / LINES);
+        }
+    }
+
+    private static byte[] corpus() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < LINES; i++) {
+            sb.append(CORPUS[i % CORPUS.length]);
+        }
+        return sb.toString().getBytes(UTF8);
+    }
+
+    private static long timeStateMachine(byte[] replay) throws IOException {
+        InputStreamReader r = new InputStreamReader(new ByteArrayInputStream(replay), UTF8);
+        long start = System.nanoTime();
+        int n = 0;
+        while(new IrcMessageReader.MessageParser(r).getMessage() != null) {
+            n++;
+        }
+        return check(n, System.nanoTime() - start);
+    }
+
+    private static long timeDecoder(byte[] replay) throws IOException {
+        IrcMessageReader r = new IrcMessageReader(new ByteArrayInputStream(replay), UTF8);
+        long start = System.nanoTime();
+        int n = 0;
+        while(r.nextMessage() != null) {
+            n++;
+        }
+        return check(n, System.nanoTime() - start);
+    }
+
+    private static long timeLazyRouting(byte[] replay) throws IOException {
+        IrcMessageReader r = new IrcMessageReader(new ByteArrayInputStream(replay), UTF8, true);
+        long start = System.nanoTime();
+        int n = 0;
+        IrcMessage m;
+        while((m = r.nextMessage()) != null) {
+            if(m.getCommand() != null) {
+                n++;
+            }
+        }
+        return check(n, System.nanoTime() - start);
+    }
+
+    private static long check(int n, long elapsed) {
+        if(n != LINES) {
+            throw new IllegalStateException("Parsed " + n + " of " + LINES + " lines");
+        }
+        return elapsed;
+    }
+}
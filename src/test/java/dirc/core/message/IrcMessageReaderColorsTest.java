@@ -6,6 +6,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -353,4 +354,64 @@ public class IrcMessageReaderColorsTest {
         assertEquals(11, style.getEnd());
         assertTrue(style.is(TextStyle.Style.Bold));
     }
+
+    @Test
+    public void should_leave_single_digit_color_code_in_text() throws IOException {
+        InputStream is = new ByteArrayInputStream("NOTICE :\u00034Hello World\r\n".getBytes("UTF-8"));
+        IrcMessageReader r = new IrcMessageReader(is, Charset.forName("UTF-8"));
+        IrcMessage m = r.nextMessage();
+        
+        assertEquals(Arrays.asList("4Hello World"), m.getParameters());
+        List<TextStyle> styles = m.getTextStyles();
+        assertEquals(1, styles.size());
+        TextStyle style = styles.get(0);
+        assertNull(style.getForeground());
+        assertNull(style.getBackground());
+    }
+
+    @Test
+    public void should_return_same_text_for_text_without_control_codes() {
+        String text = "Hello World";
+        List<TextStyle> styles = new ArrayList<TextStyle>();
+        
+        assertSame(text, IrcMessageReader.parseFormatting(text, styles));
+        assertTrue(styles.isEmpty());
+    }
+
+    @Test
+    public void should_return_extended_palette_colors() throws IOException {
+        InputStream is = new ByteArrayInputStream("NOTICE :\u000352,98Hello\u000399,16World\r\n".getBytes("UTF-8"));
+        IrcMessageReader r = new IrcMessageReader(is, Charset.forName("UTF-8"));
+        IrcMessage m = r.nextMessage();
+
+        assertEquals(Arrays.asList("HelloWorld"), m.getParameters());
+        List<TextStyle> styles = m.getTextStyles();
+        assertEquals(2, styles.size());
+        assertEquals(52, styles.get(0).getForegroundColor());
+        assertEquals(98, styles.get(0).getBackgroundColor());
+        assertNull(styles.get(0).getForeground());
+        assertEquals(TextStyle.DEFAULT_COLOR, styles.get(1).getForegroundColor());
+        assertEquals(16, styles.get(1).getBackgroundColor());
+    }
+
+    @Test
+    public void should_return_hex_colors() throws IOException {
+        InputStream is = new ByteArrayInputStream(
+                "NOTICE :\u0004FF8000,0a0B0cHello\u0004World\u00041234 5\r\n".getBytes("UTF-8"));
+        IrcMessageReader r = new IrcMessageReader(is, Charset.forName("UTF-8"));
+        IrcMessage m = r.nextMessage();
+
+        assertEquals(Arrays.asList("HelloWorld1234 5"), m.getParameters());
+        List<TextStyle> styles = m.getTextStyles();
+        assertEquals(3, styles.size());
+        TextStyle style = styles.get(0);
+        assertTrue(style.is(TextStyle.Style.Color));
+        assertEquals(TextStyle.RGB | 0xff8000, style.getForegroundColor());
+        assertEquals(TextStyle.RGB | 0x0a0b0c, style.getBackgroundColor());
+        assertEquals(5, styles.get(1).getStart());
+        assertEquals(TextStyle.DEFAULT_COLOR, styles.get(1).getForegroundColor());
+        assertEquals(10, styles.get(2).getStart());
+        assertEquals(16, styles.get(2).getEnd());
+        assertEquals("textstyle: [ start: 0, end: 5, styles: {Color=[#ff8000, #0a0b0c]}]", style.toString());
+    }
 }
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -233,4 +234,16 @@ public class IrcMessageReaderTest {
 
         assertNull(r.nextMessage());
     }
+
+    @Test
+    public void should_parse_tags_with_reference_parser() throws IOException {
+        InputStream is = new ByteArrayInputStream("@time=1;msgid=a\\:b :joe!bob@foo.net PRIVMSG #c :Hi\r\n"
+                .getBytes("UTF-8"));
+        IrcMessage m = new IrcMessageReader.MessageParser(new InputStreamReader(is, "UTF-8")).getMessage();
+
+        assertEquals("1", m.getTag("time"));
+        assertEquals("a;b", m.getTag("msgid"));
+        assertEquals("joe", m.getNickname());
+        assertEquals(Arrays.asList("#c", "Hi"), m.getParameters());
+    }
 }
@@ -0,0 +1,55 @@
+package dirc.core.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * Compares {@link IrcMessage#serialize()} followed by encoding the String, as the writers used to do, with encoding
+ * straight into a reusable buffer through {@link IrcMessage#serializeTo(ByteBuffer, CharsetEncoder)}.
+ * 
+ * Run with: java -cp target/classes:target/test-classes dirc.core.message.IrcMessageSerializationBenchmark
+ */
+public class IrcMessageSerializationBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final IrcMessage[] MESSAGES = {
+        new IrcMessage("JOIN", "#haskell"),
+        new IrcMessage("PRIVMSG", "#java", "Hello World!"),
+        new IrcMessage("USER", "guest", "0", "*", "John Q. Public"),
+        new IrcMessage("PONG", "foo.net"),
+    };
+    private static final int MESSAGES_PER_ROUND = 2000000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(16384);
+        CharsetEncoder encoder = UTF8.newEncoder();
+        long sink = 0;
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < MESSAGES_PER_ROUND; i++) {
+                byte[] b = MESSAGES[i % MESSAGES.length].serialize().getBytes(UTF8);
+                if(buf.remaining() < b.length) {
+                    buf.clear();
+                }
+                buf.put(b);
+            }
+            long serialize = System.nanoTime() - start;
+
+            buf.clear();
+            start = System.nanoTime();
+            for(int i = 0; i < MESSAGES_PER_ROUND; i++) {
+                if(!MESSAGES[i % MESSAGES.length].serializeTo(buf, encoder)) {
+                    sink += buf.position();
+                    buf.clear();
+                    MESSAGES[i % MESSAGES.length].serializeTo(buf, encoder);
+                }
+            }
+            long serializeTo = System.nanoTime() - start;
+
+            System.out.printf("round %d: serialize %d ns/msg, serializeTo %d ns/msg%n",
+                    round, serialize / MESSAGES_PER_ROUND, serializeTo / MESSAGES_PER_ROUND);
+        }
+        System.out.println(sink > 0 ? "" : "no output");
+    }
+}
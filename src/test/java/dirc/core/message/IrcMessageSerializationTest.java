@@ -2,9 +2,22 @@ package dirc.core.message;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
 import org.junit.Test;
 
 public class IrcMessageSerializationTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static String serializeTo(IrcMessage msg, Charset charset) {
+        ByteBuffer buf = ByteBuffer.allocate(512);
+        assertTrue(msg.serializeTo(buf, charset.newEncoder()));
+        buf.flip();
+        return charset.decode(buf).toString();
+    }
+
     @Test
     public void should_serialize_non_space_parameters_with_middle_parameters() {
         IrcMessage msg = new IrcMessage("USER", "guest", "0", "*", "Joe");
@@ -70,4 +83,83 @@ public class IrcMessageSerializationTest {
         IrcMessage msg = new IrcMessage("USER", "   ", "0", "*", "John Q. Public");
         msg.serialize();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void should_serialize_to_buffer_like_serialize() {
+        IrcMessage[] msgs = {
+            new IrcMessage("USER", "guest", "0", "*", "Joe"),
+            new IrcMessage("USER", "guest:1", "0", "*", "John Q. Public"),
+            new IrcMessage("USER", "guest", "0", "*", null),
+            new IrcMessage("USER", "guest", "0", "*", ""),
+            new IrcMessage("USER", "guest", "0", "*", "   "),
+            new IrcMessage("QUIT"),
+        };
+        for (IrcMessage msg : msgs) {
+            assertEquals(msg.serialize(), serializeTo(msg, UTF8));
+        }
+    }
+
+    @Test
+    public void should_serialize_non_ascii_parameters_to_buffer() {
+        IrcMessage msg = new IrcMessage("PRIVMSG", "#caf\u00e9", "\u00e9t\u00e9 \u00e0 Paris");
+        assertEquals(msg.serialize(), serializeTo(msg, UTF8));
+        assertEquals(msg.serialize(), serializeTo(msg, Charset.forName("UTF-16BE")));
+    }
+
+    @Test
+    public void should_leave_buffer_unchanged_when_message_does_not_fit() {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.put((byte) 'x');
+        IrcMessage msg = new IrcMessage("USER", "guest", "0", "*", "John Q. Public");
+
+        assertFalse(msg.serializeTo(buf, UTF8.newEncoder()));
+        assertEquals(1, buf.position());
+    }
+
+    @Test
+    public void should_leave_buffer_unchanged_when_rejecting_middle_space_parameter() {
+        ByteBuffer buf = ByteBuffer.allocate(512);
+        CharsetEncoder encoder = UTF8.newEncoder();
+        IrcMessage msg = new IrcMessage("USER", "guest", "John Q. Public", "*", "guest");
+
+        try {
+            msg.serializeTo(buf, encoder);
+            fail();
+        }
+        catch(IllegalArgumentException ex) {
+            assertEquals(0, buf.position());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_null_middle_parameter_when_serializing_to_buffer() {
+        IrcMessage msg = new IrcMessage("USER", null, "0", "*", "John Q. Public");
+        msg.serializeTo(ByteBuffer.allocate(512), UTF8.newEncoder());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_middle_leading_colon_parameter_when_serializing_to_buffer() {
+        IrcMessage msg = new IrcMessage("USER", ":guest", "0", "*", "John Q. Public");
+        msg.serializeTo(ByteBuffer.allocate(512), UTF8.newEncoder());
+    }
+
+    @Test
+    public void should_reject_middle_parameter_with_same_message_as_serialize() {
+        IrcMessage msg = new IrcMessage("USER", ":a b", "0", "*", "John Q. Public");
+        String expected = null;
+        try {
+            msg.serialize();
+            fail();
+        }
+        catch(IllegalArgumentException ex) {
+            expected = ex.getMessage();
+        }
+        try {
+            msg.serializeTo(ByteBuffer.allocate(512), UTF8.newEncoder());
+            fail();
+        }
+        catch(IllegalArgumentException ex) {
+            assertEquals(expected, ex.getMessage());
+        }
+    }
+}
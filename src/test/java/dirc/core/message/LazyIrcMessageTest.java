@@ -0,0 +1,111 @@
+package dirc.core.message;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LazyIrcMessageTest {
+    private IrcMessageDecoder decoder = new IrcMessageDecoder(Charset.forName("UTF-8"), true);
+
+    private IrcMessage decode(String line) throws IOException {
+        return decoder.decode(ByteBuffer.wrap(line.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void should_decode_servername_prefix() throws IOException {
+        IrcMessage m = decode(":foo.net NOTICE :Hello World!\r\n");
+
+        assertTrue(m instanceof LazyIrcMessage);
+        assertEquals("foo.net", m.getServername());
+        assertNull(m.getNickname());
+        assertEquals("NOTICE", m.getCommand());
+        assertEquals(Arrays.asList("Hello World!"), m.getParameters());
+    }
+
+    @Test
+    public void should_decode_nickname_and_user_and_host_prefix() throws IOException {
+        IrcMessage m = decode(":joe!bob@foo.net PRIVMSG #haskell :Hello World!\r\n");
+
+        assertNull(m.getServername());
+        assertEquals("joe", m.getNickname());
+        assertEquals("bob", m.getUser());
+        assertEquals("foo.net", m.getHost());
+        assertEquals("PRIVMSG", m.getCommand());
+        assertEquals("#haskell", m.getParameter(0));
+        assertEquals("Hello World!", m.getLastParameter());
+    }
+
+    @Test
+    public void should_decode_nickname_and_host_prefix() throws IOException {
+        IrcMessage m = decode(":joe@foo.net NOTICE :Hello World!\r\n");
+
+        assertEquals("joe", m.getNickname());
+        assertNull(m.getUser());
+        assertEquals("foo.net", m.getHost());
+    }
+
+    @Test
+    public void should_decode_nickname_only_prefix_after_earlier_line() throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(":foo.net NOTICE * :first\r\n:joe QUIT :bye\r\n".getBytes("UTF-8"));
+        decoder.decode(buf);
+
+        IrcMessage m = decoder.decode(buf);
+
+        assertEquals("joe", m.getNickname());
+        assertNull(m.getUser());
+        assertNull(m.getHost());
+        assertEquals("QUIT", m.getCommand());
+        assertEquals("bye", m.getLastParameter());
+    }
+
+    @Test
+    public void should_decode_formatting_of_last_parameter() throws IOException {
+        IrcMessage m = decode("NOTICE a :\u0002Hello\u0002 World\r\n");
+
+        assertEquals(Arrays.asList("a", "Hello World"), m.getParameters());
+        List<TextStyle> styles = m.getTextStyles();
+        assertEquals(2, styles.size());
+        assertTrue(styles.get(0).is(TextStyle.Style.Bold));
+        assertTrue(styles.get(1).isPlain());
+    }
+
+    @Test
+    public void should_share_numeric_command() throws IOException {
+        IrcMessage m1 = decode("372 :Hello World!\r\n");
+        IrcMessage m2 = decode("372 :Bye World!\r\n");
+
+        assertEquals("372", m1.getCommand());
+        assertSame(m1.getCommand(), m2.getCommand());
+    }
+
+    @Test
+    public void should_skip_invalid_prefix() throws IOException {
+        assertNull(decode(":joe!bob NOTICE :Hello World!\r\n"));
+    }
+
+    @Test
+    public void should_decode_tags_and_prefix_after_tags() throws IOException {
+        IrcMessage m = decode("@msgid=a\\sb;account=joe :joe!bob@foo.net PRIVMSG #haskell :Hello\r\n");
+
+        assertEquals("a b", m.getTag("msgid"));
+        assertEquals("joe", m.getTag("account"));
+        assertEquals("joe", m.getNickname());
+        assertEquals("bob", m.getUser());
+        assertEquals("foo.net", m.getHost());
+        assertEquals(Arrays.asList("#haskell", "Hello"), m.getParameters());
+    }
+
+    @Test
+    public void should_decode_servername_after_tags() throws IOException {
+        IrcMessage m = decode("@time=1 :foo.net NOTICE :Hello\r\n");
+
+        assertEquals("foo.net", m.getServername());
+        assertEquals("1", m.getTag("time"));
+    }
+}
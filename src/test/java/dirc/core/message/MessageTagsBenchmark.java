@@ -0,0 +1,66 @@
+package dirc.core.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Measures the cost of IRCv3 message tags by replaying heavily tagged lines, as sent by a server with server-time,
+ * msgid, account-tag and batch enabled, against the same lines without tags. Each case is run eagerly and lazily,
+ * once only routing by command and once also reading the server-time tag.
+ *
+ * Run with: java -cp target/classes:target/test-classes dirc.core.message.MessageTagsBenchmark
+ */
+public class MessageTagsBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String TAGS = "@time=2021-03-04T12:34:56.789Z;msgid=Fm2ZTeTNRmVaC4Xw6R5dTb;"
+            + "account=joe;batch=hist42;+draft/reply=Yx9kW3ZmT2hNbmVGd3E;+example.org/custom=a\\sb\\:c ";
+    private static final String[] CORPUS = {
+        ":joe!bob@foo.net PRIVMSG #haskell :Hello World!\r\n",
+        ":joe!bob@foo.net PRIVMSG #java :\u0002Hello\u0002 World\r\n",
+        ":foo.net NOTICE * :*** Looking up your hostname...\r\n",
+        ":joe!bob@foo.net JOIN #haskell\r\n",
+    };
+    private static final int LINES = 200000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        byte[] plain = corpus("");
+        byte[] tagged = corpus(TAGS);
+        for(int round = 0; round < ROUNDS; round++) {
+            System.out.printf("round %d: eager plain %d, tagged %d, tagged+time %d | "
+                    + "lazy plain %d, tagged %d, tagged+time %d ns/msg%n", round,
+                    time(plain, false, false) / LINES,
+                    time(tagged, false, false) / LINES,
+                    time(tagged, false, true) / LINES,
+                    time(plain, true, false) / LINES,
+                    time(tagged, true, false) / LINES,
+                    time(tagged, true, true) / LINES);
+        }
+    }
+
+    private static byte[] corpus(String tags) {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < LINES; i++) {
+            sb.append(tags).append(CORPUS[i % CORPUS.length]);
+        }
+        return sb.toString().getBytes(UTF8);
+    }
+
+    private static long time(byte[] replay, boolean lazy, boolean readTime) throws IOException {
+        IrcMessageReader r = new IrcMessageReader(new ByteArrayInputStream(replay), UTF8, lazy);
+        long start = System.nanoTime();
+        int n = 0;
+        IrcMessage m;
+        while((m = r.nextMessage()) != null) {
+            if(m.getCommand() != null && (!readTime || m.getTag("time") != null)) {
+                n++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if(n != LINES) {
+            throw new IllegalStateException("Parsed " + n + " of " + LINES + " lines");
+        }
+        return elapsed;
+    }
+}
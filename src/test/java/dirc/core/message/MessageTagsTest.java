@@ -0,0 +1,51 @@
+package dirc.core.message;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MessageTagsTest {
+    @Test
+    public void should_find_keys_only_at_start_of_tag() {
+        MessageTags tags = new MessageTags("xtime=1;time=2;timeout=3;flag");
+
+        assertEquals("2", tags.get("time"));
+        assertEquals("3", tags.get("timeout"));
+        assertEquals("", tags.get("flag"));
+        assertTrue(tags.contains("xtime"));
+        assertFalse(tags.contains("tim"));
+        assertNull(tags.get("out"));
+    }
+
+    @Test
+    public void should_unescape_values() {
+        MessageTags tags = new MessageTags("a=one\\:two\\sthree\\\\four\\r\\n;b=\\x;c=end\\");
+
+        assertEquals("one;two three\\four\r\n", tags.get("a"));
+        assertEquals("x", tags.get("b"));
+        assertEquals("end", tags.get("c"));
+    }
+
+    @Test
+    public void should_list_every_tag() {
+        Map<String, String> expected = new LinkedHashMap<String, String>();
+        expected.put("time", "1");
+        expected.put("+draft/reply", "a b");
+        expected.put("flag", "");
+
+        assertEquals(expected, new MessageTags("time=1;+draft/reply=a\\sb;flag").toMap());
+        assertTrue(MessageTags.EMPTY.toMap().isEmpty());
+    }
+
+    @Test
+    public void should_take_last_value_of_repeated_key() {
+        MessageTags tags = new MessageTags("a=1;b=2;a=3;c;c=4");
+
+        assertEquals("3", tags.get("a"));
+        assertEquals("4", tags.get("c"));
+        assertEquals(tags.toMap().get("a"), tags.get("a"));
+    }
+}
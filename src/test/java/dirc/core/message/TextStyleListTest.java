@@ -0,0 +1,58 @@
+package dirc.core.message;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dirc.core.message.TextStyle.Color;
+import dirc.core.message.TextStyle.Style;
+
+public class TextStyleListTest {
+    @Test
+    public void should_pack_and_unpack_runs() {
+        TextStyleList list = new TextStyleList();
+        for(int i = 0; i < 10; i++) {
+            list.add(new TextStyle(i * 10, i * 10 + 5).toggle(Style.Bold).setColors(Color.LightGrey, Color.White));
+        }
+
+        assertEquals(10, list.size());
+        TextStyle ts = list.get(9);
+        assertEquals(90, ts.getStart());
+        assertEquals(95, ts.getEnd());
+        assertTrue(ts.is(Style.Bold));
+        assertFalse(ts.is(Style.Italic));
+        assertEquals(Color.LightGrey, ts.getForeground());
+        assertEquals(Color.White, ts.getBackground());
+    }
+
+    @Test
+    public void should_insert_set_and_remove_runs() {
+        TextStyleList list = new TextStyleList();
+        list.add(new TextStyle(0, 1));
+        list.add(new TextStyle(2, 3));
+        list.add(1, new TextStyle(1, 2).toggle(Style.Italic));
+
+        assertEquals(1, list.getStart(1));
+        assertTrue(list.get(1).is(Style.Italic));
+        assertEquals(2, list.getStart(2));
+
+        list.set(0, new TextStyle(0, 1).toggle(Style.Underlined));
+        assertTrue(list.get(0).is(Style.Underlined));
+
+        list.remove(0);
+        assertEquals(2, list.size());
+        assertEquals(1, list.getStart(0));
+        assertEquals(3, list.getEnd(1));
+    }
+
+    @Test
+    public void should_clear_colors_when_color_toggled_off() {
+        TextStyle ts = new TextStyle(0, 1).setColors(Color.Red, Color.Blue).toggle(Style.Color);
+
+        assertTrue(ts.isPlain());
+        assertNull(ts.getForeground());
+        assertEquals("textstyle: [ start: 0, end: 1, styles: {}]", ts.toString());
+        assertEquals("textstyle: [ start: 0, end: 1, styles: {Bold=true, Color=[Red, null]}]",
+                ts.toggle(Style.Bold).setColors(Color.Red, null).toString());
+    }
+}
@@ -0,0 +1,57 @@
+package dirc.core.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap retained by the formatting of decoded messages: N messages with several style runs each are
+ * decoded and kept, and the heap they hold is compared with that of the same messages without formatting codes.
+ * 
+ * Run with: java -cp target/classes:target/test-classes dirc.core.message.TextStyleMemoryBenchmark [N]
+ */
+public class TextStyleMemoryBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        String styled = ":nick!user@host PRIVMSG #channel :\u0002bold\u0002 \u000304,01red on black\u0003 " +
+                "\u001Funderlined\u001F \u001Ditalic\u001D plain";
+        String plain = ":nick!user@host PRIVMSG #channel :bold red on black underlined italic plain";
+
+        int runs = new IrcMessageDecoder(UTF8).decode(ByteBuffer.wrap((styled + "\r\n").getBytes(UTF8)))
+                .getTextStyles().size();
+        long styledBytes = retained(styled, n);
+        long plainBytes = retained(plain, n);
+        System.out.printf("styled: %d bytes per message, plain: %d bytes per message, formatting: %d bytes for %d runs%n",
+                styledBytes / n, plainBytes / n, (styledBytes - plainBytes) / n, runs);
+    }
+
+    private static long retained(String line, int n) throws InterruptedException {
+        ByteBuffer buf = ByteBuffer.wrap((line + "\r\n").getBytes(UTF8));
+        IrcMessageDecoder decoder = new IrcMessageDecoder(UTF8);
+        List<IrcMessage> messages = new ArrayList<IrcMessage>(n);
+        long before = usedHeap();
+        for(int i = 0; i < n; i++) {
+            buf.rewind();
+            IrcMessage m = decoder.decode(buf);
+            m.getTextStyles();
+            messages.add(m);
+        }
+        long after = usedHeap();
+        if(messages.size() != n) {
+            throw new IllegalStateException();
+        }
+        return after - before - 4L * n;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,158 @@
+package dirc.core.net;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dirc.core.config.IrcServerInfo;
+
+public class ConnectionRaceTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private FakeIrcServer server;
+    private IrcServerInfo down;
+    private IrcServerInfo up;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeIrcServer("");
+        up = new IrcServerInfo("localhost", server.getPort(), UTF8);
+        down = new IrcServerInfo("localhost", closedPort(), UTF8);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void should_fail_over_to_server_which_answers() throws Exception {
+        ConnectLatencyHistory history = new ConnectLatencyHistory();
+        ConnectionRace.Result r = new ConnectionRace(Arrays.asList(down, up), history, 5, 10,
+                TimeUnit.SECONDS).run();
+        try {
+            assertSame(up, r.getServer());
+            assertTrue(r.getChannel().isConnected());
+            assertTrue(r.getChannel().isBlocking());
+            assertTrue(history.get(down).getFailures() > 0);
+            assertEquals(0, history.get(up).getFailures());
+            assertEquals(r.getConnectNanos(), history.get(up).getLastNanos());
+        }
+        finally {
+            r.getChannel().close();
+        }
+    }
+
+    @Test
+    public void should_rank_servers_by_failures_then_latency() {
+        IrcServerInfo slow = new IrcServerInfo("slow.example.org", 6667, UTF8);
+        IrcServerInfo fast = new IrcServerInfo("fast.example.org", 6667, UTF8);
+        IrcServerInfo untried = new IrcServerInfo("new.example.org", 6667, UTF8);
+        ConnectLatencyHistory history = new ConnectLatencyHistory();
+        history.failed(down);
+        history.succeeded(slow, 50000000);
+        history.succeeded(fast, 1000000);
+
+        List<IrcServerInfo> ranked = history.rank(Arrays.asList(down, untried, slow, fast));
+
+        assertEquals(Arrays.asList(fast, slow, untried, down), ranked);
+    }
+
+    @Test(expected = IOException.class)
+    public void should_fail_when_no_server_answers() throws Exception {
+        new ConnectionRace(Arrays.asList(down), new ConnectLatencyHistory()).run();
+    }
+
+    @Test
+    public void should_count_one_failure_per_server() throws Exception {
+        final InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        ConnectLatencyHistory history = new ConnectLatencyHistory();
+        try {
+            new ConnectionRace(Arrays.asList(down), history, 5, 10, TimeUnit.SECONDS, new ConnectionRace.Resolver() {
+                public InetAddress[] resolve(String hostname) {
+                    return new InetAddress[] { loopback, loopback, loopback, loopback };
+                }
+            }).run();
+            fail();
+        }
+        catch (IOException ex) {
+            // every address refused
+        }
+
+        assertEquals(1, history.get(down).getFailures());
+        assertEquals(1, history.get(down).getConsecutiveFailures());
+    }
+
+    @Test
+    public void should_not_wait_for_slow_lookup() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        IrcServerInfo slow = new IrcServerInfo("slow.example.org", server.getPort(), UTF8);
+        ConnectionRace.Resolver resolver = new ConnectionRace.Resolver() {
+            public InetAddress[] resolve(String hostname) throws IOException {
+                if(hostname.equals("slow.example.org")) {
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException ex) {
+                        throw new IOException(ex);
+                    }
+                }
+                return new InetAddress[] { loopback };
+            }
+        };
+        try {
+            ConnectionRace.Result r = new ConnectionRace(Arrays.asList(slow, up), new ConnectLatencyHistory(), 50,
+                    10000, TimeUnit.MILLISECONDS, resolver).run();
+            assertSame(up, r.getServer());
+            r.getChannel().close();
+
+            long start = System.nanoTime();
+            try {
+                new ConnectionRace(Arrays.asList(slow), new ConnectLatencyHistory(), 50, 200, TimeUnit.MILLISECONDS,
+                        resolver).run();
+                fail();
+            }
+            catch (SocketTimeoutException ex) {
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            }
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void should_alternate_address_families() throws Exception {
+        InetAddress a6 = Inet6Address.getByName("::1");
+        InetAddress b6 = Inet6Address.getByName("::2");
+        InetAddress a4 = Inet4Address.getByName("127.0.0.1");
+        InetAddress b4 = Inet4Address.getByName("127.0.0.2");
+        InetAddress c4 = Inet4Address.getByName("127.0.0.3");
+
+        List<InetAddress> interleaved = ConnectionRace.interleave(new InetAddress[] { a6, b6, a4, b4, c4 });
+
+        assertEquals(Arrays.asList(a6, a4, b6, b4, c4), interleaved);
+    }
+
+    private static int closedPort() throws IOException {
+        ServerSocket s = new ServerSocket(0);
+        int port = s.getLocalPort();
+        s.close();
+        return port;
+    }
+}
@@ -0,0 +1,122 @@
+package dirc.core.net;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Loopback IRC server for connection tests. Every client which connects is sent the same burst of lines, and every
+ * line received from any client is collected for inspection, and optionally echoed back to the client.
+ */
+public class FakeIrcServer {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ServerSocket serverSocket;
+    private final byte[] burst;
+    private final boolean echo;
+    private final BlockingQueue<String> received;
+    private final List<Socket> clients;
+
+    /**
+     * Start a server on an ephemeral loopback port
+     *
+     * @param burst - lines, including line terminators, sent to each client on connect
+     * @throws IOException
+     */
+    public FakeIrcServer(String burst) throws IOException {
+        this(burst, false);
+    }
+
+    /**
+     * Start a server on an ephemeral loopback port
+     *
+     * @param burst - lines, including line terminators, sent to each client on connect
+     * @param echo  - true to send every received line back to the client which sent it
+     * @throws IOException
+     */
+    public FakeIrcServer(String burst, boolean echo) throws IOException {
+        this.serverSocket = new ServerSocket(0, 1024);
+        this.burst = burst.getBytes(UTF8);
+        this.echo = echo;
+        this.received = new LinkedBlockingQueue<String>();
+        this.clients = Collections.synchronizedList(new ArrayList<Socket>());
+
+        Thread acceptor = new Thread("fake-irc-accept") {
+            @Override
+            public void run() {
+                while(!serverSocket.isClosed()) {
+                    try {
+                        serve(serverSocket.accept());
+                    }
+                    catch (IOException ex) {
+                        return;
+                    }
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public BlockingQueue<String> getReceived() {
+        return received;
+    }
+
+    /**
+     * Drop every connected client, as a server restart or network failure would
+     */
+    public void disconnectAll() throws IOException {
+        synchronized(clients) {
+            for (Socket s : clients) {
+                s.close();
+            }
+            clients.clear();
+        }
+    }
+
+    public void close() throws IOException {
+        serverSocket.close();
+        disconnectAll();
+    }
+
+    private void serve(final Socket s) {
+        clients.add(s);
+        Thread handler = new Thread("fake-irc-client") {
+            @Override
+            public void run() {
+                try {
+                    OutputStream os = s.getOutputStream();
+                    os.write(burst);
+                    os.flush();
+                    BufferedReader r = new BufferedReader(new InputStreamReader(s.getInputStream(), UTF8));
+                    String line;
+                    while((line = r.readLine()) != null) {
+                        received.offer(line);
+                        if(echo) {
+                            os.write((line + "\r\n").getBytes(UTF8));
+                            os.flush();
+                        }
+                    }
+                }
+                catch (IOException ex) {
+                    // client went away
+                }
+            }
+        };
+        handler.setDaemon(true);
+        handler.start();
+    }
+}
@@ -0,0 +1,47 @@
+package dirc.core.net;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dirc.core.message.IrcMessage;
+
+public class FifoMessageSchedulerTest {
+    @Test
+    public void should_send_bulk_messages_in_order() {
+        FifoMessageScheduler s = new FifoMessageScheduler();
+        for(int i = 0; i < 1000; i++) {
+            s.offer(new IrcMessage("PRIVMSG", "#a", Integer.toString(i)));
+        }
+
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i), s.poll().getLastParameter());
+        }
+        assertNull(s.poll());
+        assertTrue(s.isEmpty());
+    }
+
+    @Test
+    public void should_send_keepalives_ahead_of_queued_bulk_messages() throws InterruptedException {
+        FifoMessageScheduler s = new FifoMessageScheduler();
+        for(int i = 0; i < 1000; i++) {
+            s.offer(new IrcMessage("PRIVMSG", "#a", Integer.toString(i)));
+        }
+        s.offer(new IrcMessage("PONG", "foo.net"));
+        s.offer(new IrcMessage("PING", "dirc-lag-1"));
+
+        assertEquals("PONG", s.take().getCommand());
+        assertEquals("PING", s.take().getCommand());
+        assertEquals("0", s.take().getLastParameter());
+    }
+
+    @Test
+    public void should_refuse_bulk_messages_but_not_keepalives_when_full() {
+        FifoMessageScheduler s = new FifoMessageScheduler(1);
+
+        assertTrue(s.offer(new IrcMessage("JOIN", "#a")));
+        assertFalse(s.offer(new IrcMessage("JOIN", "#b")));
+        assertTrue(s.offer(new IrcMessage("PONG", "foo.net")));
+        assertEquals(0, s.nanosUntilReady());
+    }
+}
@@ -0,0 +1,95 @@
+package dirc.core.net;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import dirc.core.message.IrcMessage;
+import dirc.core.message.IrcMessageListener;
+
+/**
+ * Opens N loopback connections in each connection mode and compares the heap and threads they hold, and the round
+ * trip latency of a line echoed by the server. Virtual threads are only measured when running on Java 21 or later.
+ * 
+ * Run with: java -cp target/classes:target/test-classes dirc.core.net.IrcConnectionScalingBenchmark [N]
+ */
+public class IrcConnectionScalingBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        FakeIrcServer server = new FakeIrcServer(":foo.net 001 joe :Welcome\r\n", true);
+
+        run("threaded", n, server, Executors.defaultThreadFactory());
+        if(VirtualThreads.isSupported()) {
+            run("virtual", n, server, VirtualThreads.factory());
+        }
+        else {
+            System.out.println("virtual: skipped, requires Java 21");
+        }
+        run("selector", n, server, null);
+        server.close();
+    }
+
+    private static void run(String mode, int n, FakeIrcServer server, ThreadFactory threadFactory)
+            throws Exception {
+        long heapBefore = usedHeap();
+        int threadsBefore = Thread.activeCount();
+        IrcSelectorLoop loop = threadFactory == null ? new IrcSelectorLoop("irc-selector-" + mode) : null;
+
+        final CountDownLatch welcomed = new CountDownLatch(n);
+        final CountDownLatch echoed = new CountDownLatch(n);
+        List<IrcConnection> connections = new ArrayList<IrcConnection>();
+        for(int i = 0; i < n; i++) {
+            IrcConnection c = threadFactory != null
+                    ? new ThreadedSocketIrcConnection("localhost", server.getPort(), UTF8, threadFactory)
+                    : new SelectorIrcConnection("localhost", server.getPort(), UTF8, loop);
+            c.addMessageListener(new IrcMessageListener() {
+                public void receivedMessage(IrcMessage message) {
+                    if("001".equals(message.getCommand())) {
+                        welcomed.countDown();
+                    }
+                    else if("PING".equals(message.getCommand())) {
+                        echoed.countDown();
+                    }
+                }
+            });
+            c.connect();
+            connections.add(c);
+        }
+        welcomed.await(60, TimeUnit.SECONDS);
+
+        long heapAfter = usedHeap();
+        int threadsAfter = Thread.activeCount();
+
+        long start = System.nanoTime();
+        for (IrcConnection c : connections) {
+            c.sendMessage(new IrcMessage("PING", "t"));
+        }
+        echoed.await(60, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%s: %d connections, %d KiB heap, %d threads (including one per client in the fake server), %d us mean echo latency%n",
+                mode, n, (heapAfter - heapBefore) / 1024, threadsAfter - threadsBefore,
+                TimeUnit.NANOSECONDS.toMicros(elapsed) / n);
+
+        for (IrcConnection c : connections) {
+            c.close();
+        }
+        server.disconnectAll();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime rt = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,74 @@
+package dirc.core.net;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dirc.core.message.IrcMessage;
+import dirc.core.message.IrcMessageListener;
+
+public class SelectorIrcConnectionLoadTest {
+    private static final int CONNECTIONS = 200;
+    private static final int LINES = 100;
+
+    private FakeIrcServer server;
+    private IrcSelectorLoop loop;
+    private List<SelectorIrcConnection> connections;
+
+    @Before
+    public void setUp() throws IOException {
+        StringBuilder burst = new StringBuilder();
+        for(int i = 0; i < LINES; i++) {
+            burst.append(":foo.net 372 joe :- line ").append(i).append(" of the message of the day\r\n");
+        }
+        server = new FakeIrcServer(burst.toString());
+        loop = new IrcSelectorLoop("irc-selector-test");
+        connections = new ArrayList<SelectorIrcConnection>();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SelectorIrcConnection c : connections) {
+            c.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void should_multiplex_many_connections_on_one_loop() throws Exception {
+        final CountDownLatch received = new CountDownLatch(CONNECTIONS * LINES);
+        int threadsBefore = Thread.activeCount();
+
+        for(int i = 0; i < CONNECTIONS; i++) {
+            SelectorIrcConnection c = new SelectorIrcConnection("localhost", server.getPort(),
+                    Charset.forName("UTF-8"), loop);
+            c.addMessageListener(new IrcMessageListener() {
+                public void receivedMessage(IrcMessage message) {
+                    if("372".equals(message.getCommand())) {
+                        received.countDown();
+                    }
+                }
+            });
+            c.connect();
+            c.sendMessage(new IrcMessage("NICK", "joe" + i));
+            connections.add(c);
+        }
+
+        assertTrue(received.await(30, TimeUnit.SECONDS));
+        for(int i = 0; i < CONNECTIONS; i++) {
+            assertNotNull(server.getReceived().poll(30, TimeUnit.SECONDS));
+        }
+
+        // Only the fake server's per client threads are added, not two per connection on the client side
+        assertTrue(Thread.activeCount() - threadsBefore <= CONNECTIONS + 1);
+    }
+}
@@ -0,0 +1,137 @@
+package dirc.core.net;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dirc.core.message.IrcMessage;
+import dirc.core.message.IrcMessageListener;
+
+public class SelectorIrcConnectionTest {
+    private IrcSelectorLoop loop;
+    private FakeIrcServer server;
+    private SelectorIrcConnection connection;
+    private Thread.UncaughtExceptionHandler defaultHandler;
+    private BlockingQueue<Throwable> uncaught;
+
+    @Before
+    public void setUp() throws IOException {
+        loop = new IrcSelectorLoop("irc-selector-test");
+        uncaught = new LinkedBlockingQueue<Throwable>();
+        defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread t, Throwable e) {
+                uncaught.add(e);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        if(connection != null) {
+            connection.close();
+        }
+        if(server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void should_discard_overlong_line_up_to_its_end() throws Exception {
+        StringBuilder burst = new StringBuilder(":foo.net NOTICE * :");
+        for(int i = 0; i < 100000; i++) {
+            burst.append('x');
+        }
+        burst.append("\r\n:foo.net NOTICE * :after\r\n");
+        server = new FakeIrcServer(burst.toString());
+        connection = new SelectorIrcConnection("localhost", server.getPort(), Charset.forName("UTF-8"), loop);
+        final BlockingQueue<IrcMessage> received = new LinkedBlockingQueue<IrcMessage>();
+        connection.addMessageListener(new IrcMessageListener() {
+            public void receivedMessage(IrcMessage message) {
+                received.add(message);
+            }
+        });
+
+        connection.connect();
+
+        IrcMessage m = received.poll(10, TimeUnit.SECONDS);
+        assertEquals("NOTICE", m.getCommand());
+        assertEquals("after", m.getLastParameter());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void should_keep_looping_after_task_fails() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(2);
+        loop.execute(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("task");
+            }
+        });
+        loop.schedule(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("timer");
+            }
+        }, 0);
+        loop.execute(new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        });
+        loop.schedule(new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        }, TimeUnit.MILLISECONDS.toNanos(10));
+
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        assertEquals("task", uncaught.poll(10, TimeUnit.SECONDS).getMessage());
+        assertEquals("timer", uncaught.poll(10, TimeUnit.SECONDS).getMessage());
+    }
+
+    @Test
+    public void should_drop_invalid_message_and_send_the_next() throws Exception {
+        server = new FakeIrcServer("");
+        connection = new SelectorIrcConnection("localhost", server.getPort(), Charset.forName("UTF-8"), loop);
+        connection.sendMessage(new IrcMessage("USER", "a b", "0", "*", "Real Name"));
+        connection.sendMessage(new IrcMessage("NICK", "joe"));
+
+        connection.connect();
+
+        assertEquals("NICK joe", server.getReceived().poll(10, TimeUnit.SECONDS));
+        connection.sendMessage(new IrcMessage("JOIN", "#c"));
+        assertEquals("JOIN #c", server.getReceived().poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_report_connection_lost_when_listener_throws() throws Exception {
+        server = new FakeIrcServer(":foo.net NOTICE * :hello\r\n");
+        connection = new SelectorIrcConnection("localhost", server.getPort(), Charset.forName("UTF-8"), loop);
+        connection.addMessageListener(new IrcMessageListener() {
+            public void receivedMessage(IrcMessage message) {
+                throw new IllegalStateException("listener");
+            }
+        });
+        final BlockingQueue<IOException> lost = new LinkedBlockingQueue<IOException>();
+        connection.addConnectionListener(new IrcConnectionListener() {
+            public void connectionLost(IOException cause) {
+                lost.add(cause);
+            }
+        });
+
+        connection.connect();
+
+        assertEquals("listener", lost.poll(10, TimeUnit.SECONDS).getCause().getMessage());
+        assertEquals("listener", uncaught.poll(10, TimeUnit.SECONDS).getMessage());
+    }
+}
@@ -0,0 +1,111 @@
+package dirc.core.net;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dirc.core.config.IrcServerInfo;
+import dirc.core.config.IrcServerInfo.ConnectionType;
+import dirc.core.message.IrcMessage;
+import dirc.core.message.IrcMessageListener;
+
+public class ThreadedSocketIrcConnectionTest {
+    private FakeIrcServer server;
+    private ThreadedSocketIrcConnection connection;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeIrcServer("");
+        connection = new ThreadedSocketIrcConnection("localhost", server.getPort(), Charset.forName("UTF-8"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        connection.close();
+        server.close();
+    }
+
+    @Test
+    public void should_write_queued_messages_in_batches() throws Exception {
+        for(int i = 0; i < 300; i++) {
+            connection.sendMessage(new IrcMessage("JOIN", "#channel" + i));
+        }
+        connection.connect();
+
+        for(int i = 0; i < 300; i++) {
+            assertEquals("JOIN #channel" + i, server.getReceived().poll(10, TimeUnit.SECONDS));
+        }
+        // The batch is recorded after it has been written, so may not be yet
+        WriteMetrics metrics = connection.getWriteMetrics();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(metrics.getMessages() < 300 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(300, metrics.getMessages());
+        assertTrue(metrics.getBatches() < 300);
+        assertEquals(300, metrics.getMaxBatchSize());
+    }
+
+    @Test
+    public void should_write_message_larger_than_buffer() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 20000; i++) {
+            text.append('x');
+        }
+        connection.connect();
+        connection.sendMessage(new IrcMessage("PRIVMSG", "#channel", text.toString()));
+
+        assertEquals("PRIVMSG #channel " + text, server.getReceived().poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_decode_lazily_when_server_info_asks() throws Exception {
+        FakeIrcServer lazyServer = new FakeIrcServer(":joe!bob@foo.net PRIVMSG #c :hi\r\n");
+        IrcConnection lazy = IrcConnectionFactory.create(new IrcServerInfo("localhost", lazyServer.getPort(),
+                Charset.forName("UTF-8"), ConnectionType.Threaded, null, true));
+        final BlockingQueue<IrcMessage> received = new LinkedBlockingQueue<IrcMessage>();
+        lazy.addMessageListener(new IrcMessageListener() {
+            public void receivedMessage(IrcMessage message) {
+                received.add(message);
+            }
+        });
+        try {
+            lazy.connect();
+            IrcMessage m = received.poll(10, TimeUnit.SECONDS);
+            assertEquals("LazyIrcMessage", m.getClass().getSimpleName());
+            assertEquals("joe", m.getNickname());
+            assertEquals("hi", m.getLastParameter());
+        }
+        finally {
+            lazy.close();
+            lazyServer.close();
+        }
+    }
+
+    @Test
+    public void should_not_throttle_unless_flood_control_configured() throws Exception {
+        IrcConnection unthrottled = IrcConnectionFactory.create(new IrcServerInfo("localhost", server.getPort(),
+                Charset.forName("UTF-8")));
+        try {
+            for(int i = 0; i < 20; i++) {
+                assertTrue(unthrottled.sendMessage(new IrcMessage("JOIN", "#channel" + i)));
+            }
+            unthrottled.connect();
+
+            for(int i = 0; i < 20; i++) {
+                assertEquals("JOIN #channel" + i, server.getReceived().poll(1, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            unthrottled.close();
+        }
+    }
+}
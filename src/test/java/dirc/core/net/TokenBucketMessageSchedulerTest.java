@@ -0,0 +1,63 @@
+package dirc.core.net;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import dirc.core.message.IrcMessage;
+
+public class TokenBucketMessageSchedulerTest {
+    @Test
+    public void should_release_burst_then_hold_back_bulk_messages() {
+        TokenBucketMessageScheduler s = new TokenBucketMessageScheduler(2, 1, 10);
+        s.offer(new IrcMessage("JOIN", "#a"));
+        s.offer(new IrcMessage("JOIN", "#b"));
+        s.offer(new IrcMessage("JOIN", "#c"));
+
+        assertEquals("#a", s.poll().getParameter(0));
+        assertEquals("#b", s.poll().getParameter(0));
+        assertNull(s.poll());
+        assertFalse(s.isEmpty());
+        long wait = s.nanosUntilReady();
+        assertTrue(wait > 0 && wait <= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void should_send_priority_messages_ahead_of_bulk_and_with_empty_bucket() {
+        TokenBucketMessageScheduler s = new TokenBucketMessageScheduler(1, 1, 10);
+        s.offer(new IrcMessage("JOIN", "#a"));
+        s.offer(new IrcMessage("JOIN", "#b"));
+        s.offer(new IrcMessage("PONG", "foo.net"));
+        s.offer(new IrcMessage("QUIT"));
+
+        assertEquals("PONG", s.poll().getCommand());
+        assertEquals("QUIT", s.poll().getCommand());
+        assertNull(s.poll());
+    }
+
+    @Test
+    public void should_refuse_bulk_messages_when_full() {
+        TokenBucketMessageScheduler s = new TokenBucketMessageScheduler(1, 1, 2);
+
+        assertTrue(s.offer(new IrcMessage("JOIN", "#a")));
+        assertTrue(s.offer(new IrcMessage("JOIN", "#b")));
+        assertFalse(s.offer(new IrcMessage("JOIN", "#c")));
+        assertTrue(s.offer(new IrcMessage("PONG", "foo.net")));
+    }
+
+    @Test
+    public void should_wait_for_refill_when_taking() throws InterruptedException {
+        TokenBucketMessageScheduler s = new TokenBucketMessageScheduler(1, 20, 10);
+        s.offer(new IrcMessage("JOIN", "#a"));
+        s.offer(new IrcMessage("JOIN", "#b"));
+
+        long start = System.nanoTime();
+        s.take();
+        s.take();
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertTrue(s.isEmpty());
+    }
+}
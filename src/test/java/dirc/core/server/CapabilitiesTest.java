@@ -0,0 +1,68 @@
+package dirc.core.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import dirc.core.message.IrcMessage;
+
+public class CapabilitiesTest {
+    private Capabilities caps = new Capabilities();
+
+    private static IrcMessage cap(String... parameters) {
+        return new IrcMessage("CAP", parameters);
+    }
+
+    @Test
+    public void should_request_wanted_capabilities_offered_across_listing() {
+        assertEquals("CAP LS 302\r\n", caps.start().serialize());
+
+        assertTrue(caps.handle(cap("*", "LS", "*", "multi-prefix sasl=PLAIN,EXTERNAL")).isEmpty());
+        List<IrcMessage> replies = caps.handle(cap("*", "LS", "server-time message-tags away-notify"));
+
+        assertEquals(1, replies.size());
+        assertEquals("CAP REQ :server-time message-tags\r\n", replies.get(0).serialize());
+        assertEquals("PLAIN,EXTERNAL", caps.getValue("sasl"));
+        assertEquals("", caps.getValue("away-notify"));
+
+        replies = caps.handle(cap("*", "ACK", "server-time message-tags"));
+
+        assertEquals(1, replies.size());
+        assertEquals("CAP END\r\n", replies.get(0).serialize());
+        assertTrue(caps.isEnabled("server-time"));
+        assertTrue(caps.isEnabled("message-tags"));
+        assertFalse(caps.isEnabled("sasl"));
+    }
+
+    @Test
+    public void should_end_when_nothing_wanted_is_offered_or_request_refused() {
+        caps.start();
+        assertEquals("CAP END\r\n", caps.handle(cap("*", "LS", "multi-prefix")).get(0).serialize());
+
+        caps.start();
+        caps.handle(cap("*", "LS", "server-time"));
+        List<IrcMessage> replies = caps.handle(cap("*", "NAK", "server-time"));
+        assertEquals("CAP END\r\n", replies.get(0).serialize());
+        assertFalse(caps.isEnabled("server-time"));
+    }
+
+    @Test
+    public void should_follow_capabilities_added_and_removed_after_registration() {
+        caps.start();
+        caps.handle(cap("*", "LS", "cap-notify"));
+        caps.handle(cap("*", "ACK", "cap-notify"));
+        caps.want("batch");
+
+        List<IrcMessage> replies = caps.handle(cap("nick", "NEW", "batch chghost"));
+        assertEquals(Arrays.asList("CAP REQ batch\r\n"), Arrays.asList(replies.get(0).serialize()));
+        assertTrue(caps.handle(cap("nick", "ACK", "batch")).isEmpty());
+        assertTrue(caps.isEnabled("batch"));
+
+        caps.handle(cap("nick", "DEL", "batch"));
+        assertFalse(caps.isEnabled("batch"));
+        assertNull(caps.getValue("batch"));
+    }
+}
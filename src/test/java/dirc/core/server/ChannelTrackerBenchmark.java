@@ -0,0 +1,76 @@
+package dirc.core.server;
+
+import java.util.Arrays;
+
+import dirc.core.message.IrcMessage;
+
+/**
+ * Measures channel state for large channels: the heap held by channels of 20000 members, most of whom share
+ * several channels, the time to take in their NAMES, and the time of a QUIT.
+ *
+ * Run with: java -cp target/classes:target/test-classes dirc.core.server.ChannelTrackerBenchmark
+ */
+public class ChannelTrackerBenchmark {
+    private static final int CHANNELS = 10;
+    private static final int MEMBERS = 20000;
+    private static final int USERS = 50000;
+    private static final int NAMES_PER_REPLY = 40;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        IrcMessage[][] names = names();
+        for(int round = 0; round < ROUNDS; round++) {
+            long before = usedHeap();
+            StubIrcConnection c = new StubIrcConnection();
+            IrcServer server = new IrcServer(c);
+            c.receive(new IrcMessage("001", "me", "Welcome"));
+            long start = System.nanoTime();
+            for(int i = 0; i < CHANNELS; i++) {
+                server.join("#c" + i);
+                for(IrcMessage reply : names[i]) {
+                    c.receive(reply);
+                }
+                c.receive(new IrcMessage("366", "me", "#c" + i, "End of /NAMES list."));
+            }
+            long namesNanos = System.nanoTime() - start;
+            long heap = usedHeap() - before;
+            int members = server.getChannel("#c0").getMemberCount();
+            start = System.nanoTime();
+            for(int u = 0; u < 1000; u++) {
+                c.receive(new IrcMessage(null, "user" + u, "u", "foo.net", "QUIT", Arrays.asList("gone"), null));
+            }
+            long quitNanos = (System.nanoTime() - start) / 1000;
+            System.out.printf("round %d: %d channels of %d members in %d KB, names %d ms, quit %d ns%n", round,
+                    CHANNELS, members, heap / 1024, namesNanos / 1000000, quitNanos);
+        }
+    }
+
+    /**
+     * Each channel lists a window of the users, so that neighbouring channels share most of their members
+     */
+    private static IrcMessage[][] names() {
+        IrcMessage[][] names = new IrcMessage[CHANNELS][];
+        for(int i = 0; i < CHANNELS; i++) {
+            names[i] = new IrcMessage[MEMBERS / NAMES_PER_REPLY];
+            int first = i * (USERS - MEMBERS) / CHANNELS;
+            for(int r = 0; r < names[i].length; r++) {
+                StringBuilder list = new StringBuilder();
+                for(int n = 0; n < NAMES_PER_REPLY; n++) {
+                    int user = first + r * NAMES_PER_REPLY + n;
+                    list.append(user % 50 == 0 ? "@" : user % 7 == 0 ? "+" : "").append("user").append(user)
+                            .append(' ');
+                }
+                names[i][r] = new IrcMessage("353", "me", "=", "#c" + i, list.toString().trim());
+            }
+        }
+        return names;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
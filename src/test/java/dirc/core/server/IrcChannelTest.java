@@ -0,0 +1,185 @@
+package dirc.core.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dirc.core.message.IrcMessage;
+import dirc.core.message.MessageTags;
+
+public class IrcChannelTest {
+    private StubIrcConnection c;
+    private IrcServer server;
+    private IrcChannel channel;
+
+    @Before
+    public void setUp() {
+        c = new StubIrcConnection();
+        server = new IrcServer(c);
+        c.receive(new IrcMessage("001", "me", "Welcome"));
+        channel = server.join("#c");
+        c.receive(from("me", "JOIN", "#c"));
+        c.receive(new IrcMessage("353", "me", "=", "#c", "me @joe +bob %ann!a@foo.net"));
+        c.receive(new IrcMessage("353", "me", "=", "#c", "@+eve"));
+        c.receive(new IrcMessage("366", "me", "#c", "End of /NAMES list."));
+    }
+
+    private static IrcMessage from(String nick, String command, String... parameters) {
+        return new IrcMessage(null, nick, "u", "foo.net", command, Arrays.asList(parameters), null);
+    }
+
+    @Test
+    public void should_list_members_with_prefixes() {
+        assertEquals("JOIN #c\r\n", c.sent.get(0).serialize());
+        assertSame(channel, server.getChannel("#c"));
+        assertEquals(5, channel.getMemberCount());
+        assertEquals(new HashSet<String>(Arrays.asList("me", "joe", "bob", "ann", "eve")),
+                new HashSet<String>(channel.getMembers()));
+        assertEquals("", channel.getPrefixes("me"));
+        assertEquals("@", channel.getPrefixes("joe"));
+        assertEquals("%", channel.getPrefixes("ann"));
+        assertEquals("@+", channel.getPrefixes("eve"));
+        assertNull(channel.getPrefixes("nobody"));
+    }
+
+    @Test
+    public void should_start_names_afresh_after_end_of_names() {
+        c.receive(new IrcMessage("353", "me", "=", "#c", "me joe"));
+        c.receive(new IrcMessage("366", "me", "#c", "End of /NAMES list."));
+
+        assertEquals(2, channel.getMemberCount());
+        assertFalse(channel.isMember("bob"));
+        assertEquals("", channel.getPrefixes("joe"));
+    }
+
+    @Test
+    public void should_follow_joins_parts_and_kicks() {
+        c.receive(from("zed", "JOIN", "#c"));
+        c.receive(from("bob", "PART", "#c", "bye"));
+        c.receive(from("joe", "KICK", "#c", "ann", "out"));
+
+        assertTrue(channel.isMember("zed"));
+        assertFalse(channel.isMember("bob"));
+        assertFalse(channel.isMember("ann"));
+        assertEquals(4, channel.getMemberCount());
+    }
+
+    @Test
+    public void should_remove_quitting_user_from_every_channel() {
+        IrcChannel other = server.join("#d");
+        c.receive(from("me", "JOIN", "#d"));
+        c.receive(new IrcMessage("353", "me", "=", "#d", "me joe"));
+        c.receive(new IrcMessage("366", "me", "#d", "End of /NAMES list."));
+
+        c.receive(from("joe", "QUIT", "gone"));
+
+        assertFalse(channel.isMember("joe"));
+        assertFalse(other.isMember("joe"));
+        assertEquals(4, channel.getMemberCount());
+        assertEquals(Collections.singletonList("me"), other.getMembers());
+    }
+
+    @Test
+    public void should_rename_user_in_every_channel() {
+        c.receive(from("joe", "NICK", "joseph"));
+
+        assertFalse(channel.isMember("joe"));
+        assertEquals("@", channel.getPrefixes("joseph"));
+    }
+
+    @Test
+    public void should_compare_names_by_casemapping() {
+        c.receive(from("JOE", "PART", "#C"));
+        c.receive(from("Bob", "NICK", "Bob[away]"));
+
+        assertFalse(channel.isMember("joe"));
+        assertTrue(channel.isMember("bob{AWAY}"));
+        assertTrue(channel.getMembers().contains("Bob[away]"));
+        assertSame(channel, server.getChannel("#C"));
+    }
+
+    @Test
+    public void should_follow_casemapping_of_server() {
+        c.receive(new IrcMessage("005", "me", "CASEMAPPING=ascii", "PREFIX=(ov)@+", "are supported by this server"));
+        c.receive(from("zed[1]", "JOIN", "#c"));
+        c.receive(from("joe", "MODE", "#c", "+v", "zed[1]"));
+
+        assertEquals(CaseMapping.Ascii, server.getSupport().getCaseMapping());
+        assertTrue(channel.isMember("ZED[1]"));
+        assertFalse(channel.isMember("zed{1}"));
+        assertEquals("+", channel.getPrefixes("zed[1]"));
+    }
+
+    @Test
+    public void should_follow_own_nickname() {
+        c.receive(from("me", "NICK", "myself"));
+        c.receive(from("myself", "PART", "#c"));
+
+        assertEquals("myself", server.getCurrentNickname());
+        assertNull(server.getChannel("#c"));
+        assertEquals(0, channel.getMemberCount());
+    }
+
+    @Test
+    public void should_apply_modes_with_arguments() {
+        c.receive(from("joe", "MODE", "#c", "+ntokl-v+b", "bob", "secret", "10", "bob", "*!*@spam"));
+
+        assertTrue(channel.hasMode('n'));
+        assertTrue(channel.hasMode('t'));
+        assertTrue(channel.hasMode('k'));
+        assertTrue(channel.hasMode('l'));
+        assertFalse(channel.hasMode('b'));
+        assertEquals("@", channel.getPrefixes("bob"));
+
+        c.receive(from("joe", "MODE", "#c", "-ol+i", "joe"));
+
+        assertEquals("", channel.getPrefixes("joe"));
+        assertFalse(channel.hasMode('l'));
+        assertTrue(channel.hasMode('i'));
+
+        c.receive(new IrcMessage("324", "me", "#c", "+s"));
+
+        assertTrue(channel.hasMode('s'));
+        assertFalse(channel.hasMode('n'));
+    }
+
+    @Test
+    public void should_follow_topic() {
+        c.receive(new IrcMessage("332", "me", "#c", "Welcome to #c"));
+        assertEquals("Welcome to #c", channel.getTopic());
+
+        c.receive(from("joe", "TOPIC", "#c", "New topic"));
+        assertEquals("New topic", channel.getTopic());
+
+        c.receive(from("joe", "TOPIC", "#c", ""));
+        assertNull(channel.getTopic());
+    }
+
+    @Test
+    public void should_ignore_replayed_history() {
+        c.receive(new IrcMessage(MessageTags.EMPTY, "foo.net", null, null, null, "BATCH",
+                Arrays.asList("+h1", "chathistory", "#c"), null));
+        c.receive(new IrcMessage(new MessageTags("batch=h1"), null, "old", "u", "foo.net", "JOIN",
+                Arrays.asList("#c"), null));
+        c.receive(new IrcMessage(new MessageTags("batch=h1"), null, "joe", "u", "foo.net", "QUIT",
+                Arrays.asList("gone"), null));
+        c.receive(new IrcMessage(MessageTags.EMPTY, "foo.net", null, null, null, "BATCH",
+                Arrays.asList("-h1"), null));
+
+        assertFalse(channel.isMember("old"));
+        assertTrue(channel.isMember("joe"));
+    }
+
+    @Test
+    public void should_forget_members_but_keep_channels_when_connection_lost() {
+        c.lose();
+
+        assertSame(channel, server.getChannel("#c"));
+        assertEquals(0, channel.getMemberCount());
+    }
+}
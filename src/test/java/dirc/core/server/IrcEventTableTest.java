@@ -0,0 +1,95 @@
+package dirc.core.server;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventFactory;
+import dirc.core.event.MotD;
+import dirc.core.event.PingEvent;
+import dirc.core.event.QuitEvent;
+import dirc.core.event.ServerEvent;
+import dirc.core.message.IrcMessage;
+
+public class IrcEventTableTest {
+    private final IrcEventTable table = IrcEventTable.defaults();
+
+    @Test
+    public void should_translate_verbs_in_any_case() {
+        assertTrue(table.translate(new IrcMessage("PING", "foo.net")) instanceof PingEvent);
+        assertTrue(table.translate(new IrcMessage("quit", "bye")) instanceof QuitEvent);
+    }
+
+    @Test
+    public void should_translate_numeric_replies() {
+        IrcEvent ev = table.translate(new IrcMessage("372", "nick", "- Welcome"));
+        assertTrue(ev instanceof MotD);
+        assertEquals("- Welcome", ev.getMessage());
+
+        ev = table.translate(new IrcMessage("005", "nick", "CHANTYPES=#", "NICKLEN=9", "are supported"));
+        assertEquals("nick", ev.getRecipient());
+        assertEquals("CHANTYPES=# NICKLEN=9 are supported", ev.getMessage());
+    }
+
+    @Test
+    public void should_translate_unknown_commands_with_all_parameters() {
+        IrcEvent ev = table.translate(new IrcMessage("999", "nick", "something"));
+        assertTrue(ev instanceof ServerEvent);
+        assertEquals("*", ev.getRecipient());
+        assertEquals("nick something", ev.getMessage());
+        assertSame(IrcEventTable.UNKNOWN, table.lookup("WALLOPS"));
+    }
+
+    @Test
+    public void should_use_registered_translators() {
+        table.register("433", IrcEventTable.LAST_PARAMETER);
+        table.register("wallops", IrcEventTable.JOINED_PARAMETERS);
+
+        assertEquals("Nickname is already in use",
+                table.translate(new IrcMessage("433", "*", "nick", "Nickname is already in use")).getMessage());
+        assertSame(IrcEventTable.JOINED_PARAMETERS, table.lookup("WALLOPS"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_numerics_out_of_range() {
+        table.register(1000, IrcEventTable.UNKNOWN);
+    }
+
+    @Test
+    public void should_refill_events_from_recycling_factory() {
+        IrcEventFactory events = IrcEventFactory.recycling();
+
+        IrcEvent first = table.translate(new IrcMessage("NOTICE", "#c", "one"), events);
+        assertTrue(first.isRecycled());
+        assertEquals("one", first.getMessage());
+        IrcEvent second = table.translate(new IrcMessage("NOTICE", "#d", "two"), events);
+        assertSame(first, second);
+        assertEquals("#d", second.getRecipient());
+        assertEquals("two", second.getMessage());
+        assertTrue(table.translate(new IrcMessage("372", "nick", "- Welcome"), events) instanceof MotD);
+        assertTrue(table.translate(new IrcMessage("QUIT", "bye"), events) instanceof QuitEvent);
+
+        IrcEvent allocated = table.translate(new IrcMessage("NOTICE", "#c", "one"));
+        assertFalse(allocated.isRecycled());
+        assertNotSame(allocated, table.translate(new IrcMessage("NOTICE", "#c", "one")));
+    }
+
+    @Test
+    public void should_upper_case_verbs_independently_of_default_locale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            IrcEventTable t = new IrcEventTable();
+            t.register("invite", IrcEventTable.LAST_PARAMETER);
+
+            assertSame(IrcEventTable.LAST_PARAMETER, t.lookup("INVITE"));
+            assertSame(IrcEventTable.LAST_PARAMETER, t.lookup("invite"));
+        }
+        finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package dirc.core.server;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dirc.core.event.BatchEvent;
+import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventListener;
+import dirc.core.message.IrcMessage;
+import dirc.core.message.MessageTags;
+
+public class IrcServerBatchTest {
+    private StubIrcConnection c;
+    private IrcServer server;
+    private List<IrcEvent> events;
+
+    @Before
+    public void setUp() {
+        c = new StubIrcConnection();
+        server = new IrcServer(c);
+        events = new ArrayList<IrcEvent>();
+        server.addEventListener(new IrcEventListener() {
+            public void handleEvent(IrcEvent ev) {
+                events.add(ev);
+            }
+        });
+    }
+
+    private static IrcMessage tagged(String tags, String command, String... parameters) {
+        return new IrcMessage(new MessageTags(tags), "foo.net", null, null, null, command,
+                Arrays.asList(parameters), null);
+    }
+
+    @Test
+    public void should_deliver_batch_as_one_event() {
+        c.receive(tagged("", "BATCH", "+h1", "chathistory", "#c"));
+        for(int i = 0; i < 1000; i++) {
+            c.receive(tagged("batch=h1;time=t" + i, "NOTICE", "#c", "line " + i));
+        }
+        c.receive(tagged("", "NOTICE", "#c", "live"));
+        assertEquals(1, events.size());
+        assertEquals("live", events.get(0).getMessage());
+
+        c.receive(tagged("", "BATCH", "-h1"));
+
+        assertEquals(2, events.size());
+        BatchEvent batch = (BatchEvent) events.get(1);
+        assertEquals("chathistory", batch.getType());
+        assertEquals("#c", batch.getRecipient());
+        assertEquals(Arrays.asList("#c"), batch.getParameters());
+        assertEquals(1000, batch.getEvents().size());
+        assertEquals("line 999", batch.getEvents().get(999).getMessage());
+    }
+
+    @Test
+    public void should_nest_batches() {
+        c.receive(tagged("", "BATCH", "+outer", "example/outer"));
+        c.receive(tagged("batch=outer", "BATCH", "+inner", "netsplit", "a.net", "b.net"));
+        c.receive(tagged("batch=inner", "NOTICE", "*", "split"));
+        c.receive(tagged("batch=outer", "NOTICE", "*", "outer"));
+        c.receive(tagged("", "BATCH", "-inner"));
+        assertTrue(events.isEmpty());
+
+        c.receive(tagged("", "BATCH", "-outer"));
+
+        assertEquals(1, events.size());
+        BatchEvent outer = (BatchEvent) events.get(0);
+        assertEquals(2, outer.getEvents().size());
+        assertEquals("outer", outer.getEvents().get(0).getMessage());
+        BatchEvent inner = (BatchEvent) outer.getEvents().get(1);
+        assertEquals(Arrays.asList("a.net", "b.net"), inner.getParameters());
+        assertEquals("split", inner.getEvents().get(0).getMessage());
+        assertEquals(2, BatchEvent.expand(events).size());
+    }
+
+    @Test
+    public void should_request_history_since_last_message_after_reconnect() throws Exception {
+        server.setReconnectPolicy(new ReconnectPolicy(0, 0, TimeUnit.MILLISECONDS));
+        server.connect();
+        server.join("#c");
+        negotiate();
+        c.receive(tagged("time=2021-01-01T00:00:00.000Z", "NOTICE", "#c", "before"));
+        c.sent.clear();
+
+        c.lose();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(c.sent.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals("CAP LS 302\r\n", c.sent.get(0).serialize());
+        negotiate();
+        c.sent.clear();
+        c.receive(new IrcMessage("001", "nick", "Welcome"));
+
+        assertEquals("JOIN #c\r\n", c.sent.get(0).serialize());
+        assertEquals("CHATHISTORY AFTER #c timestamp=2021-01-01T00:00:00.000Z 500\r\n", c.sent.get(1).serialize());
+    }
+
+    private void negotiate() {
+        c.receive(new IrcMessage("CAP", "*", "LS", "batch server-time draft/chathistory"));
+        c.receive(new IrcMessage("CAP", "*", "ACK", "batch server-time draft/chathistory"));
+    }
+}
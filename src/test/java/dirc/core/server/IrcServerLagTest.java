@@ -0,0 +1,69 @@
+package dirc.core.server;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventListener;
+import dirc.core.message.IrcMessage;
+
+public class IrcServerLagTest {
+    @Test
+    public void should_answer_server_ping_with_pong() {
+        StubIrcConnection c = new StubIrcConnection();
+        IrcServer server = new IrcServer(c);
+
+        c.receive(new IrcMessage("PING", "foo.net"));
+
+        assertEquals(1, c.sent.size());
+        assertEquals("PONG", c.sent.get(0).getCommand());
+        assertEquals("foo.net", c.sent.get(0).getParameter(0));
+        assertEquals(1, server.getLagMetrics().getServerPings());
+    }
+
+    @Test
+    public void should_record_lag_from_probe_reply_without_firing_event() throws InterruptedException {
+        StubIrcConnection c = new StubIrcConnection();
+        IrcServer server = new IrcServer(c);
+        final List<IrcEvent> events = new ArrayList<IrcEvent>();
+        server.addEventListener(new IrcEventListener() {
+            public void handleEvent(IrcEvent ev) {
+                events.add(ev);
+            }
+        });
+
+        server.probeLag();
+        assertEquals(-1, server.getLagMetrics().getLastLagNanos());
+        Thread.sleep(5);
+        IrcMessage probe = c.sent.get(0);
+        assertEquals("PING", probe.getCommand());
+        c.receive(new IrcMessage("PONG", "foo.net", probe.getLastParameter()));
+
+        assertTrue(events.isEmpty());
+        assertEquals(1, server.getLagMetrics().getProbes());
+        assertEquals(1, server.getLagMetrics().getReplies());
+        assertTrue(server.getLagMetrics().getLastLagNanos() >= 5000000);
+        assertEquals(server.getLagMetrics().getLastLagNanos(), server.getLagMetrics().getMaxLagNanos());
+    }
+
+    @Test
+    public void should_deliver_other_pongs_as_events() {
+        StubIrcConnection c = new StubIrcConnection();
+        IrcServer server = new IrcServer(c);
+        final List<IrcEvent> events = new ArrayList<IrcEvent>();
+        server.addEventListener(new IrcEventListener() {
+            public void handleEvent(IrcEvent ev) {
+                events.add(ev);
+            }
+        });
+
+        c.receive(new IrcMessage("PONG", "foo.net", "hello"));
+
+        assertEquals(1, events.size());
+        assertEquals(0, server.getLagMetrics().getReplies());
+    }
+}
@@ -0,0 +1,172 @@
+package dirc.core.server;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import dirc.core.config.IrcServerInfo;
+import dirc.core.message.IrcMessage;
+import dirc.core.net.ConnectLatencyHistory;
+import dirc.core.net.ConnectionRace;
+import dirc.core.net.FakeIrcServer;
+import dirc.core.net.ThreadedSocketIrcConnection;
+
+public class IrcServerReconnectTest {
+    private FakeIrcServer fake;
+    private IrcServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        fake = new FakeIrcServer(":irc.example.org 001 nick :Welcome\r\n");
+        server = new IrcServer(new ThreadedSocketIrcConnection("localhost", fake.getPort(),
+                Charset.forName("UTF-8")));
+        server.setReconnectPolicy(new ReconnectPolicy(10, 50, TimeUnit.MILLISECONDS));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        fake.close();
+    }
+
+    @Test
+    public void should_register_and_rejoin_after_connection_is_lost() throws Exception {
+        server.connect();
+        server.nickname("nick");
+        server.username("user", "Real Name");
+        server.join("#one");
+        server.join("#two");
+        assertEquals("CAP LS 302", next());
+        assertEquals("NICK nick", next());
+        assertEquals("USER user 0 * :Real Name", next());
+        assertEquals("JOIN #one", next());
+        assertEquals("JOIN #two", next());
+
+        fake.disconnectAll();
+
+        // The fake welcomes as soon as it accepts, so the rejoin may overtake registration
+        Set<String> lines = new HashSet<String>();
+        String join = null;
+        for(int i = 0; i < 4; i++) {
+            String line = next();
+            if(line != null && line.startsWith("JOIN ")) {
+                join = line;
+            }
+            else {
+                lines.add(line);
+            }
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("CAP LS 302", "NICK nick", "USER user 0 * :Real Name")),
+                lines);
+        assertNotNull(join);
+        assertEquals(new HashSet<String>(Arrays.asList("#one", "#two")),
+                new HashSet<String>(Arrays.asList(join.substring(5).split(","))));
+
+        ReconnectMetrics metrics = server.getReconnectMetrics();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(metrics.getReconnects() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, metrics.getDisconnects());
+        assertEquals(1, metrics.getReconnects());
+        assertFalse(metrics.isDown());
+        assertTrue(metrics.getLastRecoveryNanos() > 0);
+    }
+
+    @Test
+    public void should_fail_over_to_another_server_of_the_network() throws Exception {
+        FakeIrcServer other = new FakeIrcServer(":other.example.org 001 nick :Welcome\r\n");
+        try {
+            final List<IrcServerInfo> network = Arrays.asList(
+                    new IrcServerInfo("localhost", fake.getPort(), Charset.forName("UTF-8")),
+                    new IrcServerInfo("localhost", other.getPort(), Charset.forName("UTF-8")));
+            final ConnectLatencyHistory history = new ConnectLatencyHistory();
+            server.setConnector(new Callable<SocketChannel>() {
+                public SocketChannel call() throws IOException {
+                    return new ConnectionRace(network, history, 50, 5000, TimeUnit.MILLISECONDS).run().getChannel();
+                }
+            });
+            server.connect();
+            server.nickname("nick");
+            assertEquals("CAP LS 302", next());
+            assertEquals("NICK nick", next());
+
+            // The first server goes down for good
+            fake.close();
+
+            Set<String> lines = new HashSet<String>();
+            for(int i = 0; i < 2; i++) {
+                lines.add(other.getReceived().poll(10, TimeUnit.SECONDS));
+            }
+            assertEquals(new HashSet<String>(Arrays.asList("CAP LS 302", "NICK nick")), lines);
+            assertTrue(history.get(network.get(0)).getFailures() > 0);
+        }
+        finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void should_not_reconnect_after_close() throws Exception {
+        server.connect();
+        server.nickname("nick");
+        assertEquals("CAP LS 302", next());
+        assertEquals("NICK nick", next());
+
+        server.close();
+
+        assertNull(fake.getReceived().poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, server.getReconnectMetrics().getDisconnects());
+    }
+
+    @Test
+    public void should_join_channels_in_lines_within_limit() {
+        List<String> channelnames = new ArrayList<String>();
+        for(int i = 0; i < 100; i++) {
+            channelnames.add("#channel-number-" + i);
+        }
+
+        List<IrcMessage> joins = IrcServer.joinMessages(channelnames, IrcServer.MAX_LINE_LENGTH);
+
+        List<String> joined = new ArrayList<String>();
+        for(IrcMessage join : joins) {
+            assertEquals("JOIN", join.getCommand());
+            String list = join.getLastParameter();
+            assertTrue(list.length() + 7 <= IrcServer.MAX_LINE_LENGTH);
+            joined.addAll(Arrays.asList(list.split(",")));
+        }
+        assertEquals(channelnames, joined);
+        assertTrue(joins.size() < 10);
+    }
+
+    @Test
+    public void should_back_off_exponentially_up_to_limit() {
+        ReconnectPolicy policy = new ReconnectPolicy(1, 60, TimeUnit.SECONDS);
+
+        assertEquals(TimeUnit.SECONDS.toNanos(1), policy.limitNanos(0));
+        assertEquals(TimeUnit.SECONDS.toNanos(8), policy.limitNanos(3));
+        assertEquals(TimeUnit.SECONDS.toNanos(60), policy.limitNanos(6));
+        assertEquals(TimeUnit.SECONDS.toNanos(60), policy.limitNanos(100));
+        for(int i = 0; i < 100; i++) {
+            long delay = policy.delayNanos(3);
+            assertTrue(delay >= 0 && delay <= TimeUnit.SECONDS.toNanos(8));
+        }
+    }
+
+    private String next() throws InterruptedException {
+        return fake.getReceived().poll(10, TimeUnit.SECONDS);
+    }
+}
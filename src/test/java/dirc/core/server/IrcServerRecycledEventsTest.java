@@ -0,0 +1,90 @@
+package dirc.core.server;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventFactory;
+import dirc.core.event.IrcEventListener;
+import dirc.core.message.IrcMessage;
+
+public class IrcServerRecycledEventsTest {
+    private StubIrcConnection c;
+    private IrcServer server;
+    private List<IrcEvent> seen;
+    private List<String> messages;
+
+    @Before
+    public void setUp() {
+        c = new StubIrcConnection();
+        server = new IrcServer(c);
+        seen = new ArrayList<IrcEvent>();
+        messages = new ArrayList<String>();
+        server.addRecycledEventListener(new IrcEventListener() {
+            public void handleEvent(IrcEvent ev) {
+                seen.add(ev);
+                messages.add(ev.getMessage());
+            }
+        });
+    }
+
+    @Test
+    public void should_recycle_events_when_every_listener_agrees() {
+        c.receive(new IrcMessage("NOTICE", "#c", "one"));
+        c.receive(new IrcMessage("NOTICE", "#c", "two"));
+
+        assertEquals(2, messages.size());
+        assertEquals("one", messages.get(0));
+        assertEquals("two", messages.get(1));
+        assertSame(seen.get(0), seen.get(1));
+        assertTrue(seen.get(0).isRecycled());
+    }
+
+    @Test
+    public void should_create_events_while_a_listener_may_keep_them() {
+        final List<IrcEvent> kept = new ArrayList<IrcEvent>();
+        server.addEventListener(new IrcEventListener() {
+            public void handleEvent(IrcEvent ev) {
+                kept.add(ev);
+            }
+        });
+
+        c.receive(new IrcMessage("NOTICE", "#c", "one"));
+        c.receive(new IrcMessage("NOTICE", "#c", "two"));
+
+        assertEquals("one", kept.get(0).getMessage());
+        assertEquals("two", kept.get(1).getMessage());
+        assertFalse(kept.get(0).isRecycled());
+        assertSame(kept.get(1), seen.get(1));
+    }
+
+    @Test
+    public void should_not_hand_recycled_event_to_listener_added_during_message() {
+        final List<IrcEvent> kept = new ArrayList<IrcEvent>();
+        final IrcEventListener keeping = new IrcEventListener() {
+            public void handleEvent(IrcEvent ev) {
+                kept.add(ev);
+            }
+        };
+        // Adds the listener between the decision to recycle and the delivery, as another thread could
+        server.registerTranslator("TOPIC", new RecyclingEventTranslator() {
+            public IrcEvent translate(IrcMessage message, IrcEventFactory events) {
+                server.addEventListener(keeping);
+                return events.serverEvent(message.getParameter(0), message.getLastParameter());
+            }
+        });
+
+        c.receive(new IrcMessage("TOPIC", "#c", "one"));
+        c.receive(new IrcMessage("NOTICE", "#c", "two"));
+
+        assertTrue(seen.get(0).isRecycled());
+        assertEquals(1, kept.size());
+        assertEquals("two", kept.get(0).getMessage());
+        assertFalse(kept.get(0).isRecycled());
+    }
+}
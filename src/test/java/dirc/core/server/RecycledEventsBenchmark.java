@@ -0,0 +1,66 @@
+package dirc.core.server;
+
+import java.lang.management.ManagementFactory;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.event.IrcEventListener;
+import dirc.core.message.IrcMessage;
+
+/**
+ * Measures the time and the bytes allocated on the receiving thread to deliver server replies, notices and lines of
+ * the message of the day to one listener, which either may keep its events or is handed recycled ones. The messages
+ * are created up front, so only the translation and delivery are counted.
+ *
+ * Run with: java -cp target/classes:target/test-classes dirc.core.server.RecycledEventsBenchmark
+ */
+public class RecycledEventsBenchmark {
+    private static final int MESSAGES = 1000000;
+    private static final int ROUNDS = 10;
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        IrcMessage[] messages = new IrcMessage[1000];
+        for(int i = 0; i < messages.length; i++) {
+            switch(i % 3) {
+                case 0:
+                    messages[i] = new IrcMessage("NOTICE", "#c", "notice " + i);
+                    break;
+                case 1:
+                    messages[i] = new IrcMessage("372", "nick", "- line " + i);
+                    break;
+                default:
+                    messages[i] = new IrcMessage("251", "nick", "There are " + i + " users");
+            }
+        }
+        IrcEventListener listener = new IrcEventListener() {
+            public void handleEvent(IrcEvent ev) {
+                sink += ev.getMessage().length();
+            }
+        };
+        for(int round = 0; round < ROUNDS; round++) {
+            StubIrcConnection kept = new StubIrcConnection();
+            new IrcServer(kept).addEventListener(listener);
+            StubIrcConnection recycled = new StubIrcConnection();
+            new IrcServer(recycled).addRecycledEventListener(listener);
+            System.out.printf("round %d: created %s | recycled %s%n", round, run(kept, messages),
+                    run(recycled, messages));
+        }
+    }
+
+    private static String run(StubIrcConnection c, IrcMessage[] messages) {
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for(int i = 0; i < MESSAGES; i++) {
+            c.receive(messages[i % messages.length]);
+        }
+        long elapsed = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+        return String.format("%d ns/msg, %d bytes/msg", elapsed / MESSAGES, bytes / MESSAGES);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
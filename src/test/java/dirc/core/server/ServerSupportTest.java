@@ -0,0 +1,93 @@
+package dirc.core.server;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dirc.core.message.IrcMessage;
+
+public class ServerSupportTest {
+    private static IrcMessage isupport(String... tokens) {
+        String[] parameters = new String[tokens.length + 2];
+        parameters[0] = "me";
+        System.arraycopy(tokens, 0, parameters, 1, tokens.length);
+        parameters[tokens.length + 1] = "are supported by this server";
+        return new IrcMessage("005", parameters);
+    }
+
+    @Test
+    public void should_default_to_rfc1459() {
+        ServerSupport support = new ServerSupport();
+
+        assertEquals(CaseMapping.Rfc1459, support.getCaseMapping());
+        assertEquals("qaohv", support.getPrefixModes());
+        assertEquals("~&@%+", support.getPrefixSymbols());
+        assertEquals("beI", support.getListModes());
+        assertEquals("", support.getFlagModes());
+        assertFalse(support.isSupported("NETWORK"));
+    }
+
+    @Test
+    public void should_parse_tokens() {
+        ServerSupport support = new ServerSupport();
+
+        support.handle(isupport("CASEMAPPING=ascii", "PREFIX=(ov)@+", "CHANMODES=b,k,l,imnpst", "CHANTYPES=#",
+                "NETWORK=Example\\x20Net", "NICKLEN=30", "EXCEPTS"));
+
+        assertEquals(CaseMapping.Ascii, support.getCaseMapping());
+        assertEquals("ov", support.getPrefixModes());
+        assertEquals("@+", support.getPrefixSymbols());
+        assertEquals("b", support.getListModes());
+        assertEquals("k", support.getArgumentModes());
+        assertEquals("l", support.getSetArgumentModes());
+        assertEquals("imnpst", support.getFlagModes());
+        assertTrue(support.isChannel("#c"));
+        assertFalse(support.isChannel("&c"));
+        assertEquals("Example Net", support.getNetwork());
+        assertEquals(30, support.getNickLength());
+        assertEquals("", support.getValue("EXCEPTS"));
+    }
+
+    @Test
+    public void should_go_back_to_default_when_token_removed() {
+        ServerSupport support = new ServerSupport();
+        support.handle(isupport("CASEMAPPING=ascii", "NICKLEN=30"));
+
+        support.handle(isupport("-CASEMAPPING", "-NICKLEN"));
+
+        assertEquals(CaseMapping.Rfc1459, support.getCaseMapping());
+        assertEquals(9, support.getNickLength());
+        assertFalse(support.isSupported("CASEMAPPING"));
+    }
+
+    @Test
+    public void should_fold_names_by_casemapping() {
+        assertTrue(CaseMapping.Rfc1459.equalsIgnoreCase("Joe[Away]^", "joe{away}~"));
+        assertFalse(CaseMapping.StrictRfc1459.equalsIgnoreCase("joe^", "joe~"));
+        assertTrue(CaseMapping.StrictRfc1459.equalsIgnoreCase("JOE\\", "joe|"));
+        assertFalse(CaseMapping.Ascii.equalsIgnoreCase("joe[", "joe{"));
+        assertEquals("joe{}", CaseMapping.Rfc1459.canonical("JOE[]"));
+        String folded = "joe";
+        assertSame(folded, CaseMapping.Rfc1459.canonical(folded));
+        assertEquals(CaseMapping.Rfc1459, CaseMapping.forToken("rfc7613"));
+    }
+
+    @Test
+    public void should_look_up_names_in_any_case() {
+        NameTable table = new NameTable(4, CaseMapping.Rfc1459);
+        for(int i = 0; i < 100; i++) {
+            table.put("Nick[" + i + "]", i);
+        }
+
+        assertEquals(42, table.get("nick{42}"));
+        assertEquals(42, table.get("x NICK[42] y", 2, 10));
+
+        for(int i = 0; i < 100; i += 2) {
+            table.remove("NICK{" + i + "}");
+        }
+
+        assertEquals(50, table.size());
+        assertEquals(-1, table.get("nick[42]"));
+        assertEquals(43, table.get("nick[43]"));
+    }
+}
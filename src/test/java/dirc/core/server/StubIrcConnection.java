@@ -0,0 +1,60 @@
+package dirc.core.server;
+
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import dirc.core.message.IrcMessage;
+import dirc.core.message.IrcMessageListener;
+import dirc.core.net.IrcConnection;
+import dirc.core.net.IrcConnectionListener;
+import dirc.core.net.WriteMetrics;
+
+/**
+ * Connection which records what is sent and lets the test deliver messages
+ */
+class StubIrcConnection implements IrcConnection {
+    private final List<IrcMessageListener> listeners = new ArrayList<IrcMessageListener>();
+    private final List<IrcConnectionListener> connectionListeners = new ArrayList<IrcConnectionListener>();
+    // Sent to by the reconnecting thread as well as the test
+    final List<IrcMessage> sent = Collections.synchronizedList(new ArrayList<IrcMessage>());
+
+    public void addMessageListener(IrcMessageListener listener) {
+        listeners.add(listener);
+    }
+
+    public void addConnectionListener(IrcConnectionListener listener) {
+        connectionListeners.add(listener);
+    }
+
+    public void connect() {
+    }
+
+    public void connect(SocketChannel channel) {
+    }
+
+    public void close() {
+    }
+
+    public boolean sendMessage(IrcMessage message) {
+        sent.add(message);
+        return true;
+    }
+
+    public WriteMetrics getWriteMetrics() {
+        return new WriteMetrics();
+    }
+
+    void lose() {
+        for (IrcConnectionListener l : connectionListeners) {
+            l.connectionLost(null);
+        }
+    }
+
+    void receive(IrcMessage message) {
+        for (IrcMessageListener l : listeners) {
+            l.receivedMessage(message);
+        }
+    }
+}
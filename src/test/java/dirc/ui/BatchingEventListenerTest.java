@@ -0,0 +1,65 @@
+package dirc.ui;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import org.junit.Test;
+
+import dirc.core.event.ServerEvent;
+
+public class BatchingEventListenerTest {
+    @Test
+    public void should_add_burst_to_model_in_few_batches_on_event_dispatch_thread() throws Exception {
+        final IrcTableModel model = new IrcTableModel("me");
+        final List<Integer> inserts = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Boolean> onEdt = Collections.synchronizedList(new ArrayList<Boolean>());
+        model.addTableModelListener(new TableModelListener() {
+            public void tableChanged(TableModelEvent e) {
+                inserts.add(e.getLastRow() - e.getFirstRow() + 1);
+                onEdt.add(SwingUtilities.isEventDispatchThread());
+            }
+        });
+        BatchingEventListener listener = new BatchingEventListener(model, 50);
+
+        for(int i = 0; i < 1000; i++) {
+            listener.handleEvent(new ServerEvent("*", Integer.toString(i)));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(rowCount(model) < 1000 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1000, rowCount(model));
+        assertTrue(inserts.toString(), inserts.size() < 10);
+        assertFalse(onEdt.contains(false));
+        assertEquals("999", valueAt(model, 999));
+    }
+
+    private static int rowCount(final IrcTableModel model) throws Exception {
+        final int[] count = new int[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                count[0] = model.getRowCount();
+            }
+        });
+        return count[0];
+    }
+
+    private static String valueAt(final IrcTableModel model, final int row) throws Exception {
+        final String[] value = new String[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                value[0] = model.getText(row);
+            }
+        });
+        return value[0];
+    }
+}
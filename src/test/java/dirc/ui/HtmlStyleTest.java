@@ -0,0 +1,45 @@
+package dirc.ui;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import dirc.core.message.TextStyle;
+import dirc.core.message.TextStyle.Color;
+import dirc.core.message.TextStyle.Style;
+
+public class HtmlStyleTest {
+    @Test
+    public void should_render_plain_text() {
+        assertEquals("<html>Hello World", HtmlStyle.toHtml("Hello World", Collections.<TextStyle> emptyList()));
+    }
+
+    @Test
+    public void should_nest_tags_of_each_run() {
+        String html = HtmlStyle.toHtml("Hello World, bye", Arrays.asList(
+                new TextStyle(0, 5).toggle(Style.Bold).setColors(Color.Blue, Color.LightCyan),
+                new TextStyle(6, 11).toggle(Style.Underlined).toggle(Style.Italic)));
+
+        assertEquals("<html><font style='color: #0000aa;background: #55ffff;' ><b>Hello</b></font> " +
+                "<u><i>World</i></u>, bye", html);
+    }
+
+    @Test
+    public void should_leave_out_missing_colors() {
+        String html = HtmlStyle.toHtml("red", Arrays.asList(new TextStyle(0, 3).setColors(Color.Red, null)));
+
+        assertEquals("<html><font style='color: #aa0000;' >red</font>", html);
+    }
+
+    @Test
+    public void should_render_extended_and_hex_colors() {
+        String html = HtmlStyle.toHtml("ab", Arrays.asList(new TextStyle(0, 1).setColors(52, TextStyle.RGB | 0x0a0b0c),
+                new TextStyle(1, 2).setColors(TextStyle.DEFAULT_COLOR, 98)));
+
+        assertEquals("<html><font style='color: #ff0000;background: #0a0b0c;' >a</font>" +
+                "<font style='background: #ffffff;' >b</font>", html);
+    }
+}
@@ -0,0 +1,40 @@
+package dirc.ui;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dirc.core.config.IrcNetwork;
+
+public class IrcConnectionTreeModelTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_keep_scrollback_of_each_connection_apart() throws IOException {
+        File dir = folder.newFolder();
+        IrcConnectionTreeModel model = new IrcConnectionTreeModel();
+        model.setScrollbackDirectory(dir, 100);
+        IrcNetwork network = IrcNetwork.Builder.with().nickname("joe|away")
+                .addServer("irc.example.org", 6667, Charset.forName("UTF-8")).build();
+
+        Scrollback first = model.openScrollback(network);
+        Scrollback second = model.openScrollback(network);
+        first.add("*", "first", null);
+        second.add("*", "second", null);
+
+        assertEquals(100, first.capacity());
+        assertEquals("first", first.getText(0));
+        assertEquals("second", second.getText(0));
+        assertTrue(new File(dir, "irc.example.org-joe_away").isDirectory());
+        assertTrue(new File(dir, "irc.example.org-joe_away-2").isDirectory());
+        first.close();
+        second.close();
+    }
+}
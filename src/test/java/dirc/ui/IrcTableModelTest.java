@@ -0,0 +1,199 @@
+package dirc.ui;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dirc.core.event.BatchEvent;
+import dirc.core.event.IrcEvent;
+import dirc.core.event.NoticeEvent;
+import dirc.core.event.ServerEvent;
+import dirc.core.message.TextStyle;
+
+public class IrcTableModelTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<IrcEvent> events(int from, int to) {
+        List<IrcEvent> events = new ArrayList<IrcEvent>();
+        for(int i = from; i < to; i++) {
+            events.add(new ServerEvent("*", Integer.toString(i)));
+        }
+        return events;
+    }
+
+    private static List<String> changes(IrcTableModel model) {
+        final List<String> changes = new ArrayList<String>();
+        model.addTableModelListener(new TableModelListener() {
+            public void tableChanged(TableModelEvent e) {
+                String type = e.getType() == TableModelEvent.INSERT ? "+" :
+                        e.getType() == TableModelEvent.DELETE ? "-" : "~";
+                changes.add(type + e.getFirstRow() + ".." + e.getLastRow());
+            }
+        });
+        return changes;
+    }
+
+    @Test
+    public void should_insert_batch_with_one_notification() {
+        IrcTableModel model = new IrcTableModel("me");
+        List<String> changes = changes(model);
+
+        model.addEvents(events(0, 100));
+        model.addEvents(events(100, 150));
+
+        assertEquals("[+0..99, +100..149]", changes.toString());
+        assertEquals(150, model.getRowCount());
+        assertEquals("149", model.getText(149));
+    }
+
+    @Test
+    public void should_evict_oldest_rows_past_scrollback_limit() {
+        final List<String> spilled = new ArrayList<String>();
+        IrcTableModel model = new IrcTableModel("me", 10, new ScrollbackSpill() {
+            public void spill(String recipient, String message) {
+                spilled.add(message);
+            }
+
+            public void close() {
+            }
+        });
+        List<String> changes = changes(model);
+
+        model.addEvents(events(0, 8));
+        model.addEvents(events(8, 13));
+
+        assertEquals("[+0..7, -0..2, +5..9]", changes.toString());
+        assertEquals(10, model.getRowCount());
+        assertEquals("3", model.getText(0));
+        assertEquals("12", model.getText(9));
+        assertEquals("[0, 1, 2]", spilled.toString());
+    }
+
+    @Test
+    public void should_keep_only_tail_of_batch_larger_than_scrollback() {
+        IrcTableModel model = new IrcTableModel("me", 10, null);
+        model.addEvents(events(0, 5));
+        List<String> changes = changes(model);
+
+        model.addEvents(events(5, 30));
+
+        assertEquals("[-0..4, +0..9]", changes.toString());
+        assertEquals("20", model.getText(0));
+        assertEquals("29", model.getText(9));
+    }
+
+    @Test
+    public void should_spill_rows_of_batch_larger_than_scrollback() {
+        final List<String> spilled = new ArrayList<String>();
+        IrcTableModel model = new IrcTableModel("me", 10, new ScrollbackSpill() {
+            public void spill(String recipient, String message) {
+                spilled.add(message);
+            }
+
+            public void close() {
+            }
+        });
+        model.addEvents(events(0, 5));
+        List<String> changes = changes(model);
+
+        model.addEvents(events(5, 30));
+
+        assertEquals("[-0..4, +0..9]", changes.toString());
+        assertEquals(20, spilled.size());
+        for(int i = 0; i < 20; i++) {
+            assertEquals(Integer.toString(i), spilled.get(i));
+        }
+        assertEquals("20", model.getText(0));
+    }
+
+    @Test
+    public void should_flush_file_spill_when_closed() throws IOException {
+        File file = folder.newFile();
+        IrcTableModel model = new IrcTableModel("me", 2, new FileScrollbackSpill(file));
+        model.addEvents(Arrays.<IrcEvent> asList(new ServerEvent(null, "0"), new ServerEvent("#c", "1"),
+                new ServerEvent("#c", "2"), new ServerEvent("#c", "3")));
+
+        model.close();
+
+        assertEquals(Arrays.asList("\t0", "#c\t1"), Files.readAllLines(file.toPath(), Charset.forName("UTF-8")));
+    }
+
+    @Test
+    public void should_ignore_events_after_close() {
+        IrcTableModel model = new IrcTableModel("me");
+        model.addEvents(events(0, 5));
+
+        model.close();
+        model.addEvents(events(5, 10));
+
+        assertEquals(5, model.getRowCount());
+    }
+
+    @Test
+    public void should_render_styled_rows_after_eviction() {
+        IrcTableModel model = new IrcTableModel("me", 2, null);
+        List<IrcEvent> events = new ArrayList<IrcEvent>();
+        for(int i = 0; i < 3; i++) {
+            events.add(new NoticeEvent("*", "notice " + i, Collections.<TextStyle> emptyList()));
+        }
+
+        model.addEvents(events.subList(0, 2));
+        assertEquals("<html>notice 0", model.getHtml(0));
+        assertEquals("<html>notice 1", model.getHtml(1));
+        model.addEvents(events.subList(2, 3));
+
+        assertEquals("<html>notice 1", model.getHtml(0));
+        assertEquals("<html>notice 2", model.getHtml(1));
+    }
+
+    @Test
+    public void should_render_message_value_only_as_text() {
+        IrcTableModel model = new IrcTableModel("me", 2, null);
+        model.addEvents(Arrays.<IrcEvent> asList(
+                new NoticeEvent("*", "notice 0", Collections.<TextStyle> emptyList()), new ServerEvent("*", "1")));
+
+        Object first = model.getValueAt(0, 1);
+        Object second = model.getValueAt(1, 1);
+        assertFalse(first instanceof String);
+        assertEquals("<html>notice 0", first.toString());
+
+        model.addEvents(events(2, 3));
+
+        assertEquals("", first.toString());
+        assertEquals("1", second.toString());
+    }
+
+    @Test
+    public void should_insert_history_batch_with_one_notification() {
+        IrcTableModel model = new IrcTableModel("me");
+        List<String> changes = changes(model);
+        List<IrcEvent> nested = new ArrayList<IrcEvent>();
+        nested.add(new BatchEvent("#c", "inner", "netsplit", Collections.<String> emptyList(), events(2, 4)));
+        List<IrcEvent> history = events(0, 2);
+        history.add(new BatchEvent("*", "b", "netjoin", Collections.<String> emptyList(), nested));
+        history.addAll(events(4, 1000));
+
+        model.addEvents(Collections.<IrcEvent> singletonList(
+                new BatchEvent("#c", "a", "chathistory", Arrays.asList("#c"), history)));
+
+        assertEquals("[+0..999]", changes.toString());
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(Integer.toString(i), model.getText(i));
+        }
+    }
+}
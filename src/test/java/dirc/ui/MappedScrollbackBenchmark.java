@@ -0,0 +1,64 @@
+package dirc.ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Writes N rows of history to a {@link MappedScrollback} in a temporary directory, then measures how long it takes
+ * to reopen it, the heap held by the open scrollback, and the time to read a screen of rows at random positions.
+ * 
+ * Run with: java -cp target/classes:target/test-classes dirc.ui.MappedScrollbackBenchmark [N]
+ */
+public class MappedScrollbackBenchmark {
+    private static final int SCREEN = 40;
+
+    public static void main(String[] args) throws IOException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        File dir = File.createTempFile("scrollback", "");
+        dir.delete();
+
+        long start = System.nanoTime();
+        MappedScrollback s = new MappedScrollback(dir);
+        for(int i = 0; i < n; i++) {
+            s.add("#channel", "<nick" + (i % 100) + "> the quick brown fox jumps over the lazy dog " + i, null);
+        }
+        s.close();
+        System.out.printf("write: %d rows in %d ms%n", n, (System.nanoTime() - start) / 1000000);
+
+        long heapBefore = usedHeap();
+        start = System.nanoTime();
+        s = new MappedScrollback(dir);
+        long open = System.nanoTime() - start;
+        long heapAfter = usedHeap();
+        System.out.printf("open: %d rows in %.2f ms, %d KiB heap%n", s.size(), open / 1e6,
+                (heapAfter - heapBefore) / 1024);
+
+        Random random = new Random(1);
+        int screens = 10000;
+        long chars = 0;
+        start = System.nanoTime();
+        for(int i = 0; i < screens; i++) {
+            int top = random.nextInt(s.size() - SCREEN);
+            for(int r = top; r < top + SCREEN; r++) {
+                chars += s.getRecipient(r).length() + s.getText(r).length();
+            }
+        }
+        System.out.printf("read: %d ns per screen of %d rows (%d chars)%n",
+                (System.nanoTime() - start) / screens, SCREEN, chars);
+
+        s.close();
+        for(File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
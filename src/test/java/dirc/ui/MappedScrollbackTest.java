@@ -0,0 +1,145 @@
+package dirc.ui;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dirc.core.message.TextStyle;
+import dirc.core.message.TextStyle.Color;
+import dirc.core.message.TextStyle.Style;
+
+public class MappedScrollbackTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_read_back_rows_with_styles() throws IOException {
+        MappedScrollback s = new MappedScrollback(folder.newFolder());
+        s.add("*", "plain", null);
+        s.add("nick", "H\u00e9llo World", Arrays.asList(
+                new TextStyle(0, 5).toggle(Style.Bold).setColors(Color.Blue, null),
+                new TextStyle(6, 11).toggle(Style.Italic).toggle(Style.Underlined)));
+
+        assertEquals(2, s.size());
+        assertEquals("*", s.getRecipient(0));
+        assertEquals("plain", s.getText(0));
+        assertNull(s.getStyles(0));
+        assertEquals("nick", s.getRecipient(1));
+        assertEquals("H\u00e9llo World", s.getText(1));
+        List<TextStyle> styles = s.getStyles(1);
+        assertEquals(2, styles.size());
+        assertEquals(0, styles.get(0).getStart());
+        assertEquals(5, styles.get(0).getEnd());
+        assertTrue(styles.get(0).is(Style.Bold));
+        assertEquals(Color.Blue, styles.get(0).getForeground());
+        assertNull(styles.get(0).getBackground());
+        assertFalse(styles.get(1).is(Style.Color));
+        assertTrue(styles.get(1).is(Style.Italic));
+        assertTrue(styles.get(1).is(Style.Underlined));
+        s.close();
+    }
+
+    @Test
+    public void should_spread_rows_across_segments_and_index_chunks() throws IOException {
+        MappedScrollback s = new MappedScrollback(folder.newFolder(), 256, 64);
+        for(int i = 0; i < 1000; i++) {
+            s.add("*", "line " + i, null);
+        }
+
+        for(int i = 0; i < 1000; i++) {
+            assertEquals("line " + i, s.getText(i));
+        }
+    }
+
+    @Test
+    public void should_reopen_with_existing_rows() throws IOException {
+        File dir = folder.newFolder();
+        MappedScrollback s = new MappedScrollback(dir, 256, 64);
+        for(int i = 0; i < 100; i++) {
+            s.add("*", "line " + i, null);
+        }
+        s.close();
+
+        s = new MappedScrollback(dir, 256, 64);
+        assertEquals(100, s.size());
+        s.add("*", "line 100", null);
+        assertEquals("line 99", s.getText(99));
+        assertEquals("line 100", s.getText(100));
+    }
+
+    @Test
+    public void should_evict_oldest_rows_and_their_segments() throws IOException {
+        File dir = folder.newFolder();
+        MappedScrollback s = new MappedScrollback(dir, 50, 256, 64);
+        for(int i = 0; i < 100; i++) {
+            if(s.size() == s.capacity()) {
+                s.evict(1);
+            }
+            s.add("*", "line " + i, null);
+        }
+
+        assertEquals(50, s.size());
+        assertEquals("line 50", s.getText(0));
+        assertEquals("line 99", s.getText(49));
+        assertFalse(new File(dir, "segment-00000").exists());
+        s.close();
+
+        s = new MappedScrollback(dir, 50, 256, 64);
+        assertEquals(50, s.size());
+        assertEquals("line 50", s.getText(0));
+        s.evict(50);
+        assertEquals(0, s.size());
+        s.add("*", "line 100", null);
+        assertEquals("line 100", s.getText(0));
+    }
+
+    @Test
+    public void should_stop_growing_index_once_full() throws IOException {
+        File dir = folder.newFolder();
+        MappedScrollback s = new MappedScrollback(dir, 50, 256, 64);
+        for(int i = 0; i < 1000; i++) {
+            if(s.size() == s.capacity()) {
+                s.evict(10);
+            }
+            s.add("*", "line " + i, null);
+        }
+        s.close();
+
+        // Header and 50 entries, in chunks of 64 bytes
+        assertEquals(448, new File(dir, "index").length());
+        s = new MappedScrollback(dir, 10, 256, 64);
+        assertEquals(50, s.capacity());
+        assertEquals("line 999", s.getText(s.size() - 1));
+        assertEquals("line " + (1000 - s.size()), s.getText(0));
+    }
+
+    @Test
+    public void should_lock_directory_while_open() throws IOException {
+        File dir = folder.newFolder();
+        MappedScrollback s = new MappedScrollback(dir);
+        try {
+            new MappedScrollback(dir);
+            fail();
+        }
+        catch (IOException ex) {
+            // in use
+        }
+        s.close();
+
+        new MappedScrollback(dir).close();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void should_reject_rows_past_the_end() throws IOException {
+        MappedScrollback s = new MappedScrollback(folder.newFolder());
+        s.add("*", "line", null);
+        s.getText(1);
+    }
+}
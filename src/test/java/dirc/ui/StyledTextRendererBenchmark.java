@@ -0,0 +1,72 @@
+package dirc.ui;
+
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableCellRenderer;
+
+import dirc.core.event.IrcEvent;
+import dirc.core.event.NoticeEvent;
+import dirc.core.message.TextStyle;
+import dirc.core.message.TextStyle.Color;
+import dirc.core.message.TextStyle.Style;
+
+/**
+ * Compares the time to paint 1000 rows of formatted messages with the HTML labels of a
+ * {@link DefaultTableCellRenderer} and with the {@link StyledTextRenderer}. Rows are painted into an image, so it
+ * runs headless.
+ * 
+ * Run with: java -Djava.awt.headless=true -cp target/classes:target/test-classes dirc.ui.StyledTextRendererBenchmark
+ */
+public class StyledTextRendererBenchmark {
+    private static final int ROWS = 1000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        IrcTableModel model = new IrcTableModel("me", ROWS, null);
+        List<IrcEvent> events = new ArrayList<IrcEvent>();
+        for(int i = 0; i < ROWS; i++) {
+            events.add(new NoticeEvent("*", "- Welcome to the network, line " + i + " of the message of the day -",
+                    Arrays.asList(new TextStyle(2, 9).toggle(Style.Bold).setColors(Color.Blue, Color.LightCyan),
+                            new TextStyle(17, 24).toggle(Style.Underlined),
+                            new TextStyle(26, 30).toggle(Style.Italic).setColors(Color.Red, null))));
+        }
+        model.addEvents(events);
+        JTable table = new JTable(model);
+        BufferedImage image = new BufferedImage(600, table.getRowHeight(), BufferedImage.TYPE_INT_RGB);
+
+        TableCellRenderer html = new DefaultTableCellRenderer();
+        TableCellRenderer styled = new StyledTextRenderer();
+        for(int i = 0; i < 5; i++) {
+            paint(table, html, image);
+            paint(table, styled, image);
+        }
+
+        long htmlNanos = 0;
+        long styledNanos = 0;
+        for(int i = 0; i < ROUNDS; i++) {
+            htmlNanos += paint(table, html, image);
+            styledNanos += paint(table, styled, image);
+        }
+        System.out.printf("html: %.2f ms per %d rows%n", htmlNanos / 1e6 / ROUNDS, ROWS);
+        System.out.printf("styled: %.2f ms per %d rows%n", styledNanos / 1e6 / ROUNDS, ROWS);
+    }
+
+    private static long paint(JTable table, TableCellRenderer renderer, BufferedImage image) {
+        long start = System.nanoTime();
+        for(int r = 0; r < table.getRowCount(); r++) {
+            Component c = renderer.getTableCellRendererComponent(table, table.getValueAt(r, 1), false, false, r, 1);
+            c.setBounds(0, 0, image.getWidth(), image.getHeight());
+            Graphics2D g = image.createGraphics();
+            c.paint(g);
+            g.dispose();
+        }
+        return System.nanoTime() - start;
+    }
+}